@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Nazli Urenli
@@ -23,6 +25,11 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Returns the characters of this alphabet, in index order. */
+    String chars() {
+        return _characters;
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
         return _characters.length();
@@ -61,6 +68,20 @@ class Alphabet {
         throw new EnigmaException("The character is not in the alphabet");
     }
 
+    /** Returns the indices of the characters of TEXT that are in this
+     *  alphabet, skipping the others. */
+    int[] encode(String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int k = 0; k < text.length(); k += 1) {
+            if (contains(text.charAt(k))) {
+                result[n] = toInt(text.charAt(k));
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
     /** A character String. */
     private String _characters;
 
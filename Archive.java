@@ -0,0 +1,549 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** A seekable archive of converted messages, written by Main's --archive
+ *  mode, from any range of which the original messages can be recovered
+ *  without converting the archive from its start.  The archive holds the
+ *  converted characters of the message lines, one byte (an alphabet
+ *  index) each, with the lines of each settings block run together,
+ *  followed by an index: the settings line and starting machine state of
+ *  each block, and a sparse list of entries, one at the start of each
+ *  block and one every K characters, each recording the rotor settings
+ *  at its offset.  A range is read by finding the entry at or before its
+ *  start by binary search, restoring a machine to that entry's state, and
+ *  converting from there, so that no read converts more than K
+ *  characters it does not return (and each block's end).  The machines
+ *  of recently read blocks are kept, so that reads within a block only
+ *  reset the rotor settings.
+ *
+ *  The file is laid out as
+ *      MAGIC, data, index, index position, MAGIC
+ *  where the index is K, the stepping, the number of rotor slots, each
+ *  block (its starting offset, settings line, and MachineSnapshot), and
+ *  each entry (its offset, block, and rotor settings).
+ *
+ *  The usage is
+ *      java enigma.Archive CONFIG ARCHIVE [FROM TO]
+ *      java enigma.Archive --bench=N [--length=L] CONFIG ARCHIVE
+ *  which prints the characters FROM .. TO-1 of the original messages in
+ *  ARCHIVE, written with the configuration file CONFIG (without FROM and
+ *  TO, a summary of the archive), or with --bench, times N reads of L
+ *  characters (4096) at random offsets and reports their latencies.
+ *  @author Nazli Urenli
+ */
+final class Archive implements AutoCloseable {
+
+    /** Tag at the start and end of every archive file, changed with its
+     *  format. */
+    private static final int MAGIC = 0x454e4141;
+
+    /** Default number of characters between index entries. */
+    static final int EVERY = 1 << 14;
+
+    /** Number of blocks whose machines a reader keeps. */
+    private static final int MACHINES = 8;
+
+    /** Writes an archive.  Blocks and lines are added as Main converts
+     *  them; the index is kept in memory and written by close. */
+    static final class Writer {
+
+        /** A writer of a new archive in FILE for MACHINE, with an index
+         *  entry every EVERY characters. */
+        Writer(File file, Machine machine, int every) {
+            if (machine.alphabet().size() > 256) {
+                throw error("archives need an alphabet of at most 256 "
+                            + "characters");
+            }
+            _file = file;
+            _every = every;
+            _slots = machine.numRotors();
+            _positions = new int[_offsets.length * _slots];
+            _stepping = machine.stepping().name();
+            try {
+                _out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file), 1 << 16));
+                _out.writeInt(MAGIC);
+            } catch (IOException excp) {
+                throw error("could not write archive %s", file);
+            }
+        }
+
+        /** Start a block set up by the settings line SETTINGS, with M in
+         *  the state that line left it. */
+        void startBlock(String settings, Machine M) {
+            if (_blocks == _settings.length) {
+                _blockStarts = Arrays.copyOf(_blockStarts, 2 * _blocks);
+                _settings = Arrays.copyOf(_settings, 2 * _blocks);
+                _snapshots = Arrays.copyOf(_snapshots, 2 * _blocks);
+            }
+            _blockStarts[_blocks] = _length;
+            _settings[_blocks] = settings;
+            _snapshots[_blocks] = M.snapshot();
+            _blocks += 1;
+            addEntry(M);
+        }
+
+        /** Convert LINE, a message line without blanks, with M, which is
+         *  in the state the previous line of the block left it, and add
+         *  the result. */
+        void append(String line, Machine M) {
+            if (_blocks == 0) {
+                throw error("message line before any settings line");
+            }
+            Alphabet alpha = M.alphabet();
+            int n = line.length();
+            if (_text.length < n) {
+                _text = new int[Math.max(n, 2 * _text.length)];
+                _bytes = new byte[_text.length];
+            }
+            for (int k = 0; k < n; k += 1) {
+                _text[k] = alpha.toInt(line.charAt(k));
+            }
+            for (int k = 0; k < n; ) {
+                if (_length % _every == 0) {
+                    addEntry(M);
+                }
+                int piece = (int) Math.min(n - k,
+                                           _every - _length % _every);
+                M.convert(_text, k, k + piece);
+                k += piece;
+                _length += piece;
+            }
+            for (int k = 0; k < n; k += 1) {
+                _bytes[k] = (byte) _text[k];
+            }
+            try {
+                _out.write(_bytes, 0, n);
+            } catch (IOException excp) {
+                throw error("could not write archive %s", _file);
+            }
+        }
+
+        /** Return the number of characters added so far. */
+        long length() {
+            return _length;
+        }
+
+        /** Write the index and close the archive. */
+        void close() {
+            try {
+                long indexAt = 4 + _length;
+                _out.writeInt(_every);
+                _out.writeUTF(_stepping);
+                _out.writeByte(_slots);
+                _out.writeInt(_blocks);
+                for (int b = 0; b < _blocks; b += 1) {
+                    _out.writeLong(_blockStarts[b]);
+                    _out.writeUTF(_settings[b]);
+                    _snapshots[b].write(_out);
+                }
+                _out.writeInt(_entries);
+                for (int e = 0; e < _entries; e += 1) {
+                    _out.writeLong(_offsets[e]);
+                    _out.writeInt(_entryBlocks[e]);
+                    for (int x = 1; x < _slots; x += 1) {
+                        _out.writeInt(_positions[e * _slots + x]);
+                    }
+                }
+                _out.writeLong(indexAt);
+                _out.writeInt(MAGIC);
+                _out.close();
+            } catch (IOException excp) {
+                throw error("could not write archive %s", _file);
+            }
+        }
+
+        /** Close and delete the archive, which is incomplete. */
+        void abort() {
+            try {
+                _out.close();
+            } catch (IOException excp) {
+                /* Deleted regardless. */
+            }
+            _file.delete();
+        }
+
+        /** Add an index entry for the current offset, at which M is about
+         *  to convert the next character of the current block, unless
+         *  there is one already. */
+        private void addEntry(Machine M) {
+            if (_entries > 0 && _offsets[_entries - 1] == _length
+                && _entryBlocks[_entries - 1] == _blocks - 1) {
+                return;
+            }
+            if (_entries == _offsets.length) {
+                _offsets = Arrays.copyOf(_offsets, 2 * _entries);
+                _entryBlocks = Arrays.copyOf(_entryBlocks, 2 * _entries);
+                _positions = Arrays.copyOf(_positions, 2 * _entries * _slots);
+            }
+            _offsets[_entries] = _length;
+            _entryBlocks[_entries] = _blocks - 1;
+            M.settings(_positions, _entries * _slots);
+            _entries += 1;
+        }
+
+        /** The archive file. */
+        private final File _file;
+        /** Its contents. */
+        private final DataOutputStream _out;
+        /** Characters between index entries. */
+        private final int _every;
+        /** Number of rotor slots of the machine. */
+        private final int _slots;
+        /** Name of the machine's stepping. */
+        private final String _stepping;
+        /** Number of characters added. */
+        private long _length;
+        /** Number of blocks, and their starting offsets, settings lines,
+         *  and starting states. */
+        private int _blocks;
+        /** Starting offset of each block. */
+        private long[] _blockStarts = new long[16];
+        /** Settings line of each block. */
+        private String[] _settings = new String[16];
+        /** Starting state of each block. */
+        private MachineSnapshot[] _snapshots = new MachineSnapshot[16];
+        /** Number of index entries. */
+        private int _entries;
+        /** Offset of each entry. */
+        private long[] _offsets = new long[16];
+        /** Block of each entry. */
+        private int[] _entryBlocks = new int[16];
+        /** Rotor settings of each entry, _slots per entry. */
+        private int[] _positions;
+        /** Scratch: the line being converted. */
+        private int[] _text = new int[0];
+        /** Scratch: the converted line as bytes. */
+        private byte[] _bytes = new byte[0];
+    }
+
+    /** The archive in FILE, read with copies of TEMPLATE, a machine with
+     *  the configuration the archive was written with.  Not for concurrent
+     *  use. */
+    Archive(File file, Machine template) {
+        _file = file;
+        _template = template.copy();
+        _template.setTableStore(TableStore.heap());
+        _alphabet = template.alphabet();
+        try {
+            _channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            long size = _channel.size();
+            ByteBuffer tail = ByteBuffer.allocate(12);
+            if (size < 16 || readFully(tail, size - 12) != 12
+                || tail.getInt(8) != MAGIC) {
+                throw error("%s is not an archive", file);
+            }
+            long indexAt = tail.getLong(0);
+            if (indexAt < 4 || indexAt > size - 12) {
+                throw error("%s is not an archive", file);
+            }
+            _length = indexAt - 4;
+            ByteBuffer index = ByteBuffer.allocate((int) (size - 12
+                                                          - indexAt));
+            readFully(index, indexAt);
+            readIndex(new DataInputStream(
+                new ByteArrayInputStream(index.array())));
+        } catch (IOException excp) {
+            close();
+            throw error("could not read archive %s", file);
+        } catch (EnigmaException excp) {
+            close();
+            throw excp;
+        }
+        _machines = new LinkedHashMap<Integer, Machine>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer,
+                                                Machine> eldest) {
+                return size() > MACHINES;
+            }
+        };
+    }
+
+    /** Read my index from IN. */
+    private void readIndex(DataInputStream in) throws IOException {
+        _every = in.readInt();
+        _stepping = Stepping.forName(in.readUTF());
+        _slots = in.readUnsignedByte();
+        if (_slots != _template.numRotors()) {
+            throw error("archive has %d rotor slots, machine has %d",
+                        _slots, _template.numRotors());
+        }
+        int blocks = in.readInt();
+        _blockStarts = new long[blocks + 1];
+        _settings = new String[blocks];
+        _snapshots = new MachineSnapshot[blocks];
+        for (int b = 0; b < blocks; b += 1) {
+            _blockStarts[b] = in.readLong();
+            _settings[b] = in.readUTF();
+            _snapshots[b] = MachineSnapshot.read(in);
+        }
+        _blockStarts[blocks] = _length;
+        int entries = in.readInt();
+        _offsets = new long[entries];
+        _entryBlocks = new int[entries];
+        _positions = new int[entries * _slots];
+        for (int e = 0; e < entries; e += 1) {
+            _offsets[e] = in.readLong();
+            _entryBlocks[e] = in.readInt();
+            for (int x = 1; x < _slots; x += 1) {
+                _positions[e * _slots + x] = in.readInt();
+            }
+        }
+    }
+
+    /** Return the number of characters in the archive. */
+    long length() {
+        return _length;
+    }
+
+    /** Return the number of settings blocks in the archive. */
+    int blocks() {
+        return _settings.length;
+    }
+
+    /** Return the settings line of block #B. */
+    String settings(int b) {
+        return _settings[b];
+    }
+
+    /** Return the number of index entries. */
+    int entries() {
+        return _offsets.length;
+    }
+
+    /** Return the number of characters between index entries. */
+    int every() {
+        return _every;
+    }
+
+    /** Return the original characters FROM .. TO-1 of the archive. */
+    String read(long from, long to) {
+        if (from < 0 || to > _length || from > to
+            || to - from > Integer.MAX_VALUE - _every) {
+            throw error("cannot read %d .. %d of an archive of %d "
+                        + "characters", from, to, _length);
+        }
+        char[] result = new char[(int) (to - from)];
+        long at = from;
+        while (at < to) {
+            int e = entry(at);
+            int b = _entryBlocks[e];
+            long start = _offsets[e];
+            long end = Math.min(to, _blockStarts[b + 1]);
+            int n = (int) (end - start);
+            if (_text.length < n) {
+                _text = new int[Math.max(n, 2 * _text.length)];
+                _bytes = ByteBuffer.allocate(_text.length);
+            }
+            _bytes.clear().limit(n);
+            try {
+                if (readFully(_bytes, 4 + start) != n) {
+                    throw error("archive %s is truncated", _file);
+                }
+            } catch (IOException excp) {
+                throw error("could not read archive %s", _file);
+            }
+            for (int k = 0; k < n; k += 1) {
+                _text[k] = _bytes.get(k) & 0xff;
+            }
+            Machine M = machine(b);
+            M.setRotors(_positions, e * _slots);
+            M.convert(_text, 0, n);
+            for (int k = (int) (at - start); k < n; k += 1) {
+                result[(int) (start - from) + k] = _alphabet.toChar(_text[k]);
+            }
+            at = end;
+        }
+        return new String(result);
+    }
+
+    /** Return the last index entry at or before offset AT, of the last
+     *  block starting there. */
+    private int entry(long at) {
+        int lo = 0, hi = _offsets.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (_offsets[mid] <= at) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /** Return a machine set up as block #B starts. */
+    private Machine machine(int b) {
+        Machine result = _machines.get(b);
+        if (result == null) {
+            result = _template.copy();
+            result.setStepping(_stepping);
+            result.restore(_snapshots[b]);
+            result.useEngine();
+            _machines.put(b, result);
+        }
+        return result;
+    }
+
+    /** Fill BUFFER from my file starting at POSITION, and return the
+     *  number of bytes read, which is less than it could hold only at
+     *  the end of the file. */
+    private int readFully(ByteBuffer buffer, long position)
+        throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            int n = _channel.read(buffer,
+                                  position + buffer.position() - start);
+            if (n < 0) {
+                break;
+            }
+        }
+        return buffer.position() - start;
+    }
+
+    /** Close my file. */
+    @Override
+    public void close() {
+        try {
+            if (_channel != null) {
+                _channel.close();
+            }
+        } catch (IOException excp) {
+            /* Nothing left to lose. */
+        }
+    }
+
+    /** Read from an archive, as described in the class comment,
+     *  according to ARGS. */
+    public static void main(String... args) {
+        try {
+            int bench = 0, length = 4096;
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k];
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--bench=")) {
+                    bench = Integer.parseInt(value);
+                } else if (arg.startsWith("--length=")) {
+                    length = Integer.parseInt(value);
+                } else {
+                    throw error("unknown option %s", arg);
+                }
+            }
+            int files = args.length - k;
+            if ((files != 2 && (files != 4 || bench > 0)) || length <= 0) {
+                throw error("usage: Archive [--bench=N] [--length=L] "
+                            + "CONFIG ARCHIVE [FROM TO]");
+            }
+            Machine machine = Main.readConfig(args[k]);
+            try (Archive archive = new Archive(new File(args[k + 1]),
+                                               machine)) {
+                if (files == 4) {
+                    System.out.println(archive.read(
+                        Long.parseLong(args[k + 2]),
+                        Long.parseLong(args[k + 3])));
+                } else if (bench > 0) {
+                    archive.bench(bench, length);
+                } else {
+                    System.out.printf("%d characters, %d blocks, %d index "
+                                      + "entries (one every %d)%n",
+                                      archive.length(), archive.blocks(),
+                                      archive.entries(), archive.every());
+                }
+            }
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Time COUNT reads of LENGTH characters at random offsets, and
+     *  print the distribution of their latencies. */
+    private void bench(int count, int length) {
+        length = (int) Math.min(length, _length);
+        Random random = new Random(count);
+        long[] nanos = new long[count];
+        long total = 0;
+        for (int r = 0; r < count; r += 1) {
+            long from = (long) (random.nextDouble() * (_length - length + 1));
+            long start = System.nanoTime();
+            read(from, from + length);
+            nanos[r] = System.nanoTime() - start;
+            total += nanos[r];
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%d reads of %d characters from %d: mean %.1f us, "
+                          + "p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                          count, length, _length, total / 1e3 / count,
+                          nanos[count / 2] / 1e3,
+                          nanos[(int) ((count - 1) * 99L / 100)] / 1e3,
+                          nanos[count - 1] / 1e3);
+    }
+
+    /** The archive file. */
+    private final File _file;
+
+    /** Its contents. */
+    private FileChannel _channel;
+
+    /** A machine configured as the archive's writer was. */
+    private final Machine _template;
+
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of characters in the archive. */
+    private long _length;
+
+    /** Characters between index entries. */
+    private int _every;
+
+    /** The stepping the archive was written with. */
+    private Stepping _stepping;
+
+    /** Number of rotor slots. */
+    private int _slots;
+
+    /** Starting offset of each block, and the archive's length. */
+    private long[] _blockStarts;
+
+    /** Settings line of each block. */
+    private String[] _settings;
+
+    /** Starting state of each block. */
+    private MachineSnapshot[] _snapshots;
+
+    /** Offset of each index entry, in increasing order. */
+    private long[] _offsets;
+
+    /** Block of each index entry. */
+    private int[] _entryBlocks;
+
+    /** Rotor settings of each index entry, _slots per entry. */
+    private int[] _positions;
+
+    /** Machines of recently read blocks, by block. */
+    private final LinkedHashMap<Integer, Machine> _machines;
+
+    /** Scratch: the characters being converted. */
+    private int[] _text = new int[0];
+
+    /** Scratch: the bytes being read. */
+    private ByteBuffer _bytes = ByteBuffer.allocate(0);
+}
@@ -0,0 +1,106 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Archive class.
+ *  @author Nazli Urenli
+ */
+public class ArchiveTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Write an archive of INPUT, indexed every EVERY characters, into
+     *  the file ARCHIVE. */
+    private void write(String input, int every, File archive)
+        throws IOException {
+        HashMap<String, String> options = new HashMap<>();
+        options.put("archive", archive.getPath());
+        options.put("archive-every", Integer.toString(every));
+        runMain(NAVAL_CONFIG, input, options, false);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReadRanges() throws IOException {
+        Random random = new Random(43);
+        StringBuilder input = new StringBuilder();
+        StringBuilder plain = new StringBuilder();
+        String[] settings = {
+            "* B Beta I II III AAAA", "* B Beta III IV I AXLE (AB) (CD)",
+            "* B Beta II I IV QEVA BCDE (TZ)", "* B Beta I II III ZZZZ",
+        };
+        for (String line : settings) {
+            input.append(line).append('\n');
+            for (int k = random.nextInt(4); k >= 0; k -= 1) {
+                String text = letters(random, random.nextInt(60));
+                input.append(text.toLowerCase()).append('\n');
+                plain.append(text);
+            }
+        }
+        File file = File.createTempFile("archive", ".ea");
+        try {
+            write(input.toString(), 7, file);
+            try (Archive archive = new Archive(file,
+                                               Main.readConfig(NAVAL_CONFIG))) {
+                assertEquals(plain.length(), archive.length());
+                assertEquals(settings.length, archive.blocks());
+                assertEquals(settings[1].toUpperCase(), archive.settings(1));
+                assertEquals(plain.toString(),
+                             archive.read(0, plain.length()));
+                for (int r = 0; r < 200; r += 1) {
+                    int from = random.nextInt(plain.length() + 1);
+                    int to = from + random.nextInt(plain.length() - from + 1);
+                    assertEquals(msg("testReadRanges", "%d .. %d", from, to),
+                                 plain.substring(from, to),
+                                 archive.read(from, to));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCiphertext() throws IOException {
+        File file = File.createTempFile("archive", ".ea");
+        try {
+            write("* B Beta I II III AAAA\nHELLO WORLD\n", 4, file);
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            Machine M = navalMachine(new String[] {
+                    "B", "Beta", "I", "II", "III" }, "AAAA", "");
+            String cipher = M.convert("HELLOWORLD");
+            for (int k = 0; k < cipher.length(); k += 1) {
+                assertEquals(UPPER.toInt(cipher.charAt(k)), bytes[4 + k]);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotAnArchive() throws IOException {
+        File file = File.createTempFile("archive", ".ea");
+        try {
+            Files.write(file.toPath(), NAVAL_CONFIG);
+            new Archive(file, Main.readConfig(NAVAL_CONFIG)).close();
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** Pairwise overlap scoring of intercepted messages, after Turing's
+ *  Banburismus.  Two messages enciphered with the same rotors from
+ *  starting positions D apart agree, where they overlap, as often as two
+ *  plaintexts do (about one place in fifteen for English) rather than as
+ *  often as two random texts (one in 26).  For every pair of messages and
+ *  every relative offset up to a limit, the number of repeats in the
+ *  overlap is counted, and the evidence that the offset is right is
+ *  scored in decibans (ten times the base-10 log of the odds).  Each
+ *  message is held as one bitset of positions per letter, so a pair at an
+ *  offset is counted a machine word of positions at a time; the pairs are
+ *  divided among the threads of a fork-join pool.
+ *
+ *  Matches that score at least a threshold are then joined into chains:
+ *  sets of messages whose relative starting positions are all fixed by
+ *  consistent matches, taken best first.  Such a chain narrows the search
+ *  for the machine's settings to those that give its messages starting
+ *  positions with these differences.
+ *
+ *  The usage is
+ *      java enigma.Banburismus [--alphabet=CHARS] [--max-offset=N]
+ *           [--min-overlap=N] [--threshold=DB] [--repeat-rate=K]
+ *           [--show=N] FILE
+ *  which treats each message line of FILE (not containing '*') as one
+ *  message, and prints the best N matches (20) and the chains.
+ *  @author Nazli Urenli
+ */
+final class Banburismus {
+
+    /** A scored relative offset of two messages. */
+    static final class Match {
+        /** A match of messages A and B, B starting OFFSET positions after
+         *  A, with REPEATS repeats in an overlap of OVERLAP positions,
+         *  scoring SCORE tenths of a deciban. */
+        Match(int a, int b, int offset, int repeats, int overlap,
+              int score) {
+            this.a = a;
+            this.b = b;
+            this.offset = offset;
+            this.repeats = repeats;
+            this.overlap = overlap;
+            this.score = score;
+        }
+
+        /** Return my score in decibans. */
+        double decibans() {
+            return score / 10.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d-%d at %+d: %d of %d, %.1f db", a, b,
+                                 offset, repeats, overlap, decibans());
+        }
+
+        /** The messages compared. */
+        final int a, b;
+        /** Starting position of b less that of a. */
+        final int offset;
+        /** Number of repeats and length of the overlap. */
+        final int repeats, overlap;
+        /** Score, in tenths of a deciban. */
+        final int score;
+    }
+
+    /** Messages whose relative starting positions are fixed by matches. */
+    static final class Chain {
+        /** A chain of MESSAGES, starting at OFFSETS relative to the first,
+         *  supported by matches with total score SCORE tenths of a
+         *  deciban. */
+        Chain(int[] messages, int[] offsets, int score) {
+            this.messages = messages;
+            this.offsets = offsets;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(String.format("%.1f db:", score / 10.0));
+            for (int k = 0; k < messages.length; k += 1) {
+                result.append(String.format(" %d@%+d", messages[k],
+                                            offsets[k]));
+            }
+            return result.toString();
+        }
+
+        /** The messages, in increasing order. */
+        final int[] messages;
+        /** Starting position of each message less that of the first. */
+        final int[] offsets;
+        /** Total score of the matches joining them. */
+        final int score;
+    }
+
+    /** Default rate of repeats between aligned plaintexts. */
+    static final double REPEAT_RATE = 0.0667;
+
+    /** Fewest pair comparisons in a task that is not split further. */
+    private static final long SPLIT_WORK = 1 << 14;
+
+    /** Scoring of MESSAGES (over ALPHA, skipping other characters) at
+     *  offsets of up to MAXOFFSET either way, with overlaps of at least
+     *  MINOVERLAP, assuming a plaintext repeat rate of REPEATRATE. */
+    Banburismus(Alphabet alpha, List<String> messages, int maxOffset,
+                int minOverlap, double repeatRate) {
+        this(Corpus.of(alpha, messages), maxOffset, minOverlap, repeatRate);
+    }
+
+    /** Scoring of the messages of CORPUS, as for the scoring of a list of
+     *  messages over its alphabet. */
+    Banburismus(Corpus corpus, int maxOffset, int minOverlap,
+                double repeatRate) {
+        int n = corpus.alphabet().size();
+        _letters = n;
+        _maxOffset = maxOffset;
+        _minOverlap = Math.max(1, minOverlap);
+        _lengths = new int[corpus.size()];
+        _bits = new long[corpus.size()][][];
+        int longest = 0;
+        for (int m = 0; m < corpus.size(); m += 1) {
+            long[][] bits = new long[n][];
+            int length = corpus.length(m);
+            for (int c = 0; c < n; c += 1) {
+                bits[c] = new long[(length + 63) >>> 6];
+            }
+            Corpus.Cursor text = corpus.cursor(m);
+            for (int p = 0; p < length; p += 1) {
+                bits[text.next()][p >>> 6] |= 1L << p;
+            }
+            _bits[m] = bits;
+            _lengths[m] = length;
+            longest = Math.max(longest, length);
+        }
+        double random = 1.0 / n;
+        double repeat = 10 * 10 * Math.log10(repeatRate / random);
+        double other = 10 * 10 * Math.log10((1 - repeatRate) / (1 - random));
+        _repeatScore = new int[longest + 1];
+        _otherScore = new int[longest + 1];
+        for (int k = 0; k <= longest; k += 1) {
+            _repeatScore[k] = (int) Math.round(k * repeat);
+            _otherScore[k] = (int) Math.round(k * other);
+        }
+    }
+
+    /** Return the number of messages. */
+    int messages() {
+        return _lengths.length;
+    }
+
+    /** Return the number of positions at which message A, and message B
+     *  starting OFFSET positions after it, agree. */
+    int repeats(int a, int b, int offset) {
+        int overlap = overlap(a, b, offset);
+        return offset >= 0 ? count(_bits[a], _bits[b], offset, overlap)
+            : count(_bits[b], _bits[a], -offset, overlap);
+    }
+
+    /** Return the number of positions at which message A and message B,
+     *  starting OFFSET positions after it, overlap. */
+    int overlap(int a, int b, int offset) {
+        return offset >= 0
+            ? Math.max(0, Math.min(_lengths[a] - offset, _lengths[b]))
+            : Math.max(0, Math.min(_lengths[b] + offset, _lengths[a]));
+    }
+
+    /** Return the score, in tenths of a deciban, of REPEATS repeats in an
+     *  overlap of OVERLAP positions. */
+    int score(int repeats, int overlap) {
+        return _repeatScore[repeats] + _otherScore[overlap - repeats];
+    }
+
+    /** Return the number of positions q < LENGTH at which the messages
+     *  with per-letter bitsets X and Y have X[q + SHIFT] == Y[q]. */
+    private int count(long[][] x, long[][] y, int shift, int length) {
+        int words = (length + 63) >>> 6;
+        int skip = shift >>> 6, bit = shift & 63;
+        int result = 0;
+        for (int c = 0; c < _letters; c += 1) {
+            long[] xs = x[c], ys = y[c];
+            for (int k = 0; k < words; k += 1) {
+                long shifted = xs[k + skip] >>> bit;
+                if (bit != 0 && k + skip + 1 < xs.length) {
+                    shifted |= xs[k + skip + 1] << (64 - bit);
+                }
+                result += Long.bitCount(shifted & ys[k]);
+            }
+        }
+        return result;
+    }
+
+    /** Return all the matches scoring at least THRESHOLD tenths of a
+     *  deciban, best first, computed on POOL. */
+    List<Match> matches(ForkJoinPool pool, int threshold) {
+        ArrayList<Match> result =
+            pool.invoke(new RowTask(0, messages(), threshold));
+        result.sort(BEST_FIRST);
+        return result;
+    }
+
+    /** Orders matches by decreasing score, then by messages and offset. */
+    static final Comparator<Match> BEST_FIRST =
+        Comparator.comparingInt((Match m) -> -m.score)
+        .thenComparingInt(m -> m.a).thenComparingInt(m -> m.b)
+        .thenComparingInt(m -> m.offset);
+
+    /** Scores the pairs whose first message is in a range. */
+    private final class RowTask extends RecursiveTask<ArrayList<Match>> {
+        /** Tasks are never serialized. */
+        private static final long serialVersionUID = 1L;
+
+        /** A task for the pairs (a, b) with LO <= a < HI and a < b,
+         *  keeping those scoring at least THRESHOLD. */
+        RowTask(int lo, int hi, int threshold) {
+            _lo = lo;
+            _hi = hi;
+            _threshold = threshold;
+        }
+
+        @Override
+        protected ArrayList<Match> compute() {
+            long work = 0;
+            for (int a = _lo; a < _hi; a += 1) {
+                work += messages() - 1 - a;
+            }
+            if (work > SPLIT_WORK && _hi - _lo > 1) {
+                long half = 0;
+                int mid = _lo;
+                while (mid < _hi - 1 && 2 * half < work) {
+                    half += messages() - 1 - mid;
+                    mid += 1;
+                }
+                RowTask left = new RowTask(_lo, mid, _threshold);
+                left.fork();
+                ArrayList<Match> result =
+                    new RowTask(mid, _hi, _threshold).compute();
+                result.addAll(left.join());
+                return result;
+            }
+            ArrayList<Match> result = new ArrayList<>();
+            for (int a = _lo; a < _hi; a += 1) {
+                for (int b = a + 1; b < messages(); b += 1) {
+                    for (int d = -_maxOffset; d <= _maxOffset; d += 1) {
+                        int overlap = overlap(a, b, d);
+                        if (overlap < _minOverlap) {
+                            continue;
+                        }
+                        int repeats = repeats(a, b, d);
+                        int score = score(repeats, overlap);
+                        if (score >= _threshold) {
+                            result.add(new Match(a, b, d, repeats, overlap,
+                                                 score));
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** Range of first messages. */
+        private final int _lo, _hi;
+        /** Least score kept. */
+        private final int _threshold;
+    }
+
+    /** Return the chains formed by MATCHES, taken in order (normally
+     *  best first), skipping any match inconsistent with those taken
+     *  before, best chain first. */
+    List<Chain> chains(List<Match> matches) {
+        int n = messages();
+        int[] parent = new int[n], offset = new int[n], score = new int[n];
+        for (int m = 0; m < n; m += 1) {
+            parent[m] = m;
+        }
+        for (Match match : matches) {
+            int ra = find(parent, offset, match.a),
+                rb = find(parent, offset, match.b);
+            if (ra == rb) {
+                if (offset[match.b] - offset[match.a] == match.offset) {
+                    score[ra] += match.score;
+                }
+                continue;
+            }
+            parent[rb] = ra;
+            offset[rb] = offset[match.a] + match.offset - offset[match.b];
+            score[ra] += score[rb] + match.score;
+        }
+        ArrayList<Chain> result = new ArrayList<>();
+        int[] size = new int[n];
+        for (int m = 0; m < n; m += 1) {
+            size[find(parent, offset, m)] += 1;
+        }
+        for (int root = 0; root < n; root += 1) {
+            if (parent[root] != root || size[root] < 2) {
+                continue;
+            }
+            int[] members = new int[size[root]], offsets = new int[size[root]];
+            int k = 0;
+            for (int m = 0; m < n; m += 1) {
+                if (find(parent, offset, m) == root) {
+                    members[k] = m;
+                    offsets[k] = offset[m] - offset[members[0]];
+                    k += 1;
+                }
+            }
+            result.add(new Chain(members, offsets, score[root]));
+        }
+        result.sort(Comparator.comparingInt((Chain c) -> -c.score)
+                    .thenComparingInt(c -> c.messages[0]));
+        return result;
+    }
+
+    /** Return the root of message M in the forest PARENT, compressing its
+     *  path and leaving OFFSET[M] as M's starting position less the
+     *  root's. */
+    private static int find(int[] parent, int[] offset, int m) {
+        int root = m, total = 0;
+        while (parent[root] != root) {
+            total += offset[root];
+            root = parent[root];
+        }
+        for (int node = m; node != root; ) {
+            int next = parent[node], step = offset[node];
+            parent[node] = root;
+            offset[node] = total;
+            total -= step;
+            node = next;
+        }
+        return root;
+    }
+
+    /** Score the messages in a file, as described in the class comment,
+     *  according to ARGS. */
+    public static void main(String... args) {
+        try {
+            Alphabet alpha = new Alphabet();
+            int maxOffset = 25, minOverlap = 20, show = 20;
+            double threshold = 10, repeatRate = REPEAT_RATE;
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k];
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--alphabet=")) {
+                    alpha = new Alphabet(value);
+                } else if (arg.startsWith("--max-offset=")) {
+                    maxOffset = Integer.parseInt(value);
+                } else if (arg.startsWith("--min-overlap=")) {
+                    minOverlap = Integer.parseInt(value);
+                } else if (arg.startsWith("--threshold=")) {
+                    threshold = Double.parseDouble(value);
+                } else if (arg.startsWith("--repeat-rate=")) {
+                    repeatRate = Double.parseDouble(value);
+                } else if (arg.startsWith("--show=")) {
+                    show = Integer.parseInt(value);
+                } else {
+                    throw error("unknown option %s", arg);
+                }
+            }
+            if (args.length - k != 1) {
+                throw error("usage: Banburismus [--alphabet=CHARS] "
+                            + "[--max-offset=N] [--min-overlap=N] "
+                            + "[--threshold=DB] [--repeat-rate=K] "
+                            + "[--show=N] FILE");
+            }
+            Corpus messages = new Corpus(alpha);
+            try (FileInputStream file = new FileInputStream(args[k])) {
+                LineInput input = new LineInput(file);
+                while (input.hasNextLine()) {
+                    String line = input.nextLine().toUpperCase();
+                    if (line.indexOf('*') < 0 && !line.trim().isEmpty()) {
+                        messages.add(line);
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", args[k]);
+            }
+            long start = System.nanoTime();
+            Banburismus scorer = new Banburismus(messages, maxOffset,
+                                                 minOverlap, repeatRate);
+            List<Match> matches = scorer.matches(ForkJoinPool.commonPool(),
+                (int) Math.ceil(threshold * 10));
+            List<Chain> chains = scorer.chains(matches);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long pairs = (long) messages.size() * (messages.size() - 1) / 2;
+            System.out.printf("%d messages, %d pairs x %d offsets in %.3f s, "
+                              + "%d matches, %d chains%n", messages.size(),
+                              pairs, 2 * maxOffset + 1, seconds,
+                              matches.size(), chains.size());
+            for (Match match : matches.subList(0,
+                     Math.min(show, matches.size()))) {
+                System.out.printf("match %s%n", match);
+            }
+            for (Chain chain : chains) {
+                System.out.printf("chain %s%n", chain);
+            }
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Alphabet size. */
+    private final int _letters;
+
+    /** Largest offset scored either way. */
+    private final int _maxOffset;
+
+    /** Smallest overlap scored. */
+    private final int _minOverlap;
+
+    /** Length of each message, in alphabet characters. */
+    private final int[] _lengths;
+
+    /** For each message and letter c, the bitset of positions holding
+     *  c: position p is bit p % 64 of word p / 64. */
+    private final long[][][] _bits;
+
+    /** Score, in tenths of a deciban, of k repeats and of k positions
+     *  that do not repeat. */
+    private final int[] _repeatScore, _otherScore;
+}
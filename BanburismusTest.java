@@ -0,0 +1,114 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Banburismus class.
+ *  @author Nazli Urenli
+ */
+public class BanburismusTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Plaintext for the messages. */
+    private static final String TEXT =
+        "FOURSCOREANDSEVENYEARSAGOOURFATHERSBROUGHTFORTHONTHISCONTINENTA"
+        + "NEWNATIONCONCEIVEDINLIBERTYANDDEDICATEDTOTHEPROPOSITIONTHATALL"
+        + "MENARECREATEDEQUALNOWWEAREENGAGEDINAGREATCIVILWARTESTINGWHETHER"
+        + "THATNATIONORANYNATIONSOCONCEIVEDANDSODEDICATEDCANLONGENDUREWEAR"
+        + "EMETONAGREATBATTLEFIELDOFTHATWARWEHAVECOMETODEDICATEAPORTIONOFT"
+        + "HATFIELDASAFINALRESTINGPLACEFORTHOSEWHOHEREGAVETHEIRLIVESTHATTH"
+        + "ATNATIONMIGHTLIVEITISALTOGETHERFITTINGANDPROPERTHATWESHOULDDOTH"
+        + "ISBUTINALARGERSENSEWECANNOTDEDICATEWECANNOTCONSECRATEWECANNOTHA"
+        + "LLOWTHISGROUNDTHEBRAVEMENLIVINGANDDEADWHOSTRUGGLEDHEREHAVECONSE"
+        + "CRATEDITFARABOVEOURPOORPOWERTOADDORDETRACTTHEWORLDWILLLITTLENOT"
+        + "ENORLONGREMEMBERWHATWESAYHEREBUTITCANNEVERFORGETWHATTHEYDIDHERE"
+        + "ITISFORUSTHELIVINGRATHERTOBEDEDICATEDHERETOTHEUNFINISHEDWORKWHI"
+        + "CHTHEYWHOFOUGHTHEREHAVETHUSFARSONOBLYADVANCEDITISRATHERFORUSTOB"
+        + "EHEREDEDICATEDTOTHEGREATTASKREMAININGBEFOREUSTHATFROMTHESEHONOR"
+        + "EDDEADWETAKEINCREASEDDEVOTIONTOTHATCAUSEFORWHICHTHEYGAVETHELAST"
+        + "FULLMEASUREOFDEVOTIONTHATWEHEREHIGHLYRESOLVETHATTHESEDEADSHALLN"
+        + "OTHAVEDIEDINVAINTHATTHISNATIONUNDERGODSHALLHAVEANEWBIRTHOFFREED"
+        + "OMANDTHATGOVERNMENTOFTHEPEOPLEBYTHEPEOPLEFORTHEPEOPLESHALLNOTPE"
+        + "RISHFROMTHEEARTH";
+
+    /** Return the encryption of PLAIN on the standard machine, starting
+     *  START keystrokes after the setting AAAA. */
+    private String encrypt(String plain, int start) {
+        Machine M = navalMachine(new String[] {"B", "Beta", "III", "IV",
+                                               "I"}, "AAAA", "");
+        M.convert("A".repeat(start));
+        return M.convert(plain);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRepeatsByBits() {
+        Random random = new Random(38);
+        ArrayList<String> messages = new ArrayList<>();
+        for (int length : new int[] {1, 63, 64, 65, 130, 200}) {
+            StringBuilder text = new StringBuilder();
+            for (int k = 0; k < length; k += 1) {
+                text.append((char) ('A' + random.nextInt(3)));
+            }
+            messages.add(text.toString());
+        }
+        Banburismus scorer = new Banburismus(UPPER, messages, 0, 1,
+                                             Banburismus.REPEAT_RATE);
+        for (int a = 0; a < messages.size(); a += 1) {
+            for (int b = 0; b < messages.size(); b += 1) {
+                String x = messages.get(a), y = messages.get(b);
+                for (int d = -210; d <= 210; d += 1) {
+                    int repeats = 0, overlap = 0;
+                    for (int p = Math.max(0, d);
+                         p < x.length() && p - d < y.length(); p += 1) {
+                        overlap += 1;
+                        repeats += x.charAt(p) == y.charAt(p - d) ? 1 : 0;
+                    }
+                    String where = msg("banburismus", "%d-%d at %d", a, b, d);
+                    assertEquals(where, overlap, scorer.overlap(a, b, d));
+                    assertEquals(where, repeats, scorer.repeats(a, b, d));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testChain() {
+        int[] starts = {0, 17, 5, 22};
+        ArrayList<String> messages = new ArrayList<>();
+        int part = TEXT.length() / starts.length;
+        for (int m = 0; m < starts.length; m += 1) {
+            messages.add(encrypt(TEXT.substring(m * part, (m + 1) * part),
+                                 starts[m]));
+        }
+        Banburismus scorer = new Banburismus(UPPER, messages, 25, 50,
+                                             Banburismus.REPEAT_RATE);
+        List<Banburismus.Match> matches =
+            scorer.matches(new ForkJoinPool(2), 50);
+        List<Banburismus.Chain> chains = scorer.chains(matches);
+        assertFalse(chains.isEmpty());
+        Banburismus.Chain best = chains.get(0);
+        assertArrayEquals(new int[] {0, 1, 2, 3}, best.messages);
+        for (int k = 0; k < starts.length; k += 1) {
+            assertEquals(starts[k] - starts[0], best.offsets[k]);
+        }
+        for (Banburismus.Match match : matches) {
+            assertTrue(match.score >= 50);
+        }
+    }
+}
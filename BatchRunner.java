@@ -0,0 +1,146 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Runs the jobs listed in a batch manifest.  Each line of the manifest
+ *  names a configuration file, an input file, and an output file; blank
+ *  lines and lines starting with '#' are ignored.  Every distinct
+ *  configuration is read once, and the jobs run on a bounded pool of
+ *  threads, each on its own copy of its configuration's machine.  A job
+ *  converts its file from start to finish on one thread, so each output
+ *  is written in input order.
+ *  @author Nazli Urenli
+ */
+final class BatchRunner {
+
+    /** A runner for the jobs in the file named MANIFEST, at most JOBS at a
+     *  time, passing OPTIONS to each job, compiling tables into TABLES
+     *  and sharing keystreams through KEYSTREAM (each if not null). */
+    BatchRunner(String manifest, int jobs, HashMap<String, String> options,
+                TableStore tables, KeystreamCache keystream) {
+        _manifest = manifest;
+        _jobs = jobs;
+        _options = options;
+        _tables = tables;
+        _keystream = keystream;
+    }
+
+    /** Run all my jobs, then print a summary of their throughput.  Any
+     *  failures are reported on the standard error after every job has
+     *  finished, and then raised as a single EnigmaException. */
+    void run() {
+        ArrayList<String[]> jobs = readManifest();
+        long start = System.nanoTime();
+        LinkedHashMap<String, Machine> templates = new LinkedHashMap<>();
+        for (String[] job : jobs) {
+            if (!templates.containsKey(job[0])) {
+                Machine template = Main.readConfig(job[0]);
+                template.setTableStore(_tables);
+                template.setKeystreamCache(_keystream);
+                template.setStepping(
+                    Stepping.forName(_options.get("stepping")));
+                templates.put(job[0], template);
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(_jobs);
+        ArrayList<Future<Long>> results = new ArrayList<>();
+        for (String[] job : jobs) {
+            Machine template = templates.get(job[0]);
+            results.add(pool.submit(() -> {
+                Main worker = new Main(_options, job[1], job[2]);
+                try {
+                    return worker.processInput(template.copy());
+                } finally {
+                    worker.close();
+                }
+            }));
+        }
+        pool.shutdown();
+
+        long chars = 0;
+        ArrayList<String> failures = new ArrayList<>();
+        for (int k = 0; k < jobs.size(); k += 1) {
+            try {
+                chars += results.get(k).get();
+            } catch (ExecutionException excp) {
+                Throwable cause = excp.getCause();
+                String msg = cause instanceof EnigmaException
+                    ? cause.getMessage() : cause.toString();
+                failures.add(jobs.get(k)[1] + ": " + msg);
+            } catch (InterruptedException excp) {
+                pool.shutdownNow();
+                throw error("batch interrupted");
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("batch: %d files, %d configurations, "
+                          + "%d characters in %.3f s (%.0f chars/s)%n",
+                          jobs.size(), templates.size(), chars, seconds,
+                          chars / Math.max(seconds, 1e-9));
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                System.err.printf("Error: %s%n", failure);
+            }
+            throw error("%d of %d batch jobs failed", failures.size(),
+                        jobs.size());
+        }
+    }
+
+    /** Return the jobs in my manifest, as {config, input, output}. */
+    private ArrayList<String[]> readManifest() {
+        ArrayList<String[]> result = new ArrayList<>();
+        HashSet<String> outputs = new HashSet<>();
+        LineInput manifest = Main.getInput(_manifest);
+        int lineNum = 0;
+        while (manifest.hasNextLine()) {
+            String line = manifest.nextLine().trim();
+            lineNum += 1;
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            ArrayList<String> words = new ArrayList<>();
+            for (String word : Main.splitAtBlanks(line.replace('\t', ' '))) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+            String[] job = words.toArray(new String[0]);
+            if (job.length != 3) {
+                throw error("%s:%d: expected CONFIG INPUT OUTPUT",
+                            _manifest, lineNum);
+            }
+            if (!outputs.add(job[2])) {
+                throw error("%s:%d: %s is already an output", _manifest,
+                            lineNum, job[2]);
+            }
+            result.add(job);
+        }
+        manifest.close();
+        return result;
+    }
+
+    /** Name of the manifest file. */
+    private final String _manifest;
+
+    /** Maximum number of jobs run at once. */
+    private final int _jobs;
+
+    /** Options passed to each job. */
+    private final HashMap<String, String> _options;
+
+    /** Store for compiled tables, or null. */
+    private final TableStore _tables;
+
+    /** Cache of keystreams shared by all jobs, or null. */
+    private final KeystreamCache _keystream;
+}
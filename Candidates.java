@@ -0,0 +1,95 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/** The best-scoring keys found by a search, at most a fixed number of
+ *  them, best first.  A higher score is better; of equal scores, the
+ *  smaller key is better, so the same keys are kept however a search is
+ *  divided up.
+ *  @author Nazli Urenli
+ */
+final class Candidates {
+
+    /** An empty collection keeping the best LIMIT keys. */
+    Candidates(int limit) {
+        _scores = new double[limit];
+        _keys = new long[limit];
+    }
+
+    /** Return the number of keys I hold. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the score of my Kth best key. */
+    double score(int k) {
+        return _scores[k];
+    }
+
+    /** Return my Kth best key. */
+    long key(int k) {
+        return _keys[k];
+    }
+
+    /** Consider KEY, with score SCORE, for a place among my keys. */
+    void offer(double score, long key) {
+        int k = _size;
+        if (k == _keys.length) {
+            if (k == 0 || !better(score, key, k - 1)) {
+                return;
+            }
+            k -= 1;
+        } else {
+            _size += 1;
+        }
+        for (; k > 0 && better(score, key, k - 1); k -= 1) {
+            _scores[k] = _scores[k - 1];
+            _keys[k] = _keys[k - 1];
+        }
+        _scores[k] = score;
+        _keys[k] = key;
+    }
+
+    /** Offer each of the keys in OTHER. */
+    void addAll(Candidates other) {
+        for (int k = 0; k < other._size; k += 1) {
+            offer(other._scores[k], other._keys[k]);
+        }
+    }
+
+    /** Return true iff KEY with SCORE is better than my Kth key. */
+    private boolean better(double score, long key, int k) {
+        return score > _scores[k] || (score == _scores[k] && key < _keys[k]);
+    }
+
+    /** Write my keys and scores to OUT. */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(_size);
+        for (int k = 0; k < _size; k += 1) {
+            out.writeDouble(_scores[k]);
+            out.writeLong(_keys[k]);
+        }
+    }
+
+    /** Return the keys written by write to IN, keeping the best LIMIT. */
+    static Candidates read(DataInputStream in, int limit) throws IOException {
+        Candidates result = new Candidates(limit);
+        int size = in.readInt();
+        for (int k = 0; k < size; k += 1) {
+            double score = in.readDouble();
+            result.offer(score, in.readLong());
+        }
+        return result;
+    }
+
+    /** The scores of my keys, best first. */
+    private final double[] _scores;
+
+    /** My keys, best first. */
+    private final long[] _keys;
+
+    /** Number of keys held. */
+    private int _size;
+}
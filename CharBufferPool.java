@@ -0,0 +1,55 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+
+/** A pool of equal-sized CharBuffers, so that streams of conversions can
+ *  reuse their buffers instead of allocating one per chunk.
+ *  @author Nazli Urenli
+ */
+final class CharBufferPool {
+
+    /** A pool of buffers of CAPACITY characters, retaining at most LIMIT
+     *  free buffers. */
+    CharBufferPool(int capacity, int limit) {
+        _capacity = capacity;
+        _limit = limit;
+        _free = new ArrayDeque<>();
+    }
+
+    /** Return the capacity of my buffers. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return an empty buffer, reusing a free one if there is one. */
+    synchronized CharBuffer acquire() {
+        CharBuffer result = _free.poll();
+        if (result == null) {
+            return CharBuffer.allocate(_capacity);
+        }
+        result.clear();
+        return result;
+    }
+
+    /** Return BUF, which must have come from acquire(), to the pool. */
+    synchronized void release(CharBuffer buf) {
+        if (buf.capacity() == _capacity && _free.size() < _limit) {
+            _free.push(buf);
+        }
+    }
+
+    /** Return the number of free buffers I hold. */
+    synchronized int free() {
+        return _free.size();
+    }
+
+    /** Capacity of my buffers. */
+    private final int _capacity;
+
+    /** Maximum number of free buffers retained. */
+    private final int _limit;
+
+    /** The free buffers. */
+    private final ArrayDeque<CharBuffer> _free;
+}
@@ -0,0 +1,154 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A point from which Main can resume a long run: the number of input
+ *  lines and bytes consumed, the number of bytes of output written, a
+ *  snapshot of the machine at that point, and a fingerprint of the input
+ *  and configuration it was taken from.
+ *  @author Nazli Urenli
+ */
+final class Checkpoint {
+
+    /** Tag at the start of every checkpoint file, changed with its
+     *  format. */
+    private static final int MAGIC = 0x454e4352;
+
+    /** Number of bytes at each end of the input read that a fingerprint
+     *  covers. */
+    private static final int WINDOW = 1 << 16;
+
+    /** A checkpoint taken after LINES lines, INPUTBYTES bytes, of input
+     *  had been read and OUTPUTBYTES bytes written, with the machine in
+     *  state SNAPSHOT, from the input and configuration with FINGERPRINT
+     *  (see fingerprint). */
+    Checkpoint(long lines, long inputBytes, long outputBytes,
+               long fingerprint, MachineSnapshot snapshot) {
+        _lines = lines;
+        _inputBytes = inputBytes;
+        _outputBytes = outputBytes;
+        _fingerprint = fingerprint;
+        _snapshot = snapshot;
+    }
+
+    /** Return a fingerprint of the configuration CONFIG and of the first
+     *  BYTES bytes of the file INPUT (none if INPUT is null).  It covers
+     *  all of CONFIG, but only the first and last WINDOW of those bytes of
+     *  INPUT, so that it takes the same time however far INPUT has been
+     *  read. */
+    static long fingerprint(File input, long bytes, byte[] config) {
+        CRC32 crc = new CRC32();
+        crc.update(config);
+        if (input == null) {
+            return crc.getValue();
+        }
+        try (RandomAccessFile in = new RandomAccessFile(input, "r")) {
+            if (in.length() < bytes) {
+                throw error("%s is shorter than its checkpoint", input);
+            }
+            byte[] window = new byte[(int) Math.min(bytes, WINDOW)];
+            in.readFully(window);
+            crc.update(window);
+            in.seek(bytes - window.length);
+            in.readFully(window);
+            crc.update(window);
+        } catch (IOException excp) {
+            throw error("could not read %s", input);
+        }
+        return crc.getValue();
+    }
+
+    /** Return the number of input lines read before I was taken. */
+    long lines() {
+        return _lines;
+    }
+
+    /** Return the number of input bytes read before I was taken. */
+    long inputBytes() {
+        return _inputBytes;
+    }
+
+    /** Return the number of output bytes written before I was taken. */
+    long outputBytes() {
+        return _outputBytes;
+    }
+
+    /** Return the fingerprint of the input and configuration I was taken
+     *  from. */
+    long fingerprint() {
+        return _fingerprint;
+    }
+
+    /** Return the machine state when I was taken. */
+    MachineSnapshot snapshot() {
+        return _snapshot;
+    }
+
+    /** Write me to FILE, replacing its previous contents atomically so
+     *  that a crash leaves either the old or the new checkpoint. */
+    void write(File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(_lines);
+                out.writeLong(_inputBytes);
+                out.writeLong(_outputBytes);
+                out.writeLong(_fingerprint);
+                _snapshot.write(out);
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", file);
+        }
+    }
+
+    /** Return the checkpoint stored in FILE. */
+    static Checkpoint read(File file) {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a checkpoint", file);
+            }
+            long lines = in.readLong();
+            long inputBytes = in.readLong();
+            long outputBytes = in.readLong();
+            long fingerprint = in.readLong();
+            return new Checkpoint(lines, inputBytes, outputBytes,
+                                  fingerprint, MachineSnapshot.read(in));
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        }
+    }
+
+    /** Input lines read before I was taken. */
+    private final long _lines;
+
+    /** Input bytes read before I was taken. */
+    private final long _inputBytes;
+
+    /** Output bytes written before I was taken. */
+    private final long _outputBytes;
+
+    /** Fingerprint of the input and configuration I was taken from. */
+    private final long _fingerprint;
+
+    /** Machine state when I was taken. */
+    private final MachineSnapshot _snapshot;
+}
@@ -0,0 +1,168 @@
+package enigma;
+
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/** The whitespace-separated tokens of a configuration file held as bytes,
+ *  with the byte offsets at which each lies.  The bytes are decoded as
+ *  UTF-8, and tokens are split at the characters that
+ *  Character.isWhitespace accepts, as a Scanner would split the same
+ *  file.
+ *  @author Nazli Urenli
+ */
+final class ConfigTokens {
+
+    /** The tokens of CONFIG. */
+    ConfigTokens(byte[] config) {
+        _bytes = config;
+        skipWhitespace();
+    }
+
+    /** Return the bytes I tokenize. */
+    byte[] bytes() {
+        return _bytes;
+    }
+
+    /** Return true iff another token remains. */
+    boolean hasNext() {
+        return _pos < _bytes.length;
+    }
+
+    /** Return true iff the next token is an integer. */
+    boolean hasNextInt() {
+        if (!hasNext()) {
+            return false;
+        }
+        try {
+            Integer.parseInt(decode(_pos, tokenEnd(_pos)));
+            return true;
+        } catch (NumberFormatException excp) {
+            return false;
+        }
+    }
+
+    /** Return the next token as an integer. */
+    int nextInt() {
+        if (!hasNextInt()) {
+            throw new NoSuchElementException();
+        }
+        return Integer.parseInt(next());
+    }
+
+    /** Return the next token. */
+    String next() {
+        advance();
+        return decode(_start, _end);
+    }
+
+    /** Skip the next token, without decoding it. */
+    void advance() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        _start = _pos;
+        _end = tokenEnd(_pos);
+        _pos = _end;
+        skipWhitespace();
+    }
+
+    /** Return true iff the last token returned contains the character
+     *  C, which must be ASCII. */
+    boolean lastContains(char c) {
+        for (int k = _start; k < _end; k += 1) {
+            if (_bytes[k] == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the byte offset of the start of the last token returned. */
+    int start() {
+        return _start;
+    }
+
+    /** Return the byte offset just past the last token returned. */
+    int end() {
+        return _end;
+    }
+
+    /** Return the text of the tokens lying between byte offsets START and
+     *  END of BYTES, separated by single blanks. */
+    static String join(byte[] bytes, int start, int end) {
+        StringBuilder result = new StringBuilder();
+        int k = start;
+        while (k < end) {
+            int blank = whitespace(bytes, k, end);
+            if (blank > 0) {
+                k += blank;
+                continue;
+            }
+            int stop = k;
+            while (stop < end && whitespace(bytes, stop, end) == 0) {
+                stop += 1;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(new String(bytes, k, stop - k,
+                                     StandardCharsets.UTF_8));
+            k = stop;
+        }
+        return result.toString();
+    }
+
+    /** Return the length in bytes of the whitespace character encoded
+     *  in UTF-8 at offset K of BYTES, not extending to END, or 0 if
+     *  there is none there. */
+    static int whitespace(byte[] bytes, int k, int end) {
+        int lead = bytes[k] & 0xff;
+        if (lead < 0x80) {
+            return Character.isWhitespace(lead) ? 1 : 0;
+        }
+        int n = lead >= 0xf0 ? 4 : lead >= 0xe0 ? 3 : lead >= 0xc0 ? 2 : 0;
+        if (n == 0 || k + n > end) {
+            return 0;
+        }
+        int c = lead & (0x7f >> n);
+        for (int j = 1; j < n; j += 1) {
+            int b = bytes[k + j] & 0xff;
+            if ((b & 0xc0) != 0x80) {
+                return 0;
+            }
+            c = (c << 6) | (b & 0x3f);
+        }
+        return Character.isWhitespace(c) ? n : 0;
+    }
+
+    /** Return the offset just past the token starting at offset K. */
+    private int tokenEnd(int k) {
+        while (k < _bytes.length && whitespace(_bytes, k, _bytes.length) == 0) {
+            k += 1;
+        }
+        return k;
+    }
+
+    /** Move past any whitespace at the current position. */
+    private void skipWhitespace() {
+        int blank;
+        while (_pos < _bytes.length
+               && (blank = whitespace(_bytes, _pos, _bytes.length)) > 0) {
+            _pos += blank;
+        }
+    }
+
+    /** Return the text between offsets START and END. */
+    private String decode(int start, int end) {
+        return new String(_bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /** The configuration file. */
+    private final byte[] _bytes;
+
+    /** Offset of the next token, or the length of _bytes if none. */
+    private int _pos;
+
+    /** Offsets of the start and end of the last token returned. */
+    private int _start, _end;
+}
@@ -0,0 +1,475 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A compact store of a collection of messages over an alphabet, such as
+ *  the intercepts of a day.  Only the characters of each message that are
+ *  in the alphabet are kept, as alphabet indices packed end to end into
+ *  longs at the fewest bits that hold every index: 5 for 26 letters,
+ *  against 8 or 16 for a String's characters.  The longs live in an
+ *  array on the Java heap, to which messages may be added, or in a
+ *  read-only memory-mapped file written by write().
+ *
+ *  Messages are read without copying through a Cursor, which decodes one
+ *  long at a time, or in bulk into int arrays of alphabet indices such as
+ *  Machine.convert(int[], int, int) and the analysis tools take.  Any
+ *  number of threads may read a corpus that is not being added to.
+ *
+ *  The usage is
+ *      java enigma.Corpus [--alphabet=CHARS] [--write=CORPUS | --mapped]
+ *           FILE
+ *  which stores the message lines of FILE (those with no '*', in upper
+ *  case), optionally writes them to the file CORPUS, and prints how much
+ *  memory they take packed and as Strings, and how fast they are
+ *  extracted.  With --mapped, FILE is a corpus file, and is mapped.
+ *  @author Nazli Urenli
+ */
+final class Corpus {
+
+    /** Tag at the start of every corpus file. */
+    private static final int MAGIC = 0x454e4350;
+
+    /** An empty corpus on the Java heap over ALPHA. */
+    Corpus(Alphabet alpha) {
+        this(alpha, new long[0], null);
+        _words = new long[64];
+    }
+
+    /** A corpus over ALPHA of the messages starting at the positions
+     *  STARTS, whose packed indices are the longs in SEGMENTS. */
+    private Corpus(Alphabet alpha, long[] starts, LongBuffer[] segments) {
+        _alpha = alpha;
+        _bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(
+                                  alpha.size() - 1));
+        _mask = (1 << _bits) - 1;
+        _segments = segments;
+        _starts = starts.length == 0 ? new long[16] : starts;
+        _size = Math.max(0, starts.length - 1);
+        _length = _starts[_size];
+    }
+
+    /** Return a corpus over ALPHA of MESSAGES, skipping the characters
+     *  of each not in ALPHA. */
+    static Corpus of(Alphabet alpha, Iterable<String> messages) {
+        Corpus result = new Corpus(alpha);
+        for (String message : messages) {
+            result.add(message);
+        }
+        return result;
+    }
+
+    /** Return a read-only corpus mapped from FILE, which must have been
+     *  written by write(). */
+    static Corpus mapped(File file) {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)));
+             RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a corpus file", file);
+            }
+            Alphabet alpha = new Alphabet(in.readUTF());
+            long[] starts = new long[in.readInt() + 1];
+            for (int m = 0; m < starts.length; m += 1) {
+                starts[m] = in.readLong();
+            }
+            long at = in.readLong();
+            Corpus probe = new Corpus(alpha, starts, null);
+            long words = probe.words(starts[starts.length - 1]);
+            if (at + 8 * words > raf.length()) {
+                throw error("%s is truncated", file);
+            }
+            LongBuffer[] segments =
+                new LongBuffer[(int) ((words + SEGMENT - 1) / SEGMENT)];
+            FileChannel channel = raf.getChannel();
+            for (int s = 0; s < segments.length; s += 1) {
+                long count = Math.min(SEGMENT, words - s * SEGMENT);
+                segments[s] =
+                    channel.map(FileChannel.MapMode.READ_ONLY,
+                                at + 8 * s * SEGMENT, 8 * count)
+                    .order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+            }
+            return new Corpus(alpha, starts, segments);
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+    }
+
+    /** Add MESSAGE, skipping its characters not in my alphabet, and
+     *  return its number. */
+    int add(String message) {
+        int[] text = _alpha.encode(message);
+        return add(text, 0, text.length);
+    }
+
+    /** Add the message TEXT[FROM .. TO-1], alphabet indices, and return
+     *  its number.  If TEXT holds anything else, I am left unchanged. */
+    int add(int[] text, int from, int to) {
+        if (_words == null) {
+            throw error("a mapped corpus is read-only");
+        }
+        for (int k = from; k < to; k += 1) {
+            if (text[k] < 0 || text[k] >= _alpha.size()) {
+                throw error("%d is not an alphabet index", text[k]);
+            }
+        }
+        long end = _length + (to - from);
+        if (words(end) > Integer.MAX_VALUE - 8) {
+            throw error("corpus too large for the heap");
+        }
+        if (words(end) > _words.length) {
+            _words = Arrays.copyOf(_words, (int) Math.min(
+                Integer.MAX_VALUE - 8,
+                Math.max(words(end), 2L * _words.length)));
+        }
+        if (_size + 1 == _starts.length) {
+            _starts = Arrays.copyOf(_starts, 2 * _starts.length);
+        }
+        long bit = _length * _bits;
+        for (int k = from; k < to; k += 1, bit += _bits) {
+            int w = (int) (bit >>> 6), used = (int) (bit & 63);
+            _words[w] |= (long) text[k] << used;
+            if (used + _bits > 64) {
+                _words[w + 1] |= (long) text[k] >>> (64 - used);
+            }
+        }
+        _length = end;
+        _size += 1;
+        _starts[_size] = end;
+        return _size - 1;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alpha;
+    }
+
+    /** Return the number of bits that each character takes. */
+    int bits() {
+        return _bits;
+    }
+
+    /** Return the number of messages. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the total number of characters. */
+    long length() {
+        return _length;
+    }
+
+    /** Return the number of characters of message M. */
+    int length(int m) {
+        return (int) (_starts[m + 1] - _starts[m]);
+    }
+
+    /** Return the position of the first character of message M among all
+     *  my characters. */
+    long start(int m) {
+        return _starts[m];
+    }
+
+    /** Return the number of bytes that my characters and message starts
+     *  take. */
+    long bytes() {
+        return 8 * (words(_length) + _size + 1);
+    }
+
+    /** Return the character (an alphabet index) at POSITION. */
+    int get(long position) {
+        long bit = position * _bits;
+        long w = bit >>> 6;
+        int used = (int) (bit & 63);
+        long value = word(w) >>> used;
+        if (used + _bits > 64) {
+            value |= word(w + 1) << (64 - used);
+        }
+        return (int) (value & _mask);
+    }
+
+    /** Put the COUNT characters (alphabet indices) starting at POSITION
+     *  into INTO[AT .. AT+COUNT-1]. */
+    void extract(long position, int count, int[] into, int at) {
+        if (position < 0 || count < 0 || position + count > _length) {
+            throw error("characters %d .. %d out of range", position,
+                        position + count);
+        }
+        if (count == 0) {
+            return;
+        }
+        final int bits = _bits, mask = _mask;
+        long bit = position * bits;
+        long w = bit >>> 6;
+        int have = 64 - (int) (bit & 63);
+        long word = word(w) >>> (bit & 63);
+        for (int k = at, end = at + count; k < end; k += 1) {
+            if (have >= bits) {
+                into[k] = (int) word & mask;
+                word >>>= bits;
+                have -= bits;
+            } else {
+                w += 1;
+                long next = word(w);
+                into[k] = (int) (word | next << have) & mask;
+                word = next >>> (bits - have);
+                have += 64 - bits;
+            }
+        }
+    }
+
+    /** Return the characters (alphabet indices) of message M. */
+    int[] indices(int m) {
+        int[] result = new int[length(m)];
+        extract(_starts[m], result.length, result, 0);
+        return result;
+    }
+
+    /** Return message M as a String. */
+    String message(int m) {
+        char[] result = new char[length(m)];
+        Cursor cursor = cursor(m);
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = _alpha.toChar(cursor.next());
+        }
+        return new String(result);
+    }
+
+    /** Return a cursor over message M. */
+    Cursor cursor(int m) {
+        return new Cursor(_starts[m], _starts[m + 1]);
+    }
+
+    /** Return a cursor over the characters at positions FROM .. TO-1. */
+    Cursor cursor(long from, long to) {
+        if (from < 0 || from > to || to > _length) {
+            throw error("characters %d .. %d out of range", from, to);
+        }
+        return new Cursor(from, to);
+    }
+
+    /** Reads a run of my characters in order, a long at a time. */
+    final class Cursor {
+
+        /** A cursor over the characters at FROM .. TO-1. */
+        private Cursor(long from, long to) {
+            _position = from;
+            _end = to;
+            long bit = from * _bits;
+            _w = bit >>> 6;
+            _have = 64 - (int) (bit & 63);
+            _word = from < to ? word(_w) >>> (bit & 63) : 0;
+        }
+
+        /** Return true iff there are characters left. */
+        boolean hasNext() {
+            return _position < _end;
+        }
+
+        /** Return the position of the next character. */
+        long position() {
+            return _position;
+        }
+
+        /** Return the next character, an alphabet index. */
+        int next() {
+            if (_position >= _end) {
+                throw error("no more characters");
+            }
+            _position += 1;
+            int result;
+            if (_have >= _bits) {
+                result = (int) _word & _mask;
+                _word >>>= _bits;
+                _have -= _bits;
+            } else {
+                _w += 1;
+                long next = word(_w);
+                result = (int) (_word | next << _have) & _mask;
+                _word = next >>> (_bits - _have);
+                _have += 64 - _bits;
+            }
+            return result;
+        }
+
+        /** Position of the next character. */
+        private long _position;
+        /** Position after the last character. */
+        private final long _end;
+        /** Index of the long being decoded. */
+        private long _w;
+        /** Its bits not yet decoded, in the low _have bits. */
+        private long _word;
+        /** Number of bits of _word not yet decoded. */
+        private int _have;
+    }
+
+    /** Write me to FILE, in the format read by mapped(). */
+    void write(File file) {
+        try (DataOutputStream header =
+                 new DataOutputStream(OutputStream.nullOutputStream());
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file)))) {
+            writeHeader(header, 0);
+            long at = (header.size() + 7) & ~7L;
+            writeHeader(out, at);
+            for (long k = header.size(); k < at; k += 1) {
+                out.writeByte(0);
+            }
+            for (long w = 0, n = words(_length); w < n; w += 1) {
+                out.writeLong(word(w));
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Write my header, saying that my longs start at AT, to OUT. */
+    private void writeHeader(DataOutputStream out, long at)
+        throws IOException {
+        out.writeInt(MAGIC);
+        out.writeUTF(_alpha.chars());
+        out.writeInt(_size);
+        for (int m = 0; m <= _size; m += 1) {
+            out.writeLong(_starts[m]);
+        }
+        out.writeLong(at);
+    }
+
+    /** Return the number of longs holding LENGTH characters. */
+    private long words(long length) {
+        return (length * _bits + 63) >>> 6;
+    }
+
+    /** Return my Wth long. */
+    private long word(long w) {
+        if (_words != null) {
+            return _words[(int) w];
+        }
+        return _segments[(int) (w / SEGMENT)].get((int) (w % SEGMENT));
+    }
+
+    /** Store the message lines of a file, as described in the class
+     *  comment, according to ARGS. */
+    public static void main(String... args) {
+        try {
+            Alphabet alpha = new Alphabet();
+            String output = null;
+            boolean mapped = false;
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k];
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--alphabet=")) {
+                    alpha = new Alphabet(value);
+                } else if (arg.startsWith("--write=")) {
+                    output = value;
+                } else if (arg.equals("--mapped")) {
+                    mapped = true;
+                } else {
+                    throw error("unknown option %s", arg);
+                }
+            }
+            if (args.length - k != 1 || mapped && output != null) {
+                throw error("usage: Corpus [--alphabet=CHARS] "
+                            + "[--write=CORPUS | --mapped] FILE");
+            }
+            Corpus corpus;
+            long strings = 0;
+            if (mapped) {
+                corpus = mapped(new File(args[k]));
+            } else {
+                corpus = new Corpus(alpha);
+                try (FileInputStream file = new FileInputStream(args[k])) {
+                    LineInput input = new LineInput(file);
+                    while (input.hasNextLine()) {
+                        String line = input.nextLine().toUpperCase();
+                        if (line.indexOf('*') < 0
+                            && !line.trim().isEmpty()) {
+                            int m = corpus.add(line);
+                            strings += STRING_BYTES
+                                + (corpus.length(m) + 7) / 8 * 8;
+                        }
+                    }
+                } catch (IOException excp) {
+                    throw error("could not read %s", args[k]);
+                }
+                if (output != null) {
+                    corpus.write(new File(output));
+                }
+            }
+            long length = Math.max(1, corpus.length());
+            System.out.printf("%d messages, %d characters at %d bits: "
+                              + "%.3f bytes/char packed", corpus.size(),
+                              corpus.length(), corpus.bits(),
+                              (double) corpus.bytes() / length);
+            if (!mapped) {
+                System.out.printf(", %.3f as Strings",
+                                  (double) strings / length);
+            }
+            System.out.println();
+            int[] into = new int[1 << 16];
+            long best = Long.MAX_VALUE, sum = 0;
+            for (int r = 0; r < 5; r += 1) {
+                long start = System.nanoTime();
+                for (long p = 0; p < corpus.length(); p += into.length) {
+                    int count = (int) Math.min(into.length,
+                                               corpus.length() - p);
+                    corpus.extract(p, count, into, 0);
+                    sum += into[count - 1];
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.err.printf("extracted at %.1f M chars/s (%d)%n",
+                              corpus.length() * 1e3 / Math.max(best, 1),
+                              sum);
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Number of longs in each mapped segment of a corpus file. */
+    private static final long SEGMENT = 1 << 27;
+
+    /** Bytes taken by a String of compact Latin-1 characters besides
+     *  its characters: its header and fields, and its array's header. */
+    private static final long STRING_BYTES = 24 + 16;
+
+    /** My alphabet. */
+    private final Alphabet _alpha;
+
+    /** Number of bits per character, and a mask of that many. */
+    private final int _bits, _mask;
+
+    /** My characters, packed, when on the heap; null if mapped. */
+    private long[] _words;
+
+    /** My characters, packed, in segments of SEGMENT longs, when
+     *  mapped; null if on the heap. */
+    private final LongBuffer[] _segments;
+
+    /** Entry M is the position of the first character of message M;
+     *  entry _size is _length. */
+    private long[] _starts;
+
+    /** Number of messages. */
+    private int _size;
+
+    /** Number of characters. */
+    private long _length;
+}
@@ -0,0 +1,187 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Corpus class.
+ *  @author Nazli Urenli
+ */
+public class CorpusTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return an alphabet of the first SIZE characters from 'A' on. */
+    private Alphabet alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (int k = 0; k < size; k += 1) {
+            chars.append((char) ('A' + k));
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return a corpus over ALPHA of COUNT random messages from RANDOM,
+     *  whose indices are added to MESSAGES. */
+    private Corpus corpus(Alphabet alpha, Random random, int count,
+                          ArrayList<int[]> messages) {
+        Corpus result = new Corpus(alpha);
+        for (int m = 0; m < count; m += 1) {
+            int[] text = new int[random.nextInt(100)];
+            for (int k = 0; k < text.length; k += 1) {
+                text[k] = random.nextInt(alpha.size());
+            }
+            assertEquals(m, result.add(text, 0, text.length));
+            messages.add(text);
+        }
+        return result;
+    }
+
+    /** Check that CORPUS holds MESSAGES, reading them in every way,
+     *  using RANDOM to choose ranges. */
+    private void checkCorpus(String testId, Corpus corpus,
+                             ArrayList<int[]> messages, Random random) {
+        int[] all = new int[0];
+        assertEquals(testId, messages.size(), corpus.size());
+        for (int m = 0; m < messages.size(); m += 1) {
+            int[] text = messages.get(m);
+            assertEquals(testId, all.length, corpus.start(m));
+            assertArrayEquals(msg(testId, "message %d", m), text,
+                              corpus.indices(m));
+            Corpus.Cursor cursor = corpus.cursor(m);
+            for (int k = 0; k < text.length; k += 1) {
+                assertTrue(testId, cursor.hasNext());
+                assertEquals(testId, text[k], cursor.next());
+            }
+            assertFalse(testId, cursor.hasNext());
+            int at = all.length;
+            all = Arrays.copyOf(all, at + text.length);
+            System.arraycopy(text, 0, all, at, text.length);
+        }
+        assertEquals(testId, all.length, corpus.length());
+        for (int r = 0; r < 200; r += 1) {
+            int from = random.nextInt(all.length + 1);
+            int count = random.nextInt(all.length - from + 1);
+            int[] into = new int[count + 2];
+            corpus.extract(from, count, into, 1);
+            assertArrayEquals(msg(testId, "%d + %d", from, count),
+                              Arrays.copyOfRange(all, from, from + count),
+                              Arrays.copyOfRange(into, 1, count + 1));
+            if (count > 0) {
+                assertEquals(testId, all[from], corpus.get(from));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testPacking() {
+        Random random = new Random(46);
+        int[] sizes = { 1, 2, 3, 26, 27, 32, 33, 64, 100 };
+        int[] bits = { 1, 1, 2, 5, 5, 5, 6, 6, 7 };
+        for (int k = 0; k < sizes.length; k += 1) {
+            ArrayList<int[]> messages = new ArrayList<>();
+            Corpus corpus = corpus(alphabet(sizes[k]), random, 50, messages);
+            assertEquals(bits[k], corpus.bits());
+            checkCorpus("testPacking " + sizes[k], corpus, messages, random);
+        }
+    }
+
+    @Test
+    public void testRejectedAdd() {
+        Random random = new Random(4600);
+        ArrayList<int[]> messages = new ArrayList<>();
+        Corpus corpus = corpus(UPPER, random, 7, messages);
+        int[] bad = new int[40];
+        Arrays.fill(bad, 25);
+        bad[30] = 26;
+        try {
+            corpus.add(bad, 0, bad.length);
+            fail("index 26 was accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        int[] text = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13 };
+        assertEquals(7, corpus.add(text, 0, text.length));
+        messages.add(text);
+        checkCorpus("testRejectedAdd", corpus, messages, random);
+    }
+
+    @Test
+    public void testStrings() {
+        Corpus corpus = Corpus.of(UPPER, Arrays.asList(
+            "HELLO WORLD", "", "1234", "ZYXWVUTSRQPONMLKJIHGFEDCBA"));
+        assertEquals(4, corpus.size());
+        assertEquals("HELLOWORLD", corpus.message(0));
+        assertEquals("", corpus.message(1));
+        assertEquals("", corpus.message(2));
+        assertEquals("ZYXWVUTSRQPONMLKJIHGFEDCBA", corpus.message(3));
+        assertEquals(36, corpus.length());
+        assertEquals(8 * ((36 * 5 + 63) / 64 + 5), corpus.bytes());
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        Random random = new Random(460);
+        ArrayList<int[]> messages = new ArrayList<>();
+        Corpus corpus = corpus(UPPER, random, 300, messages);
+        File file = File.createTempFile("corpus", ".ec");
+        try {
+            corpus.write(file);
+            Corpus mapped = Corpus.mapped(file);
+            assertEquals(UPPER_STRING, mapped.alphabet().chars());
+            checkCorpus("testMapped", mapped, messages, random);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotACorpus() throws IOException {
+        File file = File.createTempFile("corpus", ".ec");
+        try {
+            Files.write(file.toPath(),
+                        "HELLO WORLD\n".getBytes(StandardCharsets.UTF_8));
+            Corpus.mapped(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testConvert() {
+        Corpus corpus = Corpus.of(UPPER, Arrays.asList(
+            "AAAAA AAAAA", "HELLO WORLD"));
+        String[] expected = { "BDZGOWCXLT", null };
+        for (int m = 0; m < corpus.size(); m += 1) {
+            Machine M = navalMachine(new String[] {
+                    "B", "Beta", "I", "II", "III" }, "AAAA", "");
+            int[] text = corpus.indices(m);
+            M.convert(text, 0, text.length);
+            Machine N = navalMachine(new String[] {
+                    "B", "Beta", "I", "II", "III" }, "AAAA", "");
+            String cipher = N.convert(corpus.message(m));
+            if (expected[m] != null) {
+                assertEquals(expected[m], cipher);
+            }
+            for (int k = 0; k < text.length; k += 1) {
+                assertEquals(cipher.charAt(k), UPPER.toChar(text[k]));
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A finder of the places where cribs (guessed plaintexts) may lie in a
+ *  ciphertext.  Since a reflector is a derangement, no character ever
+ *  encrypts to itself, so a crib cannot lie where any of its characters
+ *  is above the same ciphertext character.  The ciphertext is taken in
+ *  blocks, each held as one bitset of positions per character; for each
+ *  machine word of 64 starting positions, the positions excluded by a
+ *  crib are the OR of the bitsets of its characters, each shifted by its
+ *  place in the crib, so that all the placements of one word are tested
+ *  with one shift, OR, and complement per crib character.  A block keeps
+ *  the end of the one before it, so that the ciphertext, however long,
+ *  is scanned once for all the cribs with fixed memory.
+ *
+ *  The usage is
+ *      java enigma.CribFinder [--alphabet=CHARS] [--count]
+ *           --crib=WORD ... FILE
+ *  which prints each possible placement of each WORD in the ciphertext in
+ *  FILE (its characters in the alphabet, less those from a '*' to the end
+ *  of its line), numbered from 0, or with --count, just how many there
+ *  are of each.
+ *  @author Nazli Urenli
+ */
+final class CribFinder {
+
+    /** Receives the placements found. */
+    interface Sink {
+        /** Accept a placement of crib #CRIB at POSITION. */
+        void found(int crib, long position);
+    }
+
+    /** Number of ciphertext characters in a full block. */
+    static final int BLOCK = 1 << 20;
+
+    /** A finder for CRIBS, all non-empty strings of characters in
+     *  ALPHA. */
+    CribFinder(Alphabet alpha, List<String> cribs) {
+        _alphabet = alpha;
+        _cribs = new int[cribs.size()][];
+        int longest = 0;
+        for (int k = 0; k < _cribs.length; k += 1) {
+            String crib = cribs.get(k);
+            if (crib.isEmpty()) {
+                throw error("empty crib");
+            }
+            _cribs[k] = new int[crib.length()];
+            for (int j = 0; j < crib.length(); j += 1) {
+                if (!alpha.contains(crib.charAt(j))) {
+                    throw error("crib %s is not in the alphabet", crib);
+                }
+                _cribs[k][j] = alpha.toInt(crib.charAt(j));
+            }
+            longest = Math.max(longest, crib.length());
+        }
+        _longest = longest;
+        _bits = new long[alpha.size()][0];
+    }
+
+    /** Return the number of cribs. */
+    int cribs() {
+        return _cribs.length;
+    }
+
+    /** Return the length of the longest crib. */
+    int longest() {
+        return _longest;
+    }
+
+    /** Pass to SINK every placement, at a position P < LIMIT, of each crib
+     *  that fits within TEXT[0 .. LENGTH-1] (alphabet indices), numbering
+     *  P from BASE.  Not for concurrent use. */
+    void find(int[] text, int length, int limit, long base, Sink sink) {
+        int words = (length + 63) >>> 6;
+        int used = words + (_longest >>> 6) + 2;
+        for (int c = 0; c < _bits.length; c += 1) {
+            if (_bits[c].length < used) {
+                _bits[c] = new long[Math.max(used, _bits[c].length * 2)];
+            } else {
+                Arrays.fill(_bits[c], 0, used, 0L);
+            }
+        }
+        for (int p = 0; p < length; p += 1) {
+            _bits[text[p]][p >>> 6] |= 1L << p;
+        }
+        for (int k = 0; k < _cribs.length; k += 1) {
+            int[] crib = _cribs[k];
+            int last = Math.min(limit, length - crib.length + 1);
+            for (int w = 0; w << 6 < last; w += 1) {
+                long excluded = 0;
+                for (int j = 0; j < crib.length && excluded != -1L; j += 1) {
+                    long[] bits = _bits[crib[j]];
+                    int x = w + (j >>> 6), shift = j & 63;
+                    long word = bits[x] >>> shift;
+                    if (shift != 0) {
+                        word |= bits[x + 1] << (64 - shift);
+                    }
+                    excluded |= word;
+                }
+                long open = ~excluded;
+                if (last - (w << 6) < 64) {
+                    open &= (1L << (last - (w << 6))) - 1;
+                }
+                while (open != 0) {
+                    sink.found(k, base + (w << 6)
+                               + Long.numberOfTrailingZeros(open));
+                    open &= open - 1;
+                }
+            }
+        }
+    }
+
+    /** Return the possible positions of crib #CRIB in TEXT (alphabet
+     *  indices), in increasing order. */
+    int[] placements(int crib, int[] text) {
+        int[][] result = { new int[16] };
+        int[] count = { 0 };
+        find(text, text.length, text.length, 0, (k, position) -> {
+            if (k == crib) {
+                if (count[0] == result[0].length) {
+                    result[0] = Arrays.copyOf(result[0], count[0] * 2);
+                }
+                result[0][count[0]] = (int) position;
+                count[0] += 1;
+            }
+        });
+        return Arrays.copyOf(result[0], count[0]);
+    }
+
+    /** Pass to SINK every placement of each crib in the ciphertext read
+     *  from IN (its characters in the alphabet, after conversion to upper
+     *  case, less those from a '*' to the end of a line), and return the
+     *  number of ciphertext characters. */
+    long scan(Reader in, Sink sink) throws IOException {
+        int[] text = new int[Math.max(BLOCK, 2 * _longest)];
+        int length = 0;
+        long base = 0;
+        boolean comment = false;
+        char[] buffer = new char[1 << 16];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            for (int k = 0; k < n; k += 1) {
+                char c = buffer[k];
+                if (comment) {
+                    comment = c != '\n' && c != '\r';
+                } else if (c == '*') {
+                    comment = true;
+                } else {
+                    c = Character.toUpperCase(c);
+                    if (_alphabet.contains(c)) {
+                        text[length] = _alphabet.toInt(c);
+                        length += 1;
+                        if (length == text.length) {
+                            int keep = Math.max(0, _longest - 1);
+                            find(text, length, length - keep, base, sink);
+                            System.arraycopy(text, length - keep, text, 0,
+                                             keep);
+                            base += length - keep;
+                            length = keep;
+                        }
+                    }
+                }
+            }
+        }
+        find(text, length, length, base, sink);
+        return base + length;
+    }
+
+    /** Find cribs in a file, as described in the class comment, according
+     *  to ARGS. */
+    public static void main(String... args) {
+        try {
+            Alphabet alpha = new Alphabet();
+            ArrayList<String> cribs = new ArrayList<>();
+            boolean countOnly = false;
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k];
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--alphabet=")) {
+                    alpha = new Alphabet(value);
+                } else if (arg.startsWith("--crib=")) {
+                    cribs.add(value.toUpperCase());
+                } else if (arg.equals("--count")) {
+                    countOnly = true;
+                } else {
+                    throw error("unknown option %s", arg);
+                }
+            }
+            if (args.length - k != 1 || cribs.isEmpty()) {
+                throw error("usage: CribFinder [--alphabet=CHARS] [--count] "
+                            + "--crib=WORD ... FILE");
+            }
+            CribFinder finder = new CribFinder(alpha, cribs);
+            long[] counts = new long[cribs.size()];
+            boolean show = !countOnly;
+            long start = System.nanoTime();
+            long length;
+            try (Reader in = new InputStreamReader(
+                     new FileInputStream(args[k]))) {
+                length = finder.scan(in, (crib, position) -> {
+                    counts[crib] += 1;
+                    if (show) {
+                        System.out.printf("%s %d%n", cribs.get(crib),
+                                          position);
+                    }
+                });
+            } catch (IOException excp) {
+                throw error("could not read %s", args[k]);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            for (int c = 0; c < counts.length; c += 1) {
+                System.err.printf("%s: %d placements%n", cribs.get(c),
+                                  counts[c]);
+            }
+            System.err.printf("%d cribs, %d characters in %.3f s "
+                              + "(%.1f M/s)%n", cribs.size(), length,
+                              seconds, length / seconds / 1e6);
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** The alphabet of the ciphertext. */
+    private final Alphabet _alphabet;
+
+    /** The cribs, as alphabet indices. */
+    private final int[][] _cribs;
+
+    /** Length of the longest crib. */
+    private final int _longest;
+
+    /** Scratch: the positions of each character in the current block. */
+    private final long[][] _bits;
+}
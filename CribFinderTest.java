@@ -0,0 +1,124 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribFinder class.
+ *  @author Nazli Urenli
+ */
+public class CribFinderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return LENGTH random characters from the first LETTERS of UPPER,
+     *  chosen by RANDOM. */
+    private String randomText(Random random, int letters, int length) {
+        char[] result = new char[length];
+        for (int k = 0; k < length; k += 1) {
+            result[k] = UPPER.toChar(random.nextInt(letters));
+        }
+        return new String(result);
+    }
+
+    /** Return whether CRIB may lie at position P of TEXT. */
+    private boolean fits(String text, String crib, int p) {
+        if (p + crib.length() > text.length()) {
+            return false;
+        }
+        for (int j = 0; j < crib.length(); j += 1) {
+            if (text.charAt(p + j) == crib.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testPlacements() {
+        Random random = new Random(39);
+        String text = randomText(random, 4, 1000);
+        List<String> cribs = List.of("A", "ABCD", randomText(random, 4, 63),
+                                     randomText(random, 4, 64),
+                                     randomText(random, 4, 65),
+                                     randomText(random, 4, 1001));
+        CribFinder finder = new CribFinder(UPPER, cribs);
+        int[] cipher = UPPER.encode(text);
+        for (int c = 0; c < cribs.size(); c += 1) {
+            ArrayList<Integer> expected = new ArrayList<>();
+            for (int p = 0; p < text.length(); p += 1) {
+                if (fits(text, cribs.get(c), p)) {
+                    expected.add(p);
+                }
+            }
+            int[] found = finder.placements(c, cipher);
+            assertEquals(msg("crib", "#%d", c), expected.size(),
+                         found.length);
+            for (int k = 0; k < found.length; k += 1) {
+                assertEquals((int) expected.get(k), found[k]);
+            }
+        }
+    }
+
+    @Test
+    public void testEnigmaPlacement() {
+        String plain = "WETTERVORHERSAGEBISKAYA";
+        Machine M = navalMachine(new String[] {"B", "Beta", "III", "IV",
+                                               "I"}, "AXLE", "(HQ) (EX)");
+        String cipher = M.convert("ANXKEINEBESONDERENEREIGNISSE"
+                                  + plain + "HEUTEABEND");
+        CribFinder finder = new CribFinder(UPPER, List.of(plain));
+        int[] found = finder.placements(0, UPPER.encode(cipher));
+        assertTrue(Arrays.binarySearch(found, 28) >= 0);
+    }
+
+    @Test
+    public void testScanAcrossBlocks() throws IOException {
+        Random random = new Random(1939);
+        int length = 2 * CribFinder.BLOCK + 77;
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < length; k += 100) {
+            text.append(randomText(random, 2, Math.min(100, length - k))
+                        .toLowerCase());
+            text.append(k % 1000 == 0 ? "\n* ABC\n" : "\n");
+        }
+        String cipher = text.toString().replaceAll("\\*.*|\\s", "")
+            .toUpperCase();
+        assertEquals(length, cipher.length());
+        List<String> cribs = List.of("AAAAAAAAAA", "BBBBBBBBBBBB", "A");
+        long[] counts = new long[cribs.size()];
+        long[] last = { -1, -1, -1 };
+        CribFinder finder = new CribFinder(UPPER, cribs);
+        long scanned = finder.scan(new StringReader(text.toString()),
+            (crib, position) -> {
+                assertTrue(position > last[crib]);
+                assertTrue(fits(cipher, cribs.get(crib), (int) position));
+                last[crib] = position;
+                counts[crib] += 1;
+            });
+        assertEquals(length, scanned);
+        for (int c = 0; c < cribs.size(); c += 1) {
+            long expected = 0;
+            for (int p = 0; p < length; p += 1) {
+                expected += fits(cipher, cribs.get(c), p) ? 1 : 0;
+            }
+            assertEquals(expected, counts[c]);
+        }
+    }
+}
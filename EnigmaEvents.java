@@ -0,0 +1,229 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.TreeMap;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static enigma.EnigmaException.*;
+
+/** Java Flight Recorder events of Main, and a summary of a recording of
+ *  them.  Reading the configuration, setting up the machine for each
+ *  settings line, and converting each settings block are recorded when
+ *  a recording is running, e.g. with
+ *      java -XX:StartFlightRecording=filename=run.jfr enigma.Main ...
+ *  Set-ups and blocks shorter than their thresholds are not recorded, and
+ *  Main's --jfr-sample=N option records only every Nth.  Main looks for
+ *  events only if that option is given or a recording was running when
+ *  it first asked; otherwise no jdk.jfr class is even loaded, and each
+ *  place that may record an event costs only a check of a flag.
+ *  The usage of the summary is
+ *      java enigma.EnigmaEvents RECORDING
+ *  which prints, for each kind of event, how many there were and the
+ *  distribution of their durations, and for blocks, the characters per
+ *  second and how their time divided between setting up, converting,
+ *  and formatting output.
+ *  @author Nazli Urenli
+ */
+final class EnigmaEvents {
+
+    /** Reading and checking of a configuration file. */
+    @Name("enigma.ConfigRead")
+    @Label("Read Configuration")
+    @Category("Enigma")
+    @Threshold("0 ms")
+    static final class ConfigRead extends Event {
+        /** Size of the configuration. */
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    /** Setting up the machine from a settings line. */
+    @Name("enigma.SetUp")
+    @Label("Set Up")
+    @Category("Enigma")
+    @Threshold("20 us")
+    static final class SetUp extends Event {
+        /** The rotors inserted, reflector first. */
+        @Label("Rotors")
+        String rotors;
+        /** Number of plugboard cycles. */
+        @Label("Plugboard Cycles")
+        int cycles;
+    }
+
+    /** Setting up for and converting the messages of one settings
+     *  line. */
+    @Name("enigma.Block")
+    @Label("Settings Block")
+    @Category("Enigma")
+    @Description("A settings line and the message lines that follow it")
+    @Threshold("1 ms")
+    static final class Block extends Event {
+        /** Number of message lines. */
+        @Label("Lines")
+        long lines;
+        /** Number of characters converted. */
+        @Label("Characters")
+        long characters;
+        /** Time spent converting. */
+        @Label("Convert Time")
+        @Timespan
+        long convertNanos;
+        /** Time spent formatting output. */
+        @Label("Format Time")
+        @Timespan
+        long formatNanos;
+        /** Time spent setting up. */
+        @Label("Set-Up Time")
+        @Timespan
+        long setUpNanos;
+    }
+
+    /** Return a begun ConfigRead event, or null if none is being
+     *  recorded. */
+    static ConfigRead configRead() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        ConfigRead result = new ConfigRead();
+        result.begin();
+        return result.isEnabled() ? result : null;
+    }
+
+    /** Return a begun SetUp event, or null if none is being recorded. */
+    static SetUp setUp() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        SetUp result = new SetUp();
+        result.begin();
+        return result.isEnabled() ? result : null;
+    }
+
+    /** Return a begun Block event, or null if none is being recorded. */
+    static Block block() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        Block result = new Block();
+        result.begin();
+        return result.isEnabled() ? result : null;
+    }
+
+    /** Chooses every Nth of a stream of events. */
+    static final class Sampler {
+        /** A sampler choosing every EVERYth event, starting with the
+         *  first. */
+        Sampler(int every) {
+            _every = every;
+        }
+
+        /** Return true iff the next event is chosen. */
+        synchronized boolean next() {
+            boolean result = _count % _every == 0;
+            _count += 1;
+            return result;
+        }
+
+        /** Interval between chosen events. */
+        private final int _every;
+        /** Number of events seen. */
+        private long _count;
+    }
+
+    /** Print a summary of the recording named by ARGS[0], as described in
+     *  the class comment. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 1) {
+                throw error("usage: EnigmaEvents RECORDING");
+            }
+            TreeMap<String, ArrayList<Long>> durations = new TreeMap<>();
+            long lines = 0, characters = 0, convert = 0, format = 0,
+                setUp = 0, blocks = 0;
+            try (RecordingFile recording =
+                     new RecordingFile(Paths.get(args[0]))) {
+                while (recording.hasMoreEvents()) {
+                    RecordedEvent event = recording.readEvent();
+                    String name = event.getEventType().getName();
+                    if (!name.startsWith("enigma.")) {
+                        continue;
+                    }
+                    durations.computeIfAbsent(name.substring(7),
+                                              (k) -> new ArrayList<>())
+                        .add(event.getDuration().toNanos());
+                    if (name.equals("enigma.Block")) {
+                        lines += event.getLong("lines");
+                        characters += event.getLong("characters");
+                        convert += nanos(event, "convertNanos");
+                        format += nanos(event, "formatNanos");
+                        setUp += nanos(event, "setUpNanos");
+                        blocks += event.getDuration().toNanos();
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", args[0]);
+            }
+            System.out.printf("%-12s %8s %10s %10s %10s %10s %10s%n",
+                              "event", "count", "total ms", "mean us",
+                              "p50 us", "p99 us", "max us");
+            for (String name : durations.keySet()) {
+                ArrayList<Long> times = durations.get(name);
+                Collections.sort(times);
+                long total = 0;
+                for (long time : times) {
+                    total += time;
+                }
+                System.out.printf("%-12s %8d %10.3f %10.1f %10.1f %10.1f "
+                                  + "%10.1f%n", name, times.size(),
+                                  total / 1e6, total / 1e3 / times.size(),
+                                  percentile(times, 50) / 1e3,
+                                  percentile(times, 99) / 1e3,
+                                  times.get(times.size() - 1) / 1e3);
+            }
+            if (blocks > 0) {
+                System.out.printf("blocks: %d lines, %d characters, "
+                                  + "%.0f chars/s%n", lines, characters,
+                                  characters * 1e9 / blocks);
+                System.out.printf("block time: set-up %.1f%%, convert "
+                                  + "%.1f%%, format %.1f%%, other %.1f%%%n",
+                                  100.0 * setUp / blocks,
+                                  100.0 * convert / blocks,
+                                  100.0 * format / blocks,
+                                  100.0 * (blocks - setUp - convert - format)
+                                  / blocks);
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the timespan field NAME of EVENT, in nanoseconds. */
+    private static long nanos(RecordedEvent event, String name) {
+        Duration span = event.getDuration(name);
+        return span.toNanos();
+    }
+
+    /** Return the Pth percentile of TIMES, which is sorted and not
+     *  empty. */
+    private static long percentile(ArrayList<Long> times, int p) {
+        return times.get((int) ((times.size() - 1) * (long) p / 100));
+    }
+}
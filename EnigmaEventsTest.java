@@ -0,0 +1,141 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaEvents class.
+ *  @author Nazli Urenli
+ */
+public class EnigmaEventsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration. */
+    private static final byte[] CONFIG = String.join("\n",
+        "ABCDEFGH", "4 2",
+        "I MA (ABC) (DEFGH)", "II MCE (AEBF) (CDGH)",
+        "F N (ABCDEFGH)", "R R (AE) (BF) (CG) (DH)",
+        "").getBytes(StandardCharsets.UTF_8);
+
+    /** Return the events recorded while Main converts INPUT with OPTIONS,
+     *  recording every event of the enigma events. */
+    private List<RecordedEvent> record(String input,
+                                       HashMap<String, String> options)
+        throws IOException {
+        File jfr = File.createTempFile("events", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] { "enigma.ConfigRead",
+                                              "enigma.SetUp",
+                                              "enigma.Block" }) {
+                recording.enable(name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            runMain(CONFIG, input, options, false);
+            recording.stop();
+            recording.dump(jfr.toPath());
+            return RecordingFile.readAllEvents(jfr.toPath());
+        } finally {
+            jfr.delete();
+        }
+    }
+
+    /** Return the number of EVENTS named NAME. */
+    private int count(List<RecordedEvent> events, String name) {
+        int result = 0;
+        for (RecordedEvent event : events) {
+            result += event.getEventType().getName().equals(name) ? 1 : 0;
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testEvents() throws IOException {
+        String input = "* R F II I ABC\nABCDE\nFGH\n"
+            + "* R F I II CCC\nHHHHH\n";
+        List<RecordedEvent> events = record(input, new HashMap<>());
+        assertEquals(1, count(events, "enigma.ConfigRead"));
+        assertEquals(2, count(events, "enigma.SetUp"));
+        assertEquals(2, count(events, "enigma.Block"));
+        long lines = 0, characters = 0;
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (name.equals("enigma.Block")) {
+                lines += event.getLong("lines");
+                characters += event.getLong("characters");
+                assertTrue(event.getDuration("convertNanos")
+                           .compareTo(event.getDuration()) <= 0);
+            } else if (name.equals("enigma.SetUp")) {
+                assertTrue(event.getString("rotors").startsWith("R F "));
+            } else if (name.equals("enigma.ConfigRead")) {
+                assertEquals(CONFIG.length, event.getLong("bytes"));
+            }
+        }
+        assertEquals(3, lines);
+        assertEquals(13, characters);
+    }
+
+    @Test
+    public void testModes() throws IOException {
+        String input = "* R F II I ABC\nABCDE\nFGH\n"
+            + "* R F I II CCC\nHHHHH\n";
+        File archive = File.createTempFile("events", ".ea");
+        try {
+            String[][] modes = {
+                { "parallel", "2" }, { "pipeline", "4" },
+                { "archive", archive.getPath() }, { "indicators", "" }
+            };
+            for (String[] mode : modes) {
+                HashMap<String, String> options = new HashMap<>();
+                options.put(mode[0], mode[1]);
+                List<RecordedEvent> events = record(input, options);
+                assertEquals(mode[0], 2, count(events, "enigma.Block"));
+                long lines = 0, characters = 0;
+                for (RecordedEvent event : events) {
+                    if (event.getEventType().getName()
+                        .equals("enigma.Block")) {
+                        lines += event.getLong("lines");
+                        characters += event.getLong("characters");
+                    }
+                }
+                assertEquals(mode[0], 3, lines);
+                assertEquals(mode[0], 13, characters);
+            }
+        } finally {
+            archive.delete();
+        }
+    }
+
+    @Test
+    public void testSampling() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 10; k += 1) {
+            input.append("* R F I II ABA\nABC\n");
+        }
+        HashMap<String, String> options = new HashMap<>();
+        options.put("jfr-sample", "4");
+        List<RecordedEvent> events = record(input.toString(), options);
+        assertEquals(3, count(events, "enigma.SetUp"));
+        assertEquals(3, count(events, "enigma.Block"));
+    }
+}
@@ -13,6 +13,11 @@ class FixedRotor extends Rotor {
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
     }
+    /** A copy of a fixed rotor is fixed. */
+    @Override
+    Rotor copy() {
+        return copyInto(new FixedRotor(name(), permutation()));
+    }
     /** A fixed rotor can not advance. */
     @Override
     void advance() {
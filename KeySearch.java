@@ -0,0 +1,558 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A search of the keys of a machine configuration (see KeySpace) for
+ *  those whose decryptions of a ciphertext have the highest index of
+ *  coincidence, divided among worker processes.  The coordinator splits
+ *  the keys into partitions and leases them, one at a time, to the
+ *  workers that connect to it over local sockets.  A worker that closes
+ *  its connection, or sends nothing for a lease period, is presumed dead,
+ *  and its partition is leased again to another.  The coordinator merges
+ *  the best candidates of each partition as it is finished.
+ *
+ *  The usage is
+ *      java enigma.KeySearch [--spawn=N] [--port=P] [--top=K]
+ *           [--partition=KEYS] [--lease=MILLIS] [--rotors=R,R,...]
+ *           [--rings=RINGS] [--search-rings[=M]] [--plugboard=CYCLES]
+ *           [--crib=WORD | --words=FILE] CONFIG CIPHERTEXT
+ *  to coordinate a search of the keys of the configuration file CONFIG
+ *  (only of rotor order R,R,... if given, with ring setting RINGS and
+ *  plugboard CYCLES, which are not searched, except that with
+ *  --search-rings every ring setting of the rightmost M rotors, or of all
+ *  the moving rotors, is searched as well) for the
+ *  K best decryptions of the message lines in the file CIPHERTEXT (or,
+ *  with a crib, those matching most of WORD somewhere it may lie, or
+ *  with words, those scoring best against the words in FILE; see
+ *  WordScorer), starting N local workers, and
+ *      java enigma.KeySearch --worker=HOST:PORT
+ *  to work for the coordinator listening on PORT at HOST.
+ *  @author Nazli Urenli
+ */
+final class KeySearch {
+
+    /** First int sent to a worker. */
+    static final int MAGIC = 0x4b657953;
+
+    /** Message kinds: a lease from the coordinator, no more leases, a
+     *  worker's progress, and a worker's candidates for its lease. */
+    static final byte LEASE = 'L', QUIT = 'Q', PROGRESS = 'P', RESULT = 'R';
+
+    /** A search of the keys of CONFIG, the contents of a configuration
+     *  file, restricted to rotor ORDER if it is not null, for the TOP best
+     *  decryptions of CIPHERTEXT with plugboard PLUGBOARD, in partitions
+     *  of PARTITION keys, leased for LEASEMILLIS at a time. */
+    KeySearch(byte[] config, String ciphertext, String plugboard,
+              String[] order, int top, long partition, int leaseMillis) {
+        Machine machine = Main.readConfig(config);
+        _alphabet = machine.alphabet();
+        _config = config;
+        _cipher = ciphertext;
+        _plugboard = plugboard;
+        _order = order == null ? "" : String.join(" ", order);
+        _best = new Candidates(top);
+        _top = top;
+        _leaseMillis = leaseMillis;
+        _maxPartition = partition;
+        setSpace(new KeySpace(machine, order));
+    }
+
+    /** Search the keys of SPACE, divided into partitions anew. */
+    private void setSpace(KeySpace space) {
+        _space = space;
+        int partitions = (int) Math.min(Integer.MAX_VALUE,
+            (_space.size() + _maxPartition - 1) / _maxPartition);
+        _partition = partitions == 0 ? _maxPartition
+            : (_space.size() + partitions - 1) / partitions;
+        _progress = new long[partitions];
+        _done = new boolean[partitions];
+        _pending = new ArrayDeque<>();
+        for (int p = 0; p < partitions; p += 1) {
+            _pending.add(p);
+        }
+    }
+
+    /** Return the keys of my configuration and rotor order with ring
+     *  setting RINGS, searching the rings of the rightmost RINGSLOTS
+     *  rotors. */
+    private KeySpace space(String rings, int ringSlots) {
+        Machine machine = Main.readConfig(_config);
+        return new KeySpace(machine,
+                            _order.isEmpty() ? null
+                            : Main.splitAtBlanks(_order),
+                            rings, ringSlots == -1 ? machine.numPawls()
+                            : ringSlots);
+    }
+
+    /** Return the keys I search. */
+    KeySpace space() {
+        return _space;
+    }
+
+    /** Return the plugboard of my keys. */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** Search keys with the ring setting RINGS rather than none, apart
+     *  from any rings searched.  Must precede listen. */
+    void setRings(String rings) {
+        setSpace(space(rings, _space.ringSlots()));
+    }
+
+    /** Search every ring setting of the rightmost RINGSLOTS rotors as
+     *  well, which must be moving rotors, or of all the moving rotors if
+     *  RINGSLOTS is -1.  Must precede listen. */
+    void setSearchRings(int ringSlots) {
+        setSpace(space(_space.rings(), ringSlots));
+    }
+
+    /** Score keys instead by the most characters of CRIB that their
+     *  decryptions match at any place in the ciphertext where CRIB may lie
+     *  (see CribFinder), and return the number of such places.  Must
+     *  precede listen. */
+    int setCrib(String crib) {
+        CribFinder finder = new CribFinder(_alphabet, List.of(crib));
+        _placements = finder.placements(0, _alphabet.encode(_cipher));
+        if (_placements.length == 0) {
+            throw error("crib %s fits nowhere in the ciphertext", crib);
+        }
+        _crib = crib;
+        return _placements.length;
+    }
+
+    /** Score keys instead by the words of WORDS, separated by whitespace,
+     *  that their decryptions contain (see WordScorer), and return the
+     *  number of words used.  Must precede listen. */
+    int setWords(String words) {
+        List<String> list = WordScorer.words(words, _alphabet);
+        if (list.isEmpty()) {
+            throw error("no words in the alphabet");
+        }
+        _words = String.join(" ", list);
+        return list.size();
+    }
+
+    /** Start accepting workers on PORT of the loopback interface (any free
+     *  port if 0), and return the port. */
+    int listen(int port) throws IOException {
+        _server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        _start = System.nanoTime();
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = _server.accept();
+                    Thread worker = new Thread(() -> serve(socket),
+                                               "key-search-lease");
+                    worker.setDaemon(true);
+                    worker.start();
+                }
+            } catch (IOException excp) {
+                /* The server socket is closed: the search is over. */
+            }
+        }, "key-search-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return _server.getLocalPort();
+    }
+
+    /** Wait up to MILLIS milliseconds for the search to finish, and return
+     *  true iff it has. */
+    synchronized boolean await(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (_finished < _done.length) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    /** Stop accepting workers. */
+    void close() {
+        try {
+            _server.close();
+        } catch (IOException excp) {
+            /* Nothing to be done. */
+        }
+    }
+
+    /** Return the best candidates found so far. */
+    synchronized Candidates best() {
+        Candidates result = new Candidates(_top);
+        result.addAll(_best);
+        return result;
+    }
+
+    /** Return the number of keys tried so far, counting those reported by
+     *  workers with partitions in progress. */
+    synchronized long keysTried() {
+        long result = 0;
+        for (int p = 0; p < _done.length; p += 1) {
+            result += _progress[p];
+        }
+        return result;
+    }
+
+    /** Return the number of keys tried per second since I started
+     *  listening. */
+    double keysPerSecond() {
+        double seconds = (System.nanoTime() - _start) / 1e9;
+        return keysTried() / Math.max(seconds, 1e-9);
+    }
+
+    /** Return a one-line summary of my progress. */
+    synchronized String status() {
+        return String.format("%d of %d keys, %d of %d partitions, "
+                             + "%d workers, %d reassigned, %.0f keys/s",
+                             keysTried(), _space.size(), _finished,
+                             _done.length, _workers, _reassigned,
+                             keysPerSecond());
+    }
+
+    /** Return the number of partitions leased again after their worker
+     *  died. */
+    synchronized int reassigned() {
+        return _reassigned;
+    }
+
+    /** Lease partitions to the worker connected to SOCKET until none are
+     *  left or the worker dies. */
+    private void serve(Socket socket) {
+        int partition = -1;
+        synchronized (this) {
+            _workers += 1;
+        }
+        try (socket) {
+            socket.setSoTimeout(_leaseMillis);
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(MAGIC);
+            writeBytes(out, _config);
+            writeString(out, _plugboard);
+            writeString(out, _order);
+            writeString(out, _cipher);
+            writeString(out, _crib);
+            out.writeInt(_placements.length);
+            for (int p : _placements) {
+                out.writeInt(p);
+            }
+            writeString(out, _words);
+            writeString(out, _space.rings());
+            out.writeInt(_space.ringSlots());
+            out.writeInt(_top);
+            out.writeInt(_leaseMillis);
+            while ((partition = lease()) >= 0) {
+                out.writeByte(LEASE);
+                out.writeInt(partition);
+                out.writeLong(start(partition));
+                out.writeLong(start(partition + 1));
+                out.flush();
+                byte kind;
+                while ((kind = in.readByte()) == PROGRESS) {
+                    in.readInt();
+                    progress(partition, in.readLong());
+                }
+                if (kind != RESULT || in.readInt() != partition) {
+                    throw new IOException("unexpected message");
+                }
+                finish(partition, Candidates.read(in, _top));
+                partition = -1;
+            }
+            out.writeByte(QUIT);
+            out.flush();
+        } catch (IOException | InterruptedException excp) {
+            /* The worker is dead or silent; its lease is returned. */
+        } finally {
+            synchronized (this) {
+                _workers -= 1;
+                if (partition >= 0) {
+                    _progress[partition] = 0;
+                    _pending.addFirst(partition);
+                    _reassigned += 1;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /** Return the first key of partition P. */
+    private long start(int p) {
+        return Math.min(_space.size(), p * _partition);
+    }
+
+    /** Return the next partition to lease, waiting while all those not
+     *  finished are leased, or -1 if all are finished. */
+    private synchronized int lease() throws InterruptedException {
+        while (_pending.isEmpty() && _finished < _done.length) {
+            wait();
+        }
+        return _pending.isEmpty() ? -1 : _pending.poll();
+    }
+
+    /** Record that DONE keys of partition P have been tried. */
+    private synchronized void progress(int p, long done) {
+        _progress[p] = done;
+    }
+
+    /** Record that partition P is finished, with candidates FOUND. */
+    private synchronized void finish(int p, Candidates found) {
+        if (!_done[p]) {
+            _done[p] = true;
+            _progress[p] = start(p + 1) - start(p);
+            _best.addAll(found);
+            _finished += 1;
+            notifyAll();
+        }
+    }
+
+    /** Write STR to OUT, as read by readString. */
+    static void writeString(DataOutputStream out, String str)
+        throws IOException {
+        writeBytes(out, str.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return a string written by writeString to IN. */
+    static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    /** Write BYTES to OUT, as read by readBytes. */
+    static void writeBytes(DataOutputStream out, byte[] bytes)
+        throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return the bytes written by writeBytes to IN. */
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+
+    /** Run a coordinator or a worker, as described in the class comment,
+     *  according to ARGS. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 1 && args[0].startsWith("--worker=")) {
+                String address = args[0].substring(9);
+                int colon = address.lastIndexOf(':');
+                if (colon < 0) {
+                    throw error("--worker needs HOST:PORT");
+                }
+                new KeySearchWorker(new Socket(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1)))).run();
+                return;
+            }
+            coordinate(args);
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp);
+            System.exit(1);
+        }
+    }
+
+    /** Coordinate the search described by ARGS (see the class comment),
+     *  and print its best candidates. */
+    private static void coordinate(String[] args) throws IOException {
+        int spawn = 0, port = 0, top = 10, lease = 10000;
+        long partition = 1 << 16;
+        String[] order = null;
+        String plugboard = "", rings = null, crib = null, words = null;
+        int ringSlots = 0;
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            String arg = args[k];
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--spawn=")) {
+                spawn = Integer.parseInt(value);
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(value);
+            } else if (arg.startsWith("--top=")) {
+                top = Integer.parseInt(value);
+            } else if (arg.startsWith("--partition=")) {
+                partition = Long.parseLong(value);
+            } else if (arg.startsWith("--lease=")) {
+                lease = Integer.parseInt(value);
+            } else if (arg.startsWith("--rotors=")) {
+                order = Main.splitAtBlanks(value.replace(',', ' '));
+            } else if (arg.startsWith("--rings=")) {
+                rings = value.toUpperCase();
+            } else if (arg.equals("--search-rings")) {
+                ringSlots = -1;
+            } else if (arg.startsWith("--search-rings=")) {
+                ringSlots = Integer.parseInt(value);
+                if (ringSlots <= 0) {
+                    throw error("--search-rings needs a positive count");
+                }
+            } else if (arg.startsWith("--plugboard=")) {
+                plugboard = value;
+            } else if (arg.startsWith("--crib=")) {
+                crib = value.toUpperCase();
+            } else if (arg.startsWith("--words=")) {
+                words = value;
+            } else {
+                throw error("unknown option %s", arg);
+            }
+        }
+        if (args.length - k != 2 || top <= 0 || partition <= 0
+            || lease <= 0 || spawn < 0 || (crib != null && words != null)) {
+            throw error("usage: KeySearch [--spawn=N] [--port=P] [--top=K] "
+                        + "[--partition=KEYS] [--lease=MILLIS] "
+                        + "[--rotors=R,R,...] [--rings=RINGS] "
+                        + "[--search-rings[=M]] [--plugboard=CYCLES] "
+                        + "[--crib=WORD | --words=FILE] CONFIG CIPHERTEXT");
+        }
+        StringBuilder cipher = new StringBuilder();
+        try (FileInputStream file = new FileInputStream(args[k + 1])) {
+            LineInput input = new LineInput(file);
+            while (input.hasNextLine()) {
+                String line = input.nextLine();
+                if (line.indexOf('*') < 0) {
+                    cipher.append(line.toUpperCase());
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", args[k + 1]);
+        }
+        KeySearch search = new KeySearch(Main.readBytes(args[k]),
+            cipher.toString(), plugboard, order, top, partition, lease);
+        if (rings != null) {
+            search.setRings(rings);
+        }
+        if (ringSlots != 0) {
+            search.setSearchRings(ringSlots);
+        }
+        if (crib != null) {
+            System.err.printf("key search: crib %s may lie at %d places%n",
+                              crib, search.setCrib(crib));
+        }
+        if (words != null) {
+            System.err.printf("key search: %d words%n", search.setWords(
+                new String(Main.readBytes(words), StandardCharsets.UTF_8)));
+        }
+        port = search.listen(port);
+        System.err.printf("key search: %d keys (%d rotor orders) on port "
+                          + "%d%n", search.space().size(),
+                          search.space().orders(), port);
+        ArrayList<Process> workers = new ArrayList<>();
+        String java = new File(new File(System.getProperty("java.home"),
+                                        "bin"), "java").getPath();
+        for (int w = 0; w < spawn; w += 1) {
+            workers.add(new ProcessBuilder(java, "-cp",
+                System.getProperty("java.class.path"), "enigma.KeySearch",
+                "--worker=127.0.0.1:" + port).inheritIO().start());
+        }
+        try {
+            while (!search.await(1000)) {
+                System.err.printf("key search: %s%n", search.status());
+                boolean alive = workers.isEmpty();
+                for (Process worker : workers) {
+                    alive |= worker.isAlive();
+                }
+                if (!alive) {
+                    throw error("all workers have exited");
+                }
+            }
+            for (Process worker : workers) {
+                worker.waitFor();
+            }
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            search.close();
+            for (Process worker : workers) {
+                worker.destroy();
+            }
+        }
+        System.err.printf("key search: %s%n", search.status());
+        Candidates best = search.best();
+        for (int c = 0; c < best.size(); c += 1) {
+            System.out.printf("%.5f %s%n", best.score(c),
+                search.space().settingsLine(best.key(c), plugboard));
+        }
+    }
+
+    /** The keys searched. */
+    private KeySpace _space;
+
+    /** The ciphertext, plugboard, and rotor order ("" if any) sent to
+     *  each worker. */
+    private final String _cipher, _plugboard, _order;
+
+    /** The alphabet of the configuration. */
+    private final Alphabet _alphabet;
+
+    /** The crib sent to each worker ("" if none), and the places it may
+     *  lie. */
+    private String _crib = "";
+    private int[] _placements = new int[0];
+
+    /** The words sent to each worker, separated by blanks ("" if
+     *  none). */
+    private String _words = "";
+
+    /** The configuration file sent to each worker. */
+    private final byte[] _config;
+
+    /** The best candidates of the finished partitions. */
+    private final Candidates _best;
+
+    /** Number of candidates kept. */
+    private final int _top;
+
+    /** Lease period, in milliseconds. */
+    private final int _leaseMillis;
+
+    /** Most keys per partition. */
+    private final long _maxPartition;
+
+    /** Keys per partition (except perhaps the last). */
+    private long _partition;
+
+    /** Keys tried in each partition. */
+    private long[] _progress;
+
+    /** Which partitions are finished. */
+    private boolean[] _done;
+
+    /** Partitions not leased or finished, to be leased first to last. */
+    private ArrayDeque<Integer> _pending;
+
+    /** Number of partitions finished. */
+    private int _finished;
+
+    /** Number of workers connected. */
+    private int _workers;
+
+    /** Number of partitions leased again. */
+    private int _reassigned;
+
+    /** Accepts connections from workers. */
+    private ServerSocket _server;
+
+    /** Time at which I started listening. */
+    private long _start;
+}
@@ -0,0 +1,265 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/** The suite of all JUnit tests for the distributed key search.
+ *  @author Nazli Urenli
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration: 6 rotor orders of 512 settings each. */
+    private static final byte[] CONFIG = String.join("\n",
+        "ABCDEFGH", "4 2",
+        "I MA (ABC) (DEFGH)", "II MCE (AEBF) (CDGH)",
+        "III MH (AH) (BCDEFG)", "F N (ABCDEFGH)",
+        "R R (AE) (BF) (CG) (DH)", "").getBytes(StandardCharsets.UTF_8);
+
+    /** Plugboard used in these tests. */
+    private static final String PLUGBOARD = "(AD)";
+
+    /** A message of one repeated letter. */
+    private static final String MESSAGE =
+        "CCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCC";
+
+    /** Return the encryption of MESSAGE with rotors ORDER at SETTING. */
+    private String encrypt(String[] order, String setting) {
+        Machine M = Main.readConfig(CONFIG);
+        M.insertRotors(order);
+        M.setRotors(setting);
+        M.setPlugboard(new Permutation(PLUGBOARD, M.alphabet()));
+        return M.convert(MESSAGE);
+    }
+
+    /** Return the best TOP keys of SEARCH's key space for CIPHER, found
+     *  in one pass on this thread. */
+    private Candidates searchHere(KeySearch search, String cipher,
+                                  int top) {
+        Machine M = Main.readConfig(CONFIG);
+        return KeySearchWorker.search(M, search.space(), PLUGBOARD,
+                                      M.alphabet().encode(cipher),
+                                      new int[0], new int[0], null,
+                                      0, search.space().size(), top,
+                                      (done) -> { });
+    }
+
+    /** Start a thread working for the coordinator on PORT. */
+    private Thread startWorker(int port) {
+        Thread result = new Thread(() -> {
+            try {
+                new KeySearchWorker(new Socket(
+                    InetAddress.getLoopbackAddress(), port)).run();
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+        });
+        result.start();
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testKeySpace() {
+        KeySpace space = new KeySpace(Main.readConfig(CONFIG), null);
+        assertEquals(6, space.orders());
+        assertEquals(512, space.settings());
+        assertEquals(6 * 512, space.size());
+        ArrayList<String> lines = new ArrayList<>();
+        for (long key = 0; key < space.size(); key += 1) {
+            lines.add(space.settingsLine(key, ""));
+        }
+        assertEquals("* R F I II AAA", lines.get(0));
+        assertEquals("* R F I II AAB", lines.get(1));
+        assertEquals("* R F I III AAA", lines.get(512));
+        assertEquals("* R F III II HHH", lines.get(6 * 512 - 1));
+        assertEquals(lines.size(), new HashSet<>(lines).size());
+        space = new KeySpace(Main.readConfig(CONFIG), null, "CDE", 0);
+        assertEquals(6 * 512, space.size());
+        assertEquals("* R F I II AAB CDE (AB)", space.settingsLine(1, "(AB)"));
+    }
+
+    @Test
+    public void testRingSpace() {
+        Machine M = Main.readConfig(CONFIG);
+        KeySpace space = new KeySpace(M, null, "", 2);
+        assertEquals(64, space.ringSettings());
+        assertEquals(6 * 64 * 512, space.size());
+        assertEquals("* R F I II AAA AAA", space.settingsLine(0, ""));
+        assertEquals("* R F I II AAB AAA", space.settingsLine(1, ""));
+        assertEquals("* R F I II AAA AAB", space.settingsLine(512, ""));
+        assertEquals("* R F I II AAA ABA", space.settingsLine(8 * 512, ""));
+        assertEquals("* R F I III AAA AAA",
+                     space.settingsLine(64 * 512, ""));
+        assertEquals("* R F III II HHH AHH",
+                     space.settingsLine(space.size() - 1, ""));
+        space = new KeySpace(M, null, "DEF", 1);
+        assertEquals("DEA", space.rings(0));
+        assertEquals("DEH", space.rings(7 * 512));
+        assertEquals("DEA", space.rings(8 * 512));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTooManyRingSlots() {
+        new KeySpace(Main.readConfig(CONFIG), null, "", 3);
+    }
+
+    @Test
+    public void testDistributedWithDeadWorker() throws Exception {
+        String[] order = { "R", "F", "III", "I" };
+        String cipher = encrypt(order, "BGE");
+        KeySearch search = new KeySearch(CONFIG, cipher, PLUGBOARD, null,
+                                         5, 200, 2000);
+        int port = search.listen(0);
+        try (Socket dead = new Socket(InetAddress.getLoopbackAddress(),
+                                      port)) {
+            assertTrue(dead.getInputStream().read() >= 0);
+        }
+        Thread[] workers = { startWorker(port), startWorker(port) };
+        assertTrue(search.await(15000));
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        search.close();
+        assertEquals(1, search.reassigned());
+        assertEquals(search.space().size(), search.keysTried());
+
+        Candidates best = search.best();
+        Candidates expected = searchHere(search, cipher, 5);
+        assertEquals(expected.size(), best.size());
+        for (int k = 0; k < best.size(); k += 1) {
+            assertEquals(expected.key(k), best.key(k));
+            assertEquals(expected.score(k), best.score(k), 0.0);
+        }
+        assertEquals(8.0, best.score(0), 1e-9);
+        Machine M = Main.readConfig(CONFIG);
+        M.insertRotors(search.space().order(best.key(0)));
+        M.setRotors(search.space().setting(best.key(0)));
+        M.setPlugboard(new Permutation(PLUGBOARD, M.alphabet()));
+        assertEquals(MESSAGE, M.convert(cipher));
+    }
+
+    @Test
+    public void testCribSearch() throws Exception {
+        String[] order = { "R", "F", "II", "III" };
+        String cipher = encrypt(order, "HAD");
+        KeySearch search = new KeySearch(CONFIG, cipher, PLUGBOARD, order,
+                                         3, 100, 2000);
+        int placements = search.setCrib("CCCCC");
+        assertTrue(placements > 0);
+        Thread worker = startWorker(search.listen(0));
+        assertTrue(search.await(15000));
+        worker.join();
+        search.close();
+        Candidates best = search.best();
+        assertEquals(5.0, best.score(0), 0.0);
+        Machine M = Main.readConfig(CONFIG);
+        M.insertRotors(search.space().order(best.key(0)));
+        M.setRotors(search.space().setting(best.key(0)));
+        M.setPlugboard(new Permutation(PLUGBOARD, M.alphabet()));
+        assertTrue(M.convert(cipher).contains("CCCCC"));
+    }
+
+    @Test
+    public void testRingSearch() throws Exception {
+        String[] order = { "R", "F", "I", "III" };
+        Machine M = Main.readConfig(CONFIG);
+        M.insertRotors(order);
+        M.setRotors("DHA");
+        M.setRings("BGC");
+        M.setPlugboard(new Permutation(PLUGBOARD, M.alphabet()));
+        String cipher = M.convert(MESSAGE);
+        KeySearch search = new KeySearch(CONFIG, cipher, PLUGBOARD, order,
+                                         3, 100, 2000);
+        search.setRings("BGC");
+        Thread worker = startWorker(search.listen(0));
+        assertTrue(search.await(15000));
+        worker.join();
+        search.close();
+        Candidates best = search.best();
+        assertEquals(8.0, best.score(0), 1e-9);
+        M.insertRotors(search.space().order(best.key(0)));
+        M.setRotors(search.space().setting(best.key(0)));
+        M.setRings("BGC");
+        assertEquals(MESSAGE, M.convert(cipher));
+    }
+
+    @Test
+    public void testSearchRings() throws Exception {
+        String[] order = { "R", "F", "II", "I" };
+        Machine M = Main.readConfig(CONFIG);
+        M.insertRotors(order);
+        M.setRotors("CFB");
+        M.setRings("BEG");
+        M.setPlugboard(new Permutation(PLUGBOARD, M.alphabet()));
+        String cipher = M.convert(MESSAGE);
+        KeySearch search = new KeySearch(CONFIG, cipher, PLUGBOARD, order,
+                                         3, 4000, 2000);
+        search.setRings("BAA");
+        search.setSearchRings(-1);
+        assertEquals(64 * 512, search.space().size());
+        Thread worker = startWorker(search.listen(0));
+        assertTrue(search.await(15000));
+        worker.join();
+        search.close();
+        assertEquals(search.space().size(), search.keysTried());
+        Candidates best = search.best();
+        assertEquals(8.0, best.score(0), 1e-9);
+        String line = search.space().settingsLine(best.key(0), PLUGBOARD);
+        assertTrue(line, line.startsWith("* R F II I "));
+        M.insertRotors(search.space().order(best.key(0)));
+        M.setRotors(search.space().setting(best.key(0)));
+        M.setRings(search.space().rings(best.key(0)));
+        assertEquals(MESSAGE, M.convert(cipher));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadRings() {
+        new KeySearch(CONFIG, "ABC", PLUGBOARD, null, 3, 100, 2000)
+            .setRings("AB");
+    }
+
+    @Test
+    public void testWordSearch() {
+        String[] order = { "R", "F", "III", "I" };
+        String message = "FADEDBEADCAFEBABEFACEDEAFHEADACHE";
+        Machine M = Main.readConfig(CONFIG);
+        M.insertRotors(order);
+        M.setRotors("GEB");
+        M.setPlugboard(new Permutation(PLUGBOARD, M.alphabet()));
+        String cipher = M.convert(message);
+        KeySearch search = new KeySearch(CONFIG, cipher, PLUGBOARD, null,
+                                         3, 100, 2000);
+        assertEquals(8, search.setWords("fade bead cafe babe face deaf "
+                                        + "head ache"));
+        WordScorer words = new WordScorer(M.alphabet(), List.of(
+            "FADE", "BEAD", "CAFE", "BABE", "FACE", "DEAF", "HEAD", "ACHE"));
+        Candidates best = KeySearchWorker.search(
+            Main.readConfig(CONFIG), search.space(), PLUGBOARD,
+            M.alphabet().encode(cipher), new int[0], new int[0],
+            words, 0, search.space().size(), 3, (done) -> { });
+        assertEquals(3, best.size());
+        assertEquals(words.score(M.alphabet().encode(message),
+                                 0, message.length()),
+                     best.score(0), 0.0);
+        M.insertRotors(search.space().order(best.key(0)));
+        M.setRotors(search.space().setting(best.key(0)));
+        assertEquals(message, M.convert(cipher));
+    }
+}
@@ -0,0 +1,212 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+import static enigma.EnigmaException.*;
+
+/** A worker process of a distributed key search (see KeySearch).  It
+ *  receives the search from the coordinator, then repeatedly takes a
+ *  lease on a range of keys, tries every key in it, and returns the best
+ *  candidates found, reporting its progress while it works so that the
+ *  coordinator knows it is alive.
+ *  @author Nazli Urenli
+ */
+final class KeySearchWorker {
+
+    /** Number of keys tried between checks of the clock. */
+    private static final int CHECK_EVERY = 64;
+
+    /** A worker for the coordinator connected to SOCKET. */
+    KeySearchWorker(Socket socket) {
+        _socket = socket;
+    }
+
+    /** Work for my coordinator until it has no more leases to give,
+     *  returning the number of keys I tried. */
+    long run() throws IOException {
+        long tried = 0;
+        try (Socket socket = _socket) {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != KeySearch.MAGIC) {
+                throw error("not a key search coordinator");
+            }
+            Machine machine = Main.readConfig(KeySearch.readBytes(in));
+            String plugboard = KeySearch.readString(in);
+            String order = KeySearch.readString(in);
+            int[] cipher =
+                machine.alphabet().encode(KeySearch.readString(in));
+            int[] crib = machine.alphabet().encode(KeySearch.readString(in));
+            int[] placements = new int[in.readInt()];
+            for (int p = 0; p < placements.length; p += 1) {
+                placements[p] = in.readInt();
+            }
+            String words = KeySearch.readString(in);
+            String rings = KeySearch.readString(in);
+            int ringSlots = in.readInt();
+            WordScorer scorer = words.isEmpty() ? null
+                : new WordScorer(machine.alphabet(),
+                                 Arrays.asList(Main.splitAtBlanks(words)));
+            int top = in.readInt();
+            long heartbeat = in.readInt() / 4 * 1_000_000L;
+            machine.setTableStore(TableStore.heap());
+            KeySpace space = new KeySpace(machine, order.isEmpty() ? null
+                                          : Main.splitAtBlanks(order),
+                                          rings, ringSlots);
+            while (in.readByte() == KeySearch.LEASE) {
+                int partition = in.readInt();
+                long start = in.readLong(), end = in.readLong();
+                long[] last = { System.nanoTime() };
+                Candidates found = search(machine, space, plugboard,
+                    cipher, crib, placements, scorer, start, end, top,
+                    (done) -> {
+                        long now = System.nanoTime();
+                        if (now - last[0] >= heartbeat) {
+                            last[0] = now;
+                            try {
+                                out.writeByte(KeySearch.PROGRESS);
+                                out.writeInt(partition);
+                                out.writeLong(done);
+                                out.flush();
+                            } catch (IOException excp) {
+                                throw error("coordinator is gone");
+                            }
+                        }
+                    });
+                out.writeByte(KeySearch.RESULT);
+                out.writeInt(partition);
+                found.write(out);
+                out.flush();
+                tried += end - start;
+            }
+        }
+        return tried;
+    }
+
+    /** Return the best TOP of the keys START .. END-1 of SPACE, for
+     *  decrypting CIPHER (as alphabet indices) with MACHINE, configured
+     *  for SPACE, with the ring setting of each key and the plugboard
+     *  PLUGBOARD, scored by score, or if CRIB
+     *  is not empty, by cribScore at PLACEMENTS, or if WORDS is not null,
+     *  by wordScore.  Every so often, pass the number of keys tried so
+     *  far to PROGRESS. */
+    static Candidates search(Machine machine, KeySpace space,
+                             String plugboard, int[] cipher, int[] crib,
+                             int[] placements, WordScorer words,
+                             long start, long end, int top,
+                             LongConsumer progress) {
+        Candidates result = new Candidates(top);
+        int[] counts = new int[machine.alphabet().size()];
+        int[] plain = new int[words != null ? cipher.length
+            : crib.length == 0 ? 0
+            : placements[placements.length - 1] + crib.length];
+        String[] current = null;
+        long ringsKey = -1;
+        for (long key = start; key < end; key += 1) {
+            if (key / space.settings() != ringsKey) {
+                String[] order = space.order(key);
+                if (order != current) {
+                    machine.insertRotors(order);
+                    if (current == null) {
+                        machine.setPlugboard(
+                            new Permutation(plugboard, machine.alphabet()));
+                    }
+                    current = order;
+                }
+                String rings = space.rings(key);
+                if (!rings.isEmpty()) {
+                    machine.setRings(rings);
+                }
+                ringsKey = key / space.settings();
+            }
+            machine.setRotors(space.setting(key));
+            if (words != null) {
+                int threshold = result.size() < top ? 0
+                    : (int) Math.ceil(result.score(top - 1));
+                result.offer(wordScore(machine, cipher, words, plain,
+                                       threshold), key);
+            } else {
+                result.offer(crib.length == 0
+                             ? score(machine, cipher, counts)
+                             : cribScore(machine, cipher, crib, placements,
+                                         plain), key);
+            }
+            if ((key - start) % CHECK_EVERY == CHECK_EVERY - 1) {
+                progress.accept(key - start + 1);
+            }
+        }
+        return result;
+    }
+
+    /** Return the index of coincidence, times the alphabet size, of the
+     *  decryption of CIPHER by MACHINE from its current settings, using
+     *  COUNTS (one per character, all 0) as scratch. */
+    static double score(Machine machine, int[] cipher, int[] counts) {
+        long pairs = 0;
+        for (int c : cipher) {
+            int p = machine.convert(c);
+            pairs += counts[p];
+            counts[p] += 1;
+        }
+        Arrays.fill(counts, 0);
+        long n = cipher.length;
+        return n < 2 ? 0.0
+            : 2.0 * pairs * counts.length / (n * (n - 1));
+    }
+
+    /** Return the most characters of CRIB that the decryption of CIPHER
+     *  by MACHINE, from its current settings, matches at any of
+     *  PLACEMENTS (in increasing order), using PLAIN (long enough to hold
+     *  the decryption up to the end of the last placement) as scratch. */
+    static double cribScore(Machine machine, int[] cipher, int[] crib,
+                            int[] placements, int[] plain) {
+        for (int k = 0; k < plain.length; k += 1) {
+            plain[k] = machine.convert(cipher[k]);
+        }
+        int best = 0;
+        for (int p : placements) {
+            int matched = 0;
+            for (int j = 0; j < crib.length; j += 1) {
+                matched += plain[p + j] == crib[j] ? 1 : 0;
+            }
+            best = Math.max(best, matched);
+        }
+        return best;
+    }
+
+    /** Return the score by WORDS of the decryption of CIPHER by MACHINE,
+     *  from its current settings, or -1 as soon as it is clear that the
+     *  score is below THRESHOLD, using PLAIN (as long as CIPHER) as
+     *  scratch.  The decryption is made and scored a piece at a time, so
+     *  that most keys are given up on without decrypting it all. */
+    static double wordScore(Machine machine, int[] cipher, WordScorer words,
+                            int[] plain, int threshold) {
+        int n = cipher.length;
+        int state = WordScorer.START, result = 0;
+        for (int from = 0; from < n; ) {
+            int to = Math.min(n, from + WordScorer.LOOKAHEAD);
+            System.arraycopy(cipher, from, plain, from, to - from);
+            machine.convert(plain, from, to);
+            for (; from < to; from += 1) {
+                state = words.next(state, plain[from]);
+                result += words.gain(state);
+            }
+            if (result + words.bound(n - to) < threshold) {
+                return -1;
+            }
+        }
+        return result;
+    }
+
+    /** Connection to my coordinator. */
+    private final Socket _socket;
+}
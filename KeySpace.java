@@ -0,0 +1,223 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** The keys of a machine configuration: every rotor order it allows,
+ *  combined with every ring setting searched and every initial setting of
+ *  the rotors, numbered from 0 to size() - 1.  A rotor order puts a
+ *  reflector in slot 0, rotors without ratchets in the slots before the
+ *  last numPawls(), and moving rotors in those, using no rotor twice.
+ *  Key #k uses order #(k / (ringSettings() * settings())), ring setting
+ *  #(k / settings() % ringSettings()), and setting #(k % settings()).
+ *  The digits of a setting, in the base of the alphabet size, are the
+ *  rotor settings from left to right, and those of a ring setting are the
+ *  rings of the rightmost rotors searched.  The other rings are fixed.
+ *  Orders are numbered in the order their rotors appear in the
+ *  configuration.
+ *  @author Nazli Urenli
+ */
+final class KeySpace {
+
+    /** The keys of MACHINE, using only the rotor order ORDER if it is
+     *  not null, with no ring setting. */
+    KeySpace(Machine machine, String[] order) {
+        this(machine, order, "", 0);
+    }
+
+    /** The keys of MACHINE, using only the rotor order ORDER if it is
+     *  not null, with the ring setting RINGS ("" for none) except that
+     *  the rings of the rightmost RINGSLOTS rotors, which must all be
+     *  moving rotors, take every setting. */
+    KeySpace(Machine machine, String[] order, String rings,
+             int ringSlots) {
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        if (ringSlots < 0 || ringSlots > machine.numPawls()) {
+            throw error("only the rings of the %d moving rotors can be "
+                        + "searched", machine.numPawls());
+        }
+        if (!rings.isEmpty() && rings.length() != _numRotors - 1) {
+            throw error("ring setting needs %d characters", _numRotors - 1);
+        }
+        for (int k = 0; k < rings.length(); k += 1) {
+            if (!_alphabet.contains(rings.charAt(k))) {
+                throw error("ring setting %s is not in the alphabet", rings);
+            }
+        }
+        _rings = rings;
+        _ringSlots = ringSlots;
+        _orders = new ArrayList<>();
+        if (order != null) {
+            if (order.length != _numRotors) {
+                throw error("rotor order needs %d rotors", _numRotors);
+            }
+            for (String name : order) {
+                if (machine.catalog().rotor(name) == null) {
+                    throw error("no rotor named %s", name);
+                }
+            }
+            _orders.add(order.clone());
+        } else {
+            RotorCatalog catalog = machine.catalog();
+            ArrayList<String> reflectors = new ArrayList<>(),
+                fixed = new ArrayList<>(), moving = new ArrayList<>();
+            for (String name : catalog.names()) {
+                Rotor rotor = catalog.rotor(name);
+                if (rotor.reflecting()) {
+                    reflectors.add(name);
+                } else if (rotor.rotates()) {
+                    moving.add(name);
+                } else {
+                    fixed.add(name);
+                }
+            }
+            String[] slots = new String[_numRotors];
+            for (String reflector : reflectors) {
+                slots[0] = reflector;
+                addOrders(slots, 1, _numRotors - machine.numPawls(), fixed,
+                          moving);
+            }
+        }
+        long settings = 1;
+        for (int x = 1; x < _numRotors; x += 1) {
+            settings = Math.multiplyExact(settings, _alphabet.size());
+        }
+        long ringSettings = 1;
+        for (int x = 0; x < ringSlots; x += 1) {
+            ringSettings = Math.multiplyExact(ringSettings, _alphabet.size());
+        }
+        _settings = settings;
+        _ringSettings = ringSettings;
+        _size = Math.multiplyExact(Math.multiplyExact(settings, ringSettings),
+                                   (long) _orders.size());
+    }
+
+    /** Add to _orders every order beginning with SLOTS[0 .. X-1], taking
+     *  slots X up to FIRSTMOVING from FIXED and the rest from MOVING. */
+    private void addOrders(String[] slots, int x, int firstMoving,
+                           ArrayList<String> fixed,
+                           ArrayList<String> moving) {
+        if (x == slots.length) {
+            _orders.add(slots.clone());
+            return;
+        }
+        for (String name : x < firstMoving ? fixed : moving) {
+            boolean used = false;
+            for (int y = 1; y < x; y += 1) {
+                used |= slots[y].equals(name);
+            }
+            if (!used) {
+                slots[x] = name;
+                addOrders(slots, x + 1, firstMoving, fixed, moving);
+            }
+        }
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the number of initial settings of each rotor order. */
+    long settings() {
+        return _settings;
+    }
+
+    /** Return the number of ring settings searched for each rotor
+     *  order. */
+    long ringSettings() {
+        return _ringSettings;
+    }
+
+    /** Return the number of rotor orders. */
+    int orders() {
+        return _orders.size();
+    }
+
+    /** Return the fixed ring setting, "" for none. */
+    String rings() {
+        return _rings;
+    }
+
+    /** Return the number of rightmost rotors whose rings are searched. */
+    int ringSlots() {
+        return _ringSlots;
+    }
+
+    /** Return the rotor order of KEY, reflector first.  The array
+     *  returned is shared and must not be modified. */
+    String[] order(long key) {
+        return _orders.get((int) (key / _settings / _ringSettings));
+    }
+
+    /** Return the ring setting of KEY, as given on a settings line, or
+     *  "" if it has none. */
+    String rings(long key) {
+        if (_ringSlots == 0) {
+            return _rings;
+        }
+        char[] result = new char[_numRotors - 1];
+        for (int x = 0; x < result.length; x += 1) {
+            result[x] = _rings.isEmpty() ? _alphabet.toChar(0)
+                : _rings.charAt(x);
+        }
+        long digits = key / _settings % _ringSettings;
+        for (int x = result.length - 1;
+             x >= result.length - _ringSlots; x -= 1) {
+            result[x] = _alphabet.toChar((int) (digits % _alphabet.size()));
+            digits /= _alphabet.size();
+        }
+        return new String(result);
+    }
+
+    /** Return the initial rotor setting of KEY, as given on a settings
+     *  line. */
+    String setting(long key) {
+        long digits = key % _settings;
+        char[] result = new char[_numRotors - 1];
+        for (int x = result.length - 1; x >= 0; x -= 1) {
+            result[x] = _alphabet.toChar((int) (digits % _alphabet.size()));
+            digits /= _alphabet.size();
+        }
+        return new String(result);
+    }
+
+    /** Return the settings line that sets a machine to KEY, with its ring
+     *  setting, and the plugboard PLUGBOARD. */
+    String settingsLine(long key, String plugboard) {
+        StringBuilder result = new StringBuilder("*");
+        for (String name : order(key)) {
+            result.append(' ').append(name);
+        }
+        result.append(' ').append(setting(key));
+        String rings = rings(key);
+        if (!rings.isEmpty()) {
+            result.append(' ').append(rings);
+        }
+        if (!plugboard.isEmpty()) {
+            result.append(' ').append(plugboard);
+        }
+        return result.toString();
+    }
+
+    /** The alphabet of the rotor settings. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots, including the reflector's. */
+    private final int _numRotors;
+
+    /** The rotor orders. */
+    private final ArrayList<String[]> _orders;
+
+    /** The fixed ring setting, or "" for none. */
+    private final String _rings;
+
+    /** Number of rightmost rotors whose rings are searched. */
+    private final int _ringSlots;
+
+    /** Number of settings of each ring setting, of ring settings of each
+     *  order, and of keys. */
+    private final long _settings, _ringSettings, _size;
+}
@@ -0,0 +1,151 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A cache, shared by all the machines of a process, of the keystreams
+ *  produced by recurring settings.  Given its rotors, their settings, and
+ *  its plugboard, a machine applies a fixed sequence of substitutions, one
+ *  per keystroke.  Each entry holds the first keystrokes() of those
+ *  substitutions for one settings fingerprint, so that a machine set up
+ *  the same way again converts by table lookup alone.
+ *
+ *  Building an entry costs a full substitution per keystroke, so settings
+ *  are only admitted the second time they are seen.  Entries are evicted
+ *  least recently used first once the cache holds more than its budget of
+ *  bytes.
+ *  @author Nazli Urenli
+ */
+final class KeystreamCache {
+
+    /** Number of recently seen fingerprints remembered for admission. */
+    private static final int SEEN = 4096;
+
+    /** The substitutions for one fingerprint. */
+    static final class Entry {
+        /** An entry for LENGTH keystrokes over an alphabet of SIZE
+         *  characters. */
+        Entry(int length, int size) {
+            _table = new int[length * size];
+            _length = length;
+            _size = size;
+        }
+
+        /** Return the number of keystrokes I cover. */
+        int length() {
+            return _length;
+        }
+
+        /** Return the conversion of C at keystroke K. */
+        int get(int k, int c) {
+            return _table[k * _size + c];
+        }
+
+        /** Record that keystroke K converts C to E. */
+        void put(int k, int c, int e) {
+            _table[k * _size + c] = e;
+        }
+
+        /** Return the number of bytes I occupy, roughly. */
+        long bytes() {
+            return 4L * _table.length + 64;
+        }
+
+        /** Substitution at keystroke k is _table[k * _size ...]. */
+        private final int[] _table;
+        /** My number of keystrokes and alphabet size. */
+        private final int _length, _size;
+    }
+
+    /** A cache of the first KEYSTROKES substitutions of each keystream,
+     *  holding at most MAXBYTES bytes of entries. */
+    KeystreamCache(int keystrokes, long maxBytes) {
+        _keystrokes = keystrokes;
+        _maxBytes = maxBytes;
+        _entries = new LinkedHashMap<>(16, 0.75f, true);
+        _seen = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Boolean> eldest) {
+                return size() > SEEN;
+            }
+        };
+    }
+
+    /** Return the number of keystrokes each entry covers. */
+    int keystrokes() {
+        return _keystrokes;
+    }
+
+    /** Return the entry for FINGERPRINT, or null if there is none. */
+    synchronized Entry get(String fingerprint) {
+        Entry result = _entries.get(fingerprint);
+        if (result == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /** Return true iff FINGERPRINT, which has no entry, has been seen
+     *  recently enough to deserve one.  Records that it has been seen. */
+    synchronized boolean admit(String fingerprint) {
+        return _seen.put(fingerprint, Boolean.TRUE) != null;
+    }
+
+    /** Store ENTRY for FINGERPRINT, evicting old entries to make room. */
+    synchronized void put(String fingerprint, Entry entry) {
+        Entry old = _entries.put(fingerprint, entry);
+        if (old != null) {
+            _bytes -= old.bytes();
+        }
+        _bytes += entry.bytes();
+        Iterator<Entry> eldest = _entries.values().iterator();
+        while (_bytes > _maxBytes && eldest.hasNext()) {
+            _bytes -= eldest.next().bytes();
+            eldest.remove();
+            _evictions += 1;
+        }
+    }
+
+    /** Return the number of lookups that found an entry. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that found none. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return a one-line summary of my use. */
+    synchronized String stats() {
+        long lookups = _hits + _misses;
+        return String.format("keystream cache: %d entries, %d bytes, "
+                             + "%d hits, %d misses (%.1f%% hit), "
+                             + "%d evictions", _entries.size(), _bytes,
+                             _hits, _misses,
+                             lookups == 0 ? 0.0 : 100.0 * _hits / lookups,
+                             _evictions);
+    }
+
+    /** Keystrokes per entry. */
+    private final int _keystrokes;
+
+    /** Budget for the entries, in bytes. */
+    private final long _maxBytes;
+
+    /** The entries, least recently used first. */
+    private final LinkedHashMap<String, Entry> _entries;
+
+    /** Recently seen fingerprints without entries. */
+    private final LinkedHashMap<String, Boolean> _seen;
+
+    /** Bytes occupied by the entries. */
+    private long _bytes;
+
+    /** Lookup statistics. */
+    private long _hits, _misses, _evictions;
+}
@@ -0,0 +1,90 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Nazli Urenli
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Rotors used in these tests. */
+    private static final String[] ROTORS = { "B", "Beta", "III", "IV", "I" };
+
+    /** Plugboard used in these tests. */
+    private static final String PLUGBOARD = "(YF) (ZH)";
+
+    /** A message long enough to cross the double step of ROTORS. */
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDINGFOLDING"
+        + "ROSEWOODNEATLYPUTITALLTOGETHER";
+
+    /** Return a machine using KEYSTREAM, set up with ROTORS at SETTING. */
+    private Machine cached(KeystreamCache keystream, String setting) {
+        Machine result = new Machine(UPPER, 5, 3, navalRotors());
+        result.setKeystreamCache(keystream);
+        result.insertRotors(ROTORS);
+        result.setRotors(setting);
+        result.setPlugboard(new Permutation(PLUGBOARD, UPPER));
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testAdmittedOnSecondSighting() {
+        KeystreamCache keystream = new KeystreamCache(8, 1 << 20);
+        String expected =
+            navalMachine(ROTORS, "AXLE", PLUGBOARD).convert(MESSAGE);
+        for (int k = 0; k < 4; k += 1) {
+            assertEquals(msg("cache", "run %d", k), expected,
+                         cached(keystream, "AXLE").convert(MESSAGE));
+        }
+        assertEquals(2, keystream.hits());
+        assertEquals(2, keystream.misses());
+    }
+
+    @Test
+    public void testStateAfterCachedKeystrokes() {
+        KeystreamCache keystream = new KeystreamCache(32, 1 << 20);
+        cached(keystream, "AXLE").convert("A");
+        cached(keystream, "AXLE").convert("A");
+        Machine plain = navalMachine(ROTORS, "AXLE", PLUGBOARD);
+        Machine M = cached(keystream, "AXLE");
+        plain.convert(MESSAGE.substring(0, 20));
+        M.convert(MESSAGE.substring(0, 20));
+        for (int x = 1; x < 5; x += 1) {
+            assertEquals(msg("cache", "setting of slot %d", x),
+                         plain.rotorArr()[x].setting(),
+                         M.rotorArr()[x].setting());
+        }
+        assertEquals(plain.convert(MESSAGE), M.convert(MESSAGE));
+        M.setRotors("AXLE");
+        assertEquals(navalMachine(ROTORS, "AXLE", PLUGBOARD)
+                     .convert(MESSAGE), M.convert(MESSAGE));
+    }
+
+    @Test
+    public void testEviction() {
+        KeystreamCache keystream = new KeystreamCache(8, 1000);
+        for (String setting : new String[] { "AAAA", "AAAB" }) {
+            cached(keystream, setting).convert(MESSAGE);
+            cached(keystream, setting).convert(MESSAGE);
+        }
+        assertEquals(0, keystream.hits());
+        cached(keystream, "AAAB").convert(MESSAGE);
+        assertEquals(1, keystream.hits());
+        cached(keystream, "AAAA").convert(MESSAGE);
+        assertEquals(1, keystream.hits());
+    }
+}
@@ -0,0 +1,188 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** The lines of an input stream, read as a Scanner with its default
+ *  delimiter reads them through hasNext, hasNextLine, and nextLine, but
+ *  without compiling or matching any regular expressions.  Lines end at
+ *  "\r\n" or any one of '\n', '\r', '\u2028', '\u2029', and '\u0085', and
+ *  the input is decoded in the default character set.  As with a Scanner,
+ *  input that cannot be read or decoded ends the stream.  The position
+ *  of each line in the stream, in bytes, is tracked, so that reading can
+ *  later resume there.
+ *  @author Nazli Urenli
+ */
+final class LineInput {
+
+    /** Initial size of the buffer, in characters. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The lines of IN. */
+    LineInput(InputStream in) {
+        this(in, 0);
+    }
+
+    /** The lines of IN, whose first byte is at position START of the
+     *  stream it comes from. */
+    LineInput(InputStream in, long start) {
+        this(in, start, Charset.defaultCharset());
+    }
+
+    /** The lines of IN, decoded in CHARSET rather than the default
+     *  character set, whose first byte is at position START of the stream
+     *  it comes from. */
+    LineInput(InputStream in, long start, Charset charset) {
+        _charset = charset;
+        _in = Channels.newReader(Channels.newChannel(in),
+                                 _charset.newDecoder(), -1);
+        _utf8 = _charset.name().equals("UTF-8");
+        _singleByte = _charset.newEncoder().maxBytesPerChar() == 1;
+        _buf = new char[BUFFER_SIZE];
+        _position = start;
+    }
+
+    /** Return the position, in bytes, of the next line: START plus the
+     *  encoded lengths of the lines returned by nextLine, with their
+     *  terminators. */
+    long position() {
+        return _position;
+    }
+
+    /** Return true iff any character other than whitespace remains. */
+    boolean hasNext() {
+        for (int k = 0; true; k += 1) {
+            if (_pos + k == _limit && !fill()) {
+                return false;
+            }
+            if (!Character.isWhitespace(_buf[_pos + k])) {
+                return true;
+            }
+        }
+    }
+
+    /** Return true iff another line, possibly empty, remains. */
+    boolean hasNextLine() {
+        return _pos < _limit || fill();
+    }
+
+    /** Return the rest of the current line, without its terminator, and
+     *  move to the start of the next. */
+    String nextLine() {
+        for (int k = 0; true; k += 1) {
+            if (_pos + k == _limit && !fill()) {
+                if (k == 0) {
+                    throw new NoSuchElementException("No line found");
+                }
+                return take(k, 0);
+            }
+            char c = _buf[_pos + k];
+            if (c == '\r') {
+                if (_pos + k + 1 == _limit) {
+                    fill();
+                }
+                boolean crlf = _pos + k + 1 < _limit
+                    && _buf[_pos + k + 1] == '\n';
+                return take(k, crlf ? 2 : 1);
+            } else if (c == '\n' || c == '\u2028' || c == '\u2029'
+                       || c == '\u0085') {
+                return take(k, 1);
+            }
+        }
+    }
+
+    /** Close the underlying stream. */
+    void close() {
+        try {
+            _in.close();
+        } catch (IOException excp) {
+            /* Nothing more will be read either way. */
+        }
+    }
+
+    /** Return the next LENGTH characters, skipping the SKIP characters
+     *  that follow them. */
+    private String take(int length, int skip) {
+        String result = new String(_buf, _pos, length);
+        _position += bytes(_pos, _pos + length + skip);
+        _pos += length + skip;
+        return result;
+    }
+
+    /** Return the number of bytes that encode _buf[FROM .. TO-1]. */
+    private long bytes(int from, int to) {
+        if (_singleByte) {
+            return to - from;
+        } else if (!_utf8) {
+            return new String(_buf, from, to - from).getBytes(_charset)
+                .length;
+        }
+        long result = to - from;
+        for (int k = from; k < to; k += 1) {
+            char c = _buf[k];
+            if (c >= 0x80) {
+                result += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+            }
+        }
+        return result;
+    }
+
+    /** Read more characters after the ones buffered, moving those to the
+     *  start of the buffer or enlarging it as needed.  Return false if
+     *  there are no more. */
+    private boolean fill() {
+        if (_eof) {
+            return false;
+        }
+        if (_pos > 0) {
+            System.arraycopy(_buf, _pos, _buf, 0, _limit - _pos);
+            _limit -= _pos;
+            _pos = 0;
+        }
+        if (_limit == _buf.length) {
+            _buf = Arrays.copyOf(_buf, 2 * _buf.length);
+        }
+        try {
+            int n;
+            do {
+                n = _in.read(_buf, _limit, _buf.length - _limit);
+            } while (n == 0);
+            if (n < 0) {
+                _eof = true;
+                return false;
+            }
+            _limit += n;
+            return true;
+        } catch (IOException excp) {
+            _eof = true;
+            return false;
+        }
+    }
+
+    /** The source of my characters. */
+    private final Reader _in;
+
+    /** The character set of my input. */
+    private final Charset _charset;
+
+    /** True iff my character set is UTF-8, or encodes every character in
+     *  one byte. */
+    private final boolean _utf8, _singleByte;
+
+    /** Position of the next line in my input, in bytes. */
+    private long _position;
+
+    /** Buffered characters, of which those in [_pos, _limit) are unread. */
+    private char[] _buf;
+
+    /** Bounds of the unread characters in _buf. */
+    private int _pos, _limit;
+
+    /** True once _in is exhausted. */
+    private boolean _eof;
+}
@@ -0,0 +1,122 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the LineInput class and the setting
+ *  line splitting in Main.
+ *  @author Nazli Urenli
+ */
+public class LineInputTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the lines of TEXT as read by Main: while hasNext() is
+     *  true, nextLine(), taken from a Scanner if SCANNER, and otherwise
+     *  from a LineInput.  A final "?" records whether hasNextLine() is
+     *  still true. */
+    private ArrayList<String> lines(String text, boolean scanner) {
+        ByteArrayInputStream in = new ByteArrayInputStream(text.getBytes());
+        ArrayList<String> result = new ArrayList<>();
+        if (scanner) {
+            Scanner input = new Scanner(in);
+            while (input.hasNext()) {
+                result.add(input.nextLine());
+            }
+            result.add("?" + input.hasNextLine());
+        } else {
+            LineInput input = new LineInput(in);
+            while (input.hasNext()) {
+                result.add(input.nextLine());
+            }
+            result.add("?" + input.hasNextLine());
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLikeScanner() {
+        String[] texts = {
+            "", "\n", "A", "A\n", "A\r\nB\rC\n\nD", "* B I\n\n \t\n",
+            "  A  \r\n\r\n\r", "A\u2028B\u2029C\u0085D\n   ",
+        };
+        for (String text : texts) {
+            assertEquals(text, lines(text, true), lines(text, false));
+        }
+    }
+
+    @Test
+    public void testPositions() {
+        String wide = "AB\r\n\u00c9T\u00c9\n\u20ac \ud834\udd1e\u2028\n\rZ";
+        String[] texts = { wide, wide, "AB\r\n\u00c9T\u00c9\n\n\r\rZ" };
+        Charset[] charsets = { StandardCharsets.UTF_8,
+                               StandardCharsets.UTF_16BE,
+                               StandardCharsets.ISO_8859_1 };
+        for (int k = 0; k < texts.length; k += 1) {
+            String text = texts[k];
+            Charset charset = charsets[k];
+            LineInput input = new LineInput(
+                new ByteArrayInputStream(text.getBytes(charset)), 7, charset);
+            int read = 0;
+            while (input.hasNextLine()) {
+                read += input.nextLine().length();
+                if (text.startsWith("\r\n", read)) {
+                    read += 2;
+                } else if (read < text.length()) {
+                    read += 1;
+                }
+                assertEquals(charset.name(),
+                             7 + text.substring(0, read).getBytes(charset)
+                             .length, input.position());
+            }
+            assertEquals(text.length(), read);
+        }
+    }
+
+    @Test
+    public void testLongLines() {
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < 3; k += 1) {
+            for (int n = 0; n < 10000; n += 1) {
+                text.append((char) ('A' + (n + k) % 26));
+            }
+            text.append(k == 1 ? "\r" : "\r\n");
+        }
+        assertEquals(lines(text.toString(), true),
+                     lines(text.toString(), false));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testPastEnd() {
+        LineInput input = new LineInput(new ByteArrayInputStream(
+            "A\n".getBytes()));
+        input.nextLine();
+        input.nextLine();
+    }
+
+    @Test
+    public void testSplitAtBlanks() {
+        String[] texts = {
+            "", " ", "   ", "* B I", " * B", "* B  I", "* B I  ", "*",
+        };
+        for (String text : texts) {
+            assertArrayEquals(text, text.split(" "),
+                              Main.splitAtBlanks(text));
+        }
+    }
+}
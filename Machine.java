@@ -1,7 +1,9 @@
 package enigma;
 
-import java.util.ArrayList;
+import java.nio.CharBuffer;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 import static enigma.EnigmaException.*;
 
@@ -10,16 +12,71 @@ import static enigma.EnigmaException.*;
  */
 class Machine {
 
+    /** Number of characters converted in bulk with the same rotors and
+     *  plugboard after which it pays to make an engine for them. */
+    static final int ENGINE_AFTER = 2048;
+
+    /** Number of characters converted at a time by convert(CharBuffer,
+     *  CharBuffer). */
+    private static final int CHUNK = 256;
+
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, RotorCatalog.of(alpha, allRotors));
+        for (Rotor rotor : allRotors) {
+            _instances.put(rotor.name().toLowerCase(), rotor);
+        }
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are in
+     *  CATALOG.  The machine uses its own copy of each rotor it inserts. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorCatalog catalog) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
-        _allRotors = allRotors;
-        _arrayRotors = (ArrayList<Rotor>) allRotors;
+        _catalog = catalog;
+        _instances = new HashMap<>();
+        _stepping = Stepping.DOUBLE_STEP;
+    }
+
+    /** Return a new machine with my configuration and catalog, and a copy
+     *  of each rotor I have used, sharing their permutations and compiled
+     *  tables.  The copy has my rotors inserted, at their current
+     *  settings, and my plugboard; it shares no mutable state with me. */
+    Machine copy() {
+        materialize();
+        Machine result = new Machine(_alphabet, _numRotors, _pawls, _catalog);
+        IdentityHashMap<Rotor, Rotor> copies = new IdentityHashMap<>();
+        for (String name : _instances.keySet()) {
+            Rotor rotor = _instances.get(name);
+            copies.put(rotor, rotor.copy());
+            result._instances.put(name, copies.get(rotor));
+        }
+        result._tables = _tables;
+        result._keystream = _keystream;
+        result._plugboard = _plugboard;
+        result._stepping = _stepping;
+        if (myRotors != null) {
+            result.myRotors = new Rotor[myRotors.length];
+            for (int x = 0; x < myRotors.length; x += 1) {
+                result.myRotors[x] = copies.get(myRotors[x]);
+            }
+        }
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the catalog of rotors available to me. */
+    RotorCatalog catalog() {
+        return _catalog;
     }
 
     /** Return the number of rotor slots I have. */
@@ -34,23 +91,45 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting and 0 ring
+     *  setting. */
     void insertRotors(String[] rotors) {
+        setUpChanged();
+        _engineMade = false;
+        _sinceEngineChange = 0;
         myRotors = new Rotor[_numRotors];
         for (int x = 0; x < myRotors.length; x = x + 1) {
-            for (int n = 0; n < _arrayRotors.size(); n = n + 1) {
-                if (_arrayRotors.get(n).name().toLowerCase().equals(
-                        rotors[x].toLowerCase())) {
-                    myRotors[x] = _arrayRotors.get(n);
-                }
+            myRotors[x] = rotor(rotors[x]);
+            if (myRotors[x] != null) {
+                myRotors[x].setRing(0);
+            }
+            if (_tables != null && myRotors[x] != null) {
+                myRotors[x].compile(_tables);
             }
         }
 
     }
+    /** Return my instance of the rotor named NAME (ignoring case), making
+     *  it from my catalog if I have not used it before, or null if there
+     *  is no such rotor. */
+    private Rotor rotor(String name) {
+        String key = name.toLowerCase();
+        Rotor result = _instances.get(key);
+        if (result == null) {
+            result = _catalog.rotor(name);
+            if (result != null) {
+                result = result.copy();
+                _instances.put(key, result);
+            }
+        }
+        return result;
+    }
+
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        setUpChanged();
         if (numRotors() - 1 != setting.length()) {
             throw new EnigmaException("Incorrect setting");
         } else {
@@ -62,31 +141,179 @@ class Machine {
         }
     }
 
+    /** Set my rotors other than the reflector to SETTINGS[AT + 1 .. AT +
+     *  numRotors() - 1], as stored by settings(int[], int).  Unlike the
+     *  other ways of setting me up, this keeps my engine. */
+    void setRotors(int[] settings, int at) {
+        setUpChanged();
+        for (int x = 1; x < _numRotors; x = x + 1) {
+            myRotors[x].set(settings[at + x]);
+        }
+    }
+
+    /** Store the settings of my rotors, reflector first, in INTO[AT ..
+     *  AT + numRotors() - 1]. */
+    void settings(int[] into, int at) {
+        materialize();
+        for (int x = 0; x < _numRotors; x += 1) {
+            into[at + x] = myRotors[x].setting();
+        }
+    }
+
+    /** Set the ring settings of my rotors according to RINGS, which must
+     *  be a string of numRotors()-1 characters in my alphabet, the first
+     *  for the leftmost rotor (not counting the reflector).  Each rotor's
+     *  wiring is turned back by its ring setting from its alphabet ring
+     *  and notches, which stay where they are. */
+    void setRings(String rings) {
+        setUpChanged();
+        _engineMade = false;
+        _sinceEngineChange = 0;
+        if (numRotors() - 1 != rings.length()) {
+            throw new EnigmaException("Incorrect ring setting");
+        }
+        for (int x = 1; x < _numRotors; x = x + 1) {
+            myRotors[x].setRing(_alphabet.toInt(rings.charAt(x - 1)));
+        }
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        setUpChanged();
+        _engineMade = false;
+        _sinceEngineChange = 0;
         _plugboard = plugboard;
+        if (_tables != null) {
+            _plugboard.compile(_tables);
+        }
+    }
+
+    /** Return the way my rotors advance. */
+    Stepping stepping() {
+        return _stepping;
+    }
+
+    /** Advance my rotors according to STEPPING from now on. */
+    void setStepping(Stepping stepping) {
+        setUpChanged();
+        _stepping = stepping;
+        _engineMade = false;
+        _sinceEngineChange = 0;
+    }
+
+    /** Compile the rotors and plugboards I am given from now on into
+     *  lookup tables held in TABLES.  A null TABLES leaves them as they
+     *  are. */
+    void setTableStore(TableStore tables) {
+        _tables = tables;
+    }
+
+    /** Convert through KEYSTREAM, if not null, whenever I am set up in
+     *  a way that has been seen before. */
+    void setKeystreamCache(KeystreamCache keystream) {
+        materialize();
+        _keystream = keystream;
+    }
+
+    /** Return a snapshot of my rotors, their settings, and my
+     *  plugboard. */
+    MachineSnapshot snapshot() {
+        materialize();
+        String[] names = new String[myRotors.length];
+        int[] settings = new int[myRotors.length];
+        int[] rings = new int[myRotors.length];
+        for (int x = 0; x < myRotors.length; x += 1) {
+            names[x] = myRotors[x].name();
+            settings[x] = myRotors[x].setting();
+            rings[x] = myRotors[x].ring();
+        }
+        return new MachineSnapshot(names, settings, rings,
+                                   _plugboard.cycles());
+    }
+
+    /** Put me in the state recorded by SNAPSHOT, which must have been
+     *  taken from a machine with my configuration. */
+    void restore(MachineSnapshot snapshot) {
+        String[] names = snapshot.rotors();
+        if (names.length != _numRotors) {
+            throw error("snapshot has %d rotors, machine has %d",
+                        names.length, _numRotors);
+        }
+        insertRotors(names);
+        for (int x = 0; x < _numRotors; x += 1) {
+            if (myRotors[x] == null) {
+                throw error("snapshot rotor %s is not available", names[x]);
+            }
+            if (x > 0) {
+                myRotors[x].set(snapshot.setting(x));
+                myRotors[x].setRing(snapshot.ring(x));
+            }
+        }
+        setPlugboard(new Permutation(snapshot.plugboard(), _alphabet));
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        boolean[] rotatableRotor = new boolean[myRotors.length];
-        rotatableRotor[myRotors.length - 1] = true;
-        int x;
-        for (x = rotatableRotor.length - 1; x > 1; x = x - 1) {
-            if (myRotors[x].atNotch()
-                    && myRotors[x - 1].rotates()) {
-                rotatableRotor[x - 1] = true;
-                rotatableRotor[x] = true;
+        if (_lookup) {
+            lookUp();
+        }
+        if (_entry != null) {
+            if (_keystroke < _entry.length()
+                    && c >= 0 && c < _alphabet.size()) {
+                int result = _entry.get(_keystroke, c);
+                if (result >= 0) {
+                    _keystroke += 1;
+                    return result;
+                }
             }
+            materialize();
         }
-        int upgrade;
-        for (upgrade = 0; upgrade < myRotors.length; upgrade += 1) {
-            if (rotatableRotor[upgrade]) {
-                myRotors[upgrade].advance();
+        step();
+        return path(c);
+    }
+
+    /** Advance my rotors as one keystroke does. */
+    private void step() {
+        _stepping.step(myRotors);
+    }
+
+    /** Convert TEXT[FROM .. TO-1], alphabet indices, in place, as
+     *  converting them one at a time would.  Unless I am using a
+     *  keystream cache, this is done by an engine of my stepping, made
+     *  once ENGINE_AFTER characters have been converted with my current
+     *  rotors and plugboard. */
+    void convert(int[] text, int from, int to) {
+        _sinceEngineChange += to - from;
+        if (_keystream == null && myRotors != null && _plugboard != null
+            && (_engineMade || _sinceEngineChange >= ENGINE_AFTER)) {
+            if (!_engineMade) {
+                _engine = _stepping.engine(myRotors, _plugboard,
+                                           _alphabet.size());
+                _engineMade = true;
             }
+            if (_engine != null && _engine.load(myRotors)) {
+                _engine.convert(text, from, to);
+                _engine.store(myRotors);
+                return;
+            }
+        }
+        for (int k = from; k < to; k += 1) {
+            text[k] = convert(text[k]);
         }
+    }
+
+    /** Convert through an engine from my next bulk conversion on, as if
+     *  ENGINE_AFTER characters had been converted with my current rotors
+     *  and plugboard, for callers about to convert many with them. */
+    void useEngine() {
+        _sinceEngineChange = Math.max(_sinceEngineChange, ENGINE_AFTER);
+    }
+
+    /** Return the conversion of C by my plugboard and rotors at their
+     *  current settings. */
+    private int path(int c) {
         int inputLetter = _plugboard.permute(c);
         int n;
         for (n = _numRotors - 1; n > 0; n = n - 1) {
@@ -101,17 +328,157 @@ class Machine {
         return finalLetter;
     }
 
+    /** Note that my rotors, settings, or plugboard are about to change,
+     *  so that my keystream must be looked up again. */
+    private void setUpChanged() {
+        materialize();
+        _lookup = _keystream != null;
+    }
+
+    /** Find the cached keystream for my current set-up, building it if
+     *  the cache will admit it. */
+    private void lookUp() {
+        _lookup = false;
+        if (_plugboard == null || myRotors == null) {
+            return;
+        }
+        for (Rotor rotor : myRotors) {
+            if (rotor == null) {
+                return;
+            }
+        }
+        _base = settings();
+        String key = fingerprint();
+        _entry = _keystream.get(key);
+        if (_entry == null && _keystream.admit(key)) {
+            _entry = buildKeystream();
+            if (_entry != null) {
+                _keystream.put(key, _entry);
+            }
+        }
+        _keystroke = 0;
+    }
+
+    /** Return the substitutions of the first keystrokes of my keystream
+     *  from my current settings, leaving the settings as they were, or
+     *  null if my rotors cannot make that many keystrokes.  A character
+     *  that cannot be converted is recorded as -1.  Either way, the error
+     *  is left for the keystroke that makes it. */
+    private KeystreamCache.Entry buildKeystream() {
+        int size = _alphabet.size();
+        KeystreamCache.Entry result =
+            new KeystreamCache.Entry(_keystream.keystrokes(), size);
+        try {
+            for (int k = 0; k < result.length(); k += 1) {
+                step();
+                for (int c = 0; c < size; c += 1) {
+                    try {
+                        result.put(k, c, path(c));
+                    } catch (EnigmaException excp) {
+                        result.put(k, c, -1);
+                    }
+                }
+            }
+        } catch (EnigmaException excp) {
+            result = null;
+        } finally {
+            reset(_base);
+        }
+        return result;
+    }
+
+    /** Bring my rotor settings up to date with the keystrokes converted
+     *  from my cached keystream, and stop using it. */
+    private void materialize() {
+        if (_entry == null) {
+            return;
+        }
+        reset(_base);
+        for (int k = 0; k < _keystroke; k += 1) {
+            step();
+        }
+        _entry = null;
+    }
+
+    /** Return the current settings of my rotors. */
+    private int[] settings() {
+        int[] result = new int[myRotors.length];
+        for (int x = 0; x < myRotors.length; x += 1) {
+            result[x] = myRotors[x].setting();
+        }
+        return result;
+    }
+
+    /** Return my rotors to SETTINGS, as returned by settings(). */
+    private void reset(int[] settings) {
+        for (int x = 0; x < myRotors.length; x += 1) {
+            if (myRotors[x].setting() != settings[x]) {
+                myRotors[x].set(settings[x]);
+            }
+        }
+    }
+
+    /** Return a key that determines my keystream from here on: what my
+     *  rotors are, their settings, and my plugboard. */
+    private String fingerprint() {
+        StringBuilder result = new StringBuilder();
+        for (Rotor rotor : myRotors) {
+            result.append(rotor.getClass().getSimpleName()).append('/')
+                .append(rotor.notches()).append('/')
+                .append(rotor.permutation().key()).append('@')
+                .append(rotor.setting()).append('-')
+                .append(rotor.ring()).append('|');
+        }
+        return result.append(_plugboard.key()).append('|')
+            .append(_stepping.name()).toString();
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String output = "";
-        int i;
-        for (i = 0; i < msg.length(); i += 1) {
-            int fix = convert(_alphabet.toInt(msg.charAt(i)));
-            char fixed = _alphabet.toChar(fix);
-            output = output + fixed;
+        int[] text = new int[msg.length()];
+        int n = 0;
+        try {
+            for (n = 0; n < msg.length(); n += 1) {
+                text[n] = _alphabet.toInt(msg.charAt(n));
+            }
+        } finally {
+            convert(text, 0, n);
+        }
+        char[] output = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            output[i] = _alphabet.toChar(text[i]);
+        }
+        return new String(output);
+    }
+
+    /** Convert the characters remaining in IN, putting the results in OUT
+     *  and updating the state of the rotors accordingly.  Stops early if
+     *  OUT fills up, leaving the unconverted characters in IN.  The
+     *  characters are converted in bulk, CHUNK at a time.  A character
+     *  not in my alphabet is left in IN, after those before it have been
+     *  converted. */
+    void convert(CharBuffer in, CharBuffer out) {
+        if (_chunk == null) {
+            _chunk = new int[CHUNK];
+        }
+        while (in.hasRemaining() && out.hasRemaining()) {
+            int n = Math.min(CHUNK, Math.min(in.remaining(),
+                                             out.remaining()));
+            int start = in.position();
+            int k = 0;
+            try {
+                for (k = 0; k < n; k += 1) {
+                    _chunk[k] = _alphabet.toInt(in.get(start + k));
+                }
+            } finally {
+                convert(_chunk, 0, k);
+                in.position(start + k);
+                for (int i = 0; i < k; i += 1) {
+                    out.put(_alphabet.toChar(_chunk[i]));
+                }
+            }
         }
-        return output;
     }
 
     /** Common alphabet of my rotors. */
@@ -126,17 +493,57 @@ class Machine {
     /** The permutation associated with my plugboard. */
     private Permutation _plugboard;
 
-    /** All of the rotors in this new machine. */
-    private Collection<Rotor> _allRotors;
+    /** All of the rotors available to this machine. */
+    private final RotorCatalog _catalog;
+
+    /** The rotors I have used, by lower-case name. */
+    private final HashMap<String, Rotor> _instances;
 
     /** An array of the rotors I have in this new machine. */
     private Rotor[] myRotors;
 
-    /** An list of rotors as arrays.*/
-    private ArrayList<Rotor> _arrayRotors;
+    /** How my rotors advance. */
+    private Stepping _stepping;
+
+    /** Engine of my stepping for my rotors and plugboard, or null if
+     *  they cannot be compiled. */
+    private Stepping.Engine _engine;
+
+    /** True iff _engine has been made for my current rotors, plugboard,
+     *  and stepping. */
+    private boolean _engineMade;
+
+    /** Number of characters converted by convert(int[], int, int) since
+     *  my rotors, plugboard, or stepping last changed. */
+    private long _sinceEngineChange;
+
+    /** Store for compiled rotor and plugboard tables, or null. */
+    private TableStore _tables;
+
+    /** Shared cache of keystreams, or null. */
+    private KeystreamCache _keystream;
+
+    /** True iff my keystream must be looked up before the next
+     *  conversion. */
+    private boolean _lookup;
+
+    /** The cached keystream I am converting with, or null. */
+    private KeystreamCache.Entry _entry;
+
+    /** Number of keystrokes converted with _entry. */
+    private int _keystroke;
+
+    /** My rotor settings when I started to use _entry. */
+    private int[] _base;
+
+    /** Alphabet indices being converted by convert(CharBuffer,
+     *  CharBuffer), or null until it is first used. */
+    private int[] _chunk;
+
 
     /** Use the rotor Array in Main. Returns myRotors. */
     public Rotor[] rotorArr() {
+        materialize();
         return myRotors;
     }
 }
@@ -0,0 +1,726 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.Flow;
+
+import static enigma.EnigmaException.*;
+
+/** A differential fuzzer comparing the optimized ways of running a
+ *  Machine against the plain Machine, Rotor, and Permutation, converting
+ *  one character at a time.  Each case is a random alphabet, rotor
+ *  catalog, stepping, setting, ring setting (or none), plugboard, and
+ *  message, some messages long enough for bulk conversion to go through
+ *  a stepping engine; every engine must produce exactly the reference
+ *  output (or the same error).  Each stepping's engine is also run on
+ *  every case, with that stepping.  The first mismatch is shrunk to a
+ *  small reproduction, printed as a configuration file and input
+ *  acceptable to Main.  Each case is also run through Main itself, from
+ *  its configuration file and settings line, with its message split into
+ *  lines and sometimes flawed by a character outside the alphabet, a bad
+ *  settings line, or a message line before any settings line.  Every
+ *  mode of Main in MAIN_MODES must produce exactly the output and error
+ *  of sequential Main, which, for an unflawed message, must be the
+ *  reference output.
+ *  @author Nazli Urenli
+ */
+final class MachineFuzzer {
+
+    /** Characters from which alphabets are drawn. */
+    static final String CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.,;!?";
+
+    /** The options selecting the modes of Main compared with sequential
+     *  Main. */
+    static final String[][] MAIN_MODES = {
+        { "parallel", "2" }, { "pipeline", "1" }, { "pipeline", "64" },
+    };
+
+    /** The ways rotors may advance. */
+    static final Stepping[] STEPPINGS = {
+        Stepping.DOUBLE_STEP, Stepping.ODOMETER, Stepping.COG_WHEEL,
+    };
+
+    /** Run the fuzzer with ARGS: an optional seed and an optional time
+     *  budget in seconds (default 10).  Exits with code 1 on a mismatch. */
+    public static void main(String... args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0])
+            : System.nanoTime();
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        MachineFuzzer fuzzer = new MachineFuzzer(seed);
+        String report = fuzzer.run(Integer.MAX_VALUE, 1000 * seconds);
+        System.out.printf("seed %d: %d cases%n", seed, fuzzer.cases());
+        if (report != null) {
+            System.out.println(report);
+            System.exit(1);
+        }
+    }
+
+    /** A way of running a case, to be compared with the reference. */
+    interface Engine {
+        /** Return the output of running C, or "error: " followed by the
+         *  message of the EnigmaException it raised. */
+        String run(Case c);
+    }
+
+    /** One rotor in a case's catalog. */
+    static final class RotorSpec {
+        /** A rotor named NAME of TYPE ('M', 'N', or 'R') with NOTCHES and
+         *  CYCLES, as in a configuration file. */
+        RotorSpec(String name, char type, String notches, String cycles) {
+            this.name = name;
+            this.type = type;
+            this.notches = notches;
+            this.cycles = cycles;
+        }
+
+        /** Return a new rotor built from me over ALPHA. */
+        Rotor rotor(Alphabet alpha) {
+            Permutation perm = new Permutation(cycles, alpha);
+            if (type == 'M') {
+                return new MovingRotor(name, perm, notches);
+            } else if (type == 'N') {
+                return new FixedRotor(name, perm);
+            } else {
+                return new Reflector(name, perm);
+            }
+        }
+
+        /** My name, type, notches, and cycles. */
+        final String name, notches, cycles;
+        /** My type. */
+        final char type;
+    }
+
+    /** A single fuzz case. */
+    static final class Case {
+        /** Return a new machine for my configuration, using TABLES for
+         *  compiled tables if it is not null, with my rotors inserted and
+         *  set and my plugboard in place. */
+        Machine machine(TableStore tables) {
+            Alphabet alpha = new Alphabet(alphabet);
+            ArrayList<Rotor> all = new ArrayList<>();
+            for (RotorSpec spec : catalog) {
+                all.add(spec.rotor(alpha));
+            }
+            Machine result = new Machine(alpha, rotors.length, pawls, all);
+            result.setTableStore(tables);
+            result.setStepping(stepping);
+            result.insertRotors(rotors);
+            result.setRotors(setting);
+            if (!rings.isEmpty()) {
+                result.setRings(rings);
+            }
+            result.setPlugboard(new Permutation(plugboard, alpha));
+            return result;
+        }
+
+        /** Return a copy of me with MSG as its message. */
+        Case withMessage(String msg) {
+            Case result = copy();
+            result.message = msg;
+            return result;
+        }
+
+        /** Return a copy of me with STEPPING as its stepping. */
+        Case withStepping(Stepping stepping) {
+            Case result = copy();
+            result.stepping = stepping;
+            return result;
+        }
+
+        /** Return a shallow copy of me. */
+        Case copy() {
+            Case result = new Case();
+            result.alphabet = alphabet;
+            result.catalog = new ArrayList<>(catalog);
+            result.pawls = pawls;
+            result.stepping = stepping;
+            result.rotors = rotors.clone();
+            result.setting = setting;
+            result.rings = rings;
+            result.plugboard = plugboard;
+            result.message = message;
+            return result;
+        }
+
+        /** Return my configuration, in the format read by Main. */
+        String config() {
+            StringBuilder out = new StringBuilder();
+            out.append(alphabet).append('\n');
+            out.append(rotors.length).append(' ').append(pawls).append('\n');
+            for (RotorSpec spec : catalog) {
+                out.append(spec.name).append(' ').append(spec.type)
+                    .append(spec.notches).append(' ').append(spec.cycles)
+                    .append('\n');
+            }
+            return out.toString();
+        }
+
+        /** Return my settings line, in the format read by Main. */
+        String settingsLine() {
+            return "* " + String.join(" ", rotors) + " " + setting
+                + (rings.isEmpty() ? "" : " " + rings)
+                + (plugboard.isEmpty() ? "" : " " + plugboard);
+        }
+
+        /** Characters of my alphabet. */
+        String alphabet;
+        /** Available rotors. */
+        ArrayList<RotorSpec> catalog;
+        /** Number of pawls. */
+        int pawls;
+        /** The way the rotors advance. */
+        Stepping stepping = Stepping.DOUBLE_STEP;
+        /** Names of the rotors inserted, reflector first. */
+        String[] rotors;
+        /** Initial setting of the non-reflector rotors. */
+        String setting;
+        /** Ring setting of the non-reflector rotors, or "" for none. */
+        String rings = "";
+        /** Plugboard cycles. */
+        String plugboard;
+        /** Message to convert. */
+        String message;
+    }
+
+    /** A fuzzer whose cases are generated from SEED. */
+    MachineFuzzer(long seed) {
+        _random = new Random(seed);
+        _engines = new LinkedHashMap<>();
+        _engines.put("tables-heap",
+            (c) -> convert(c, c.machine(TableStore.heap())));
+        _engines.put("tables-offheap",
+            (c) -> convert(c, c.machine(TableStore.offHeap())));
+        _engines.put("processor", MachineFuzzer::viaProcessor);
+        _engines.put("snapshot", MachineFuzzer::viaSnapshot);
+        _engines.put("config", MachineFuzzer::viaConfig);
+        _engines.put("copy", (c) -> {
+            int half = c.message.length() / 2;
+            Machine first = c.machine(null);
+            String head = first.convert(c.message.substring(0, half));
+            return head + first.copy().convert(c.message.substring(half));
+        });
+        _engines.put("keystream", MachineFuzzer::viaKeystream);
+        _steppings = new HashMap<>();
+        for (Stepping stepping : STEPPINGS) {
+            String name = "engine-" + stepping.name();
+            _engines.put(name, MachineFuzzer::viaEngine);
+            _steppings.put(name, stepping);
+        }
+    }
+
+    /** Add ENGINE, named NAME, to the engines I compare. */
+    void addEngine(String name, Engine engine) {
+        _engines.put(name, engine);
+    }
+
+    /** Return the number of cases run so far. */
+    int cases() {
+        return _cases;
+    }
+
+    /** Run at most MAXCASES cases, stopping after BUDGETMILLIS
+     *  milliseconds.  Return a report of the first mismatch, shrunk, or
+     *  null if every engine agreed with the reference. */
+    String run(int maxCases, long budgetMillis) {
+        long deadline = System.currentTimeMillis() + budgetMillis;
+        while (_cases < maxCases && System.currentTimeMillis() < deadline) {
+            Case c = randomCase();
+            _cases += 1;
+            String ref = reference(c);
+            for (String name : _engines.keySet()) {
+                Engine engine = _engines.get(name);
+                Case d = c;
+                String expected = ref;
+                if (_steppings.containsKey(name)) {
+                    d = c.withStepping(_steppings.get(name));
+                    expected = d.stepping == c.stepping ? ref : reference(d);
+                }
+                if (!expected.equals(outcome(engine, d))) {
+                    return report(name, engine, shrink(engine, d));
+                }
+            }
+            String report = checkMain(c, ref);
+            if (report != null) {
+                return report;
+            }
+        }
+        return null;
+    }
+
+    /** Return a report of the first mode of Main that disagrees with
+     *  sequential Main on C, with its message split into lines and
+     *  perhaps flawed, or of sequential Main disagreeing with REF, the
+     *  reference output for C, on an unflawed message.  Return null if
+     *  all agree. */
+    private String checkMain(Case c, String ref) {
+        int flaw = _random.nextInt(4);
+        String input = mainInput(c, flaw);
+        String expected = runMain(c, input, new HashMap<>());
+        if (flaw == 0 && !ref.startsWith("error: ")
+            && !expected.replaceAll("\\s", "").equals(ref)) {
+            return mainReport("sequential Main disagrees with the reference",
+                              ref, expected, c, input);
+        }
+        for (String[] mode : MAIN_MODES) {
+            HashMap<String, String> options = new HashMap<>();
+            options.put(mode[0], mode[1]);
+            String actual = runMain(c, input, options);
+            if (!expected.equals(actual)) {
+                return mainReport(String.format("Main with --%s=%s disagrees "
+                                                + "with sequential Main",
+                                                mode[0], mode[1]),
+                                  expected, actual, c, input);
+            }
+        }
+        return null;
+    }
+
+    /** Return the input to Main for C: its settings line and its message
+     *  split into lines, with FLAW 1 adding a character outside the
+     *  alphabet, FLAW 2 a settings line with too few rotors followed by
+     *  more of the message, and FLAW 3 moving the first message line
+     *  before the settings line.  FLAW 0 adds none. */
+    private String mainInput(Case c, int flaw) {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add(c.settingsLine());
+        for (int k = 0; k < c.message.length(); ) {
+            int end = Math.min(c.message.length(), k + 1 + _random.nextInt(40));
+            lines.add(c.message.substring(k, end));
+            if (_random.nextInt(8) == 0) {
+                lines.add("");
+            }
+            k = end;
+        }
+        if (flaw == 1 && lines.size() > 1) {
+            int line = 1 + _random.nextInt(lines.size() - 1);
+            String text = lines.get(line);
+            int at = _random.nextInt(text.length() + 1);
+            lines.set(line, text.substring(0, at) + outside(c.alphabet)
+                      + text.substring(at));
+        } else if (flaw == 2) {
+            lines.add("* " + String.join(" ", Arrays.copyOf(
+                c.rotors, c.rotors.length - 1)));
+            lines.add(randomString(c.alphabet, 1 + _random.nextInt(20)));
+        } else if (flaw == 3 && lines.size() > 1) {
+            lines.add(0, lines.remove(1));
+        }
+        return String.join("\n", lines) + "\n";
+    }
+
+    /** Return a character not in ALPHA that Main does not take for a
+     *  blank or the start of a settings line. */
+    private char outside(String alpha) {
+        for (char ch : CHARS.toCharArray()) {
+            if (alpha.indexOf(ch) < 0) {
+                return ch;
+            }
+        }
+        return '#';
+    }
+
+    /** Return the output of Main with OPTIONS converting INPUT with C's
+     *  configuration and stepping, followed by "error: " and the message
+     *  of the EnigmaException that stopped it, if any. */
+    static String runMain(Case c, String input,
+                          HashMap<String, String> options) {
+        File in = null, out = null;
+        try {
+            in = File.createTempFile("fuzz", ".in");
+            out = File.createTempFile("fuzz", ".out");
+            Files.write(in.toPath(), input.getBytes(StandardCharsets.UTF_8));
+            String error = "";
+            Main main = new Main(options, in.getPath(), out.getPath());
+            try {
+                Machine M = Main.readConfig(
+                    c.config().getBytes(StandardCharsets.UTF_8));
+                M.setStepping(c.stepping);
+                main.processInput(M);
+            } catch (EnigmaException excp) {
+                error = "error: " + excp.getMessage();
+            } finally {
+                main.close();
+            }
+            return new String(Files.readAllBytes(out.toPath()),
+                              StandardCharsets.UTF_8) + error;
+        } catch (IOException excp) {
+            throw error("could not use temporary files");
+        } finally {
+            if (in != null) {
+                in.delete();
+            }
+            if (out != null) {
+                out.delete();
+            }
+        }
+    }
+
+    /** Return a report of Main failing on C with INPUT, as described by
+     *  WHAT, giving EXPECTED rather than ACTUAL. */
+    private static String mainReport(String what, String expected,
+                                     String actual, Case c, String input) {
+        return String.format("%s%nexpected: %s%nactual:   %s%n"
+                             + "--- stepping ---%n%s%n"
+                             + "--- config ---%n%s--- input ---%n%s",
+                             what, expected, actual, c.stepping.name(),
+                             c.config(), input);
+    }
+
+    /** Return the output of running C on a plain machine, converting
+     *  one character at a time. */
+    static String reference(Case c) {
+        return outcome(MachineFuzzer::oneAtATime, c);
+    }
+
+    /** Return the output of ENGINE on C, as for Engine.run, catching any
+     *  EnigmaException it raises. */
+    static String outcome(Engine engine, Case c) {
+        try {
+            return engine.run(c);
+        } catch (EnigmaException excp) {
+            return "error: " + excp.getMessage();
+        }
+    }
+
+    /** Return true iff ENGINE disagrees with the reference on C. */
+    private static boolean mismatch(Engine engine, Case c) {
+        return !reference(c).equals(outcome(engine, c));
+    }
+
+    /** Return the conversion of C's message by M. */
+    private static String convert(Case c, Machine M) {
+        return M.convert(c.message);
+    }
+
+    /** Return the conversion of C's message by a plain machine, one
+     *  character at a time. */
+    private static String oneAtATime(Case c) {
+        Machine M = c.machine(null);
+        Alphabet alpha = M.alphabet();
+        char[] result = new char[c.message.length()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] =
+                alpha.toChar(M.convert(alpha.toInt(c.message.charAt(k))));
+        }
+        return new String(result);
+    }
+
+    /** Return the conversion of C's message in bulk by an engine of its
+     *  stepping, used from the first character. */
+    private static String viaEngine(Case c) {
+        Machine M = c.machine(null);
+        M.useEngine();
+        return M.convert(c.message);
+    }
+
+    /** Return the output of C passed through a MachineProcessor in chunks
+     *  of varying size, delivered synchronously. */
+    private static String viaProcessor(Case c) {
+        MachineProcessor processor =
+            new MachineProcessor(c.machine(null), 1 + c.message.length() % 7);
+        StringBuilder result = new StringBuilder();
+        EnigmaException[] error = new EnigmaException[1];
+        processor.subscribe(new Flow.Subscriber<CharBuffer>() {
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+            public void onNext(CharBuffer buf) {
+                result.append(buf);
+                processor.recycle(buf);
+            }
+            public void onError(Throwable throwable) {
+                error[0] = (EnigmaException) throwable;
+            }
+            public void onComplete() {
+            }
+        });
+        processor.onSubscribe(new Flow.Subscription() {
+            public void request(long n) {
+            }
+            public void cancel() {
+            }
+        });
+        int chunk = 1 + c.message.length() % 5;
+        for (int k = 0; k < c.message.length(); k += chunk) {
+            processor.onNext(CharBuffer.wrap(c.message, k,
+                Math.min(c.message.length(), k + chunk)));
+        }
+        processor.onComplete();
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return result.toString();
+    }
+
+    /** Return the output of C on a machine whose rotors are read lazily
+     *  from C's configuration file text. */
+    private static String viaConfig(Case c) {
+        ConfigTokens config = new ConfigTokens(
+            c.config().getBytes(StandardCharsets.UTF_8));
+        Alphabet alpha = new Alphabet(config.next());
+        int numRotors = config.nextInt(), pawls = config.nextInt();
+        Machine M = new Machine(alpha, numRotors, pawls,
+            RotorCatalog.read(config, config.next(), alpha));
+        M.setStepping(c.stepping);
+        M.insertRotors(c.rotors);
+        M.setRotors(c.setting);
+        if (!c.rings.isEmpty()) {
+            M.setRings(c.rings);
+        }
+        M.setPlugboard(new Permutation(c.plugboard, alpha));
+        return M.convert(c.message);
+    }
+
+    /** Return the output of C converted three times through one small
+     *  keystream cache: once to be seen, once to be cached, and once from
+     *  the cache, with a copy taken halfway.  Any run that disagrees with
+     *  the first is returned instead. */
+    private static String viaKeystream(Case c) {
+        KeystreamCache keystream = new KeystreamCache(7, 1 << 20);
+        int half = c.message.length() / 2;
+        String first = null;
+        for (int k = 0; k < 3; k += 1) {
+            Machine M = c.machine(null);
+            M.setKeystreamCache(keystream);
+            M.insertRotors(c.rotors);
+            M.setRotors(c.setting);
+            if (!c.rings.isEmpty()) {
+                M.setRings(c.rings);
+            }
+            M.setPlugboard(new Permutation(c.plugboard, M.alphabet()));
+            String head = M.convert(c.message.substring(0, half));
+            String result =
+                head + M.copy().convert(c.message.substring(half));
+            if (first == null) {
+                first = result;
+            } else if (!result.equals(first)) {
+                return result;
+            }
+        }
+        return first;
+    }
+
+    /** Return the output of C converted half on one machine and half on
+     *  another restored from a snapshot of the first. */
+    private static String viaSnapshot(Case c) {
+        int half = c.message.length() / 2;
+        Machine first = c.machine(null);
+        String head = first.convert(c.message.substring(0, half));
+        Case other = c.copy();
+        Machine second = other.machine(null);
+        second.restore(first.snapshot());
+        return head + second.convert(c.message.substring(half));
+    }
+
+    /** Return a smaller case on which ENGINE still disagrees with the
+     *  reference, starting from C. */
+    private Case shrink(Engine engine, Case c) {
+        String ref = reference(c), out = outcome(engine, c);
+        int diff = 0;
+        while (diff < ref.length() && diff < out.length()
+               && ref.charAt(diff) == out.charAt(diff)) {
+            diff += 1;
+        }
+        if (diff < c.message.length()) {
+            Case shorter = c.withMessage(c.message.substring(0, diff + 1));
+            if (mismatch(engine, shorter)) {
+                c = shorter;
+            }
+        }
+        if (!c.rings.isEmpty()) {
+            Case plain = c.copy();
+            plain.rings = "";
+            if (mismatch(engine, plain)) {
+                c = plain;
+            }
+        }
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            String[] pairs = c.plugboard.isEmpty() ? new String[0]
+                : c.plugboard.split(" ");
+            for (int k = 0; k < pairs.length && !progress; k += 1) {
+                Case fewer = c.copy();
+                ArrayList<String> rest = new ArrayList<>(Arrays.asList(pairs));
+                rest.remove(k);
+                fewer.plugboard = String.join(" ", rest);
+                if (mismatch(engine, fewer)) {
+                    c = fewer;
+                    progress = true;
+                }
+            }
+            for (int k = 0; k < c.catalog.size() && !progress; k += 1) {
+                if (Arrays.asList(c.rotors).contains(c.catalog.get(k).name)) {
+                    continue;
+                }
+                Case fewer = c.copy();
+                fewer.catalog.remove(k);
+                if (mismatch(engine, fewer)) {
+                    c = fewer;
+                    progress = true;
+                }
+            }
+        }
+        return c;
+    }
+
+    /** Return a report of ENGINE, named NAME, failing on C. */
+    private static String report(String name, Engine engine, Case c) {
+        return String.format("engine %s disagrees with the reference%n"
+                             + "expected: %s%nactual:   %s%n"
+                             + "--- stepping ---%n%s%n"
+                             + "--- config ---%n%s--- input ---%n%s%n%s",
+                             name, reference(c), outcome(engine, c),
+                             c.stepping.name(),
+                             c.config(), c.settingsLine(), c.message);
+    }
+
+    /** Return a random case. */
+    Case randomCase() {
+        Case c = new Case();
+        ArrayList<Character> pool = new ArrayList<>();
+        for (char ch : CHARS.toCharArray()) {
+            pool.add(ch);
+        }
+        Collections.shuffle(pool, _random);
+        int size = 2 + _random.nextInt(CHARS.length() - 1);
+        StringBuilder alpha = new StringBuilder();
+        for (int k = 0; k < size; k += 1) {
+            alpha.append(pool.get(k));
+        }
+        c.alphabet = alpha.toString();
+
+        int numRotors = 2 + _random.nextInt(5);
+        c.pawls = 1 + _random.nextInt(numRotors - 1);
+        int reflectors = 1 + _random.nextInt(2);
+        int fixed = numRotors - 1 - c.pawls + _random.nextInt(2);
+        int moving = c.pawls + _random.nextInt(3);
+        c.catalog = new ArrayList<>();
+        for (int k = 0; k < reflectors; k += 1) {
+            c.catalog.add(new RotorSpec("R" + k, 'R', "",
+                                        cycles(c.alphabet, true)));
+        }
+        for (int k = 0; k < fixed; k += 1) {
+            c.catalog.add(new RotorSpec("N" + k, 'N', "",
+                                        cycles(c.alphabet, false)));
+        }
+        for (int k = 0; k < moving; k += 1) {
+            String notches = subset(c.alphabet, 1 + _random.nextInt(3));
+            c.catalog.add(new RotorSpec("M" + k, 'M', notches,
+                                        cycles(c.alphabet, false)));
+        }
+
+        c.rotors = new String[numRotors];
+        c.rotors[0] = "R" + _random.nextInt(reflectors);
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int k = 0; k < moving; k += 1) {
+            order.add(k);
+        }
+        Collections.shuffle(order, _random);
+        for (int k = 1; k < numRotors; k += 1) {
+            int moved = k - (numRotors - c.pawls);
+            c.rotors[k] = moved >= 0 ? "M" + order.get(moved) : "N" + (k - 1);
+        }
+        c.setting = randomString(c.alphabet, numRotors - 1);
+        c.rings = _random.nextBoolean()
+            ? randomString(c.alphabet, numRotors - 1) : "";
+        c.plugboard = pairs(c.alphabet, _random.nextInt(size / 2 + 1));
+        c.stepping = STEPPINGS[_random.nextInt(STEPPINGS.length)];
+        int length = _random.nextInt(8) == 0
+            ? Machine.ENGINE_AFTER + _random.nextInt(Machine.ENGINE_AFTER)
+            : _random.nextInt(200);
+        c.message = randomString(c.alphabet, length);
+        return c;
+    }
+
+    /** Return a random permutation of ALPHA in cycle notation, an
+     *  involution with no fixed points (except perhaps one) if
+     *  REFLECTOR.  There is always at least one cycle, since a
+     *  configuration file cannot describe a rotor with none. */
+    private String cycles(String alpha, boolean reflector) {
+        if (reflector) {
+            return pairs(alpha, alpha.length() / 2);
+        }
+        ArrayList<Character> chars = new ArrayList<>();
+        for (char ch : alpha.toCharArray()) {
+            chars.add(ch);
+        }
+        Collections.shuffle(chars, _random);
+        ArrayList<String> result = new ArrayList<>();
+        int k = 0;
+        while (k < chars.size()) {
+            int len = 1 + _random.nextInt(chars.size() - k);
+            StringBuilder cycle = new StringBuilder("(");
+            for (int j = 0; j < len; j += 1) {
+                cycle.append(chars.get(k + j));
+            }
+            k += len;
+            if (len > 1 || _random.nextBoolean()) {
+                result.add(cycle.append(')').toString());
+            }
+        }
+        if (result.isEmpty()) {
+            result.add("(" + chars.get(0) + ")");
+        }
+        return String.join(" ", result);
+    }
+
+    /** Return N random disjoint transpositions of characters of ALPHA. */
+    private String pairs(String alpha, int n) {
+        ArrayList<Character> chars = new ArrayList<>();
+        for (char ch : alpha.toCharArray()) {
+            chars.add(ch);
+        }
+        Collections.shuffle(chars, _random);
+        ArrayList<String> result = new ArrayList<>();
+        for (int k = 0; k < n; k += 1) {
+            result.add("(" + chars.get(2 * k) + chars.get(2 * k + 1) + ")");
+        }
+        return String.join(" ", result);
+    }
+
+    /** Return N distinct random characters of ALPHA. */
+    private String subset(String alpha, int n) {
+        ArrayList<Character> chars = new ArrayList<>();
+        for (char ch : alpha.toCharArray()) {
+            chars.add(ch);
+        }
+        Collections.shuffle(chars, _random);
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < n && k < chars.size(); k += 1) {
+            result.append(chars.get(k));
+        }
+        return result.toString();
+    }
+
+    /** Return a random string of N characters of ALPHA. */
+    private String randomString(String alpha, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < n; k += 1) {
+            result.append(alpha.charAt(_random.nextInt(alpha.length())));
+        }
+        return result.toString();
+    }
+
+    /** Source of randomness. */
+    private final Random _random;
+
+    /** The engines compared with the reference, by name. */
+    private final LinkedHashMap<String, Engine> _engines;
+
+    /** The stepping with which each stepping's engine is run, by the
+     *  engine's name. */
+    private final HashMap<String, Stepping> _steppings;
+
+    /** Number of cases run. */
+    private int _cases;
+}
@@ -0,0 +1,35 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** Runs the differential fuzzer on a fixed seed, within a CI-sized time
+ *  budget.
+ *  @author Nazli Urenli
+ */
+public class MachineFuzzerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void testEnginesAgree() {
+        MachineFuzzer fuzzer = new MachineFuzzer(61);
+        String report = fuzzer.run(500, 6000);
+        assertNull(report, report);
+        assertTrue(fuzzer.cases() > 0);
+    }
+
+    @Test
+    public void testDetectsMismatch() {
+        MachineFuzzer fuzzer = new MachineFuzzer(61);
+        fuzzer.addEngine("reversed", (c) -> new StringBuilder(
+            c.machine(null).convert(c.message)).reverse().toString());
+        String report = fuzzer.run(500, 6000);
+        assertNotNull(report);
+        assertTrue(report.contains("reversed"));
+    }
+}
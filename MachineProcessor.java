@@ -0,0 +1,246 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A Flow.Processor that passes a stream of text chunks through a Machine.
+ *  Chunks received from upstream are converted into pooled buffers of a
+ *  fixed batch size.  A buffer is published downstream when it is full,
+ *  or, partly filled, as soon as downstream is waiting for more than the
+ *  full buffers on hand (and when the stream ends), so small chunks are
+ *  batched while downstream is busy, and no converted text is held back
+ *  from a waiting subscriber however slow upstream is.  No thread is
+ *  dedicated to a stream: signals are handled on whichever thread
+ *  delivers them, serialized by a drain loop.
+ *
+ *  Upstream is asked for more chunks only while downstream demand exceeds
+ *  the buffers ready for it, and there are fewer than a small number of
+ *  them.  Each buffer published downstream is flipped for reading and
+ *  belongs to the subscriber until it hands it back with recycle().
+ *  @author Nazli Urenli
+ */
+final class MachineProcessor
+    implements Flow.Processor<CharBuffer, CharBuffer> {
+
+    /** Number of upstream chunks requested at a time. */
+    private static final int PREFETCH = 16;
+
+    /** Most ready buffers on hand for which more input is requested. */
+    private static final int MAX_READY = 2;
+
+    /** A processor converting with MACHINE, which must already be set up,
+     *  into buffers of BATCHSIZE characters. */
+    MachineProcessor(Machine machine, int batchSize) {
+        _machine = machine;
+        _pool = new CharBufferPool(batchSize, 2 * MAX_READY + 2);
+        _ready = new ConcurrentLinkedQueue<>();
+        _demand = new AtomicLong();
+        _requested = new AtomicLong();
+        _wip = new AtomicInteger();
+    }
+
+    /** Return BUF, which I published, for reuse. */
+    void recycle(CharBuffer buf) {
+        _pool.release(buf);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharBuffer> subscriber) {
+        if (_downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {
+                }
+                public void cancel() {
+                }
+            });
+            subscriber.onError(
+                new IllegalStateException("already subscribed"));
+            return;
+        }
+        _downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            public void request(long n) {
+                if (n <= 0) {
+                    _error = new IllegalArgumentException(
+                        "non-positive request");
+                    _done = true;
+                    if (_upstream != null) {
+                        _upstream.cancel();
+                    }
+                } else {
+                    addDemand(n);
+                    synchronized (MachineProcessor.this) {
+                        if (!_done && _demand.get() > _ready.size()) {
+                            flush();
+                        }
+                    }
+                }
+                drain();
+            }
+            public void cancel() {
+                _cancelled = true;
+                if (_upstream != null) {
+                    _upstream.cancel();
+                }
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(CharBuffer chunk) {
+        _requested.decrementAndGet();
+        if (_done || _cancelled) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                while (chunk.hasRemaining()) {
+                    if (_batch == null) {
+                        _batch = _pool.acquire();
+                    }
+                    _machine.convert(chunk, _batch);
+                    if (!_batch.hasRemaining()) {
+                        flush();
+                    }
+                }
+                if (_demand.get() > _ready.size()) {
+                    flush();
+                }
+            }
+        } catch (EnigmaException excp) {
+            _error = excp;
+            _done = true;
+            _upstream.cancel();
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        _error = throwable;
+        _done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            flush();
+            _done = true;
+        }
+        drain();
+    }
+
+    /** Queue the buffer being filled, if it holds anything, for
+     *  downstream.  Called holding my lock. */
+    private void flush() {
+        if (_batch != null && _batch.position() > 0) {
+            _batch.flip();
+            _ready.offer(_batch);
+            _batch = null;
+        }
+    }
+
+    /** Add N to the downstream demand, saturating at Long.MAX_VALUE. */
+    private void addDemand(long n) {
+        long current, next;
+        do {
+            current = _demand.get();
+            next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!_demand.compareAndSet(current, next));
+    }
+
+    /** Publish ready buffers against downstream demand, deliver terminal
+     *  signals, and request more input when there is room for it.  Only
+     *  one thread runs the loop at a time; signals arriving meanwhile make
+     *  it go round again. */
+    private void drain() {
+        if (_wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super CharBuffer> down = _downstream;
+            if (_cancelled || _terminated) {
+                _ready.clear();
+            } else if (down != null) {
+                while (_demand.get() > 0 && !_ready.isEmpty()) {
+                    if (_demand.get() != Long.MAX_VALUE) {
+                        _demand.decrementAndGet();
+                    }
+                    down.onNext(_ready.poll());
+                }
+                if (_done && (_ready.isEmpty() || _error != null)) {
+                    _terminated = true;
+                    _ready.clear();
+                    if (_error != null) {
+                        down.onError(_error);
+                    } else {
+                        down.onComplete();
+                    }
+                }
+            }
+            int ready = _ready.size();
+            if (!_done && !_cancelled && _upstream != null
+                && ready < MAX_READY && _demand.get() > ready
+                && _requested.get() <= 0) {
+                _requested.addAndGet(PREFETCH);
+                _upstream.request(PREFETCH);
+            }
+            missed = _wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /** The machine doing the conversions. */
+    private final Machine _machine;
+
+    /** Source of output buffers. */
+    private final CharBufferPool _pool;
+
+    /** Full buffers awaiting downstream demand. */
+    private final ConcurrentLinkedQueue<CharBuffer> _ready;
+
+    /** Outstanding downstream demand. */
+    private final AtomicLong _demand;
+
+    /** Chunks requested from upstream and not yet received. */
+    private final AtomicLong _requested;
+
+    /** Work-in-progress count for the drain loop. */
+    private final AtomicInteger _wip;
+
+    /** The buffer being filled, touched only holding my lock. */
+    private CharBuffer _batch;
+
+    /** My source. */
+    private volatile Flow.Subscription _upstream;
+
+    /** My subscriber. */
+    private volatile Flow.Subscriber<? super CharBuffer> _downstream;
+
+    /** The error ending the stream, or null. */
+    private volatile Throwable _error;
+
+    /** True once no more input will be converted. */
+    private volatile boolean _done;
+
+    /** True once the subscriber has cancelled. */
+    private volatile boolean _cancelled;
+
+    /** True once a terminal signal has gone downstream. */
+    private volatile boolean _terminated;
+}
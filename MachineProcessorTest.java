@@ -0,0 +1,156 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineProcessor class.
+ *  @author Nazli Urenli
+ */
+public class MachineProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    private static final String[] ROTORS = { "B", "Beta", "III", "IV", "I" };
+
+    /** A subscriber collecting what it receives, one buffer at a time. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+        Collector(MachineProcessor processor) {
+            _processor = processor;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            subscription.request(1);
+        }
+
+        public void onNext(CharBuffer buf) {
+            _largest = Math.max(_largest, buf.remaining());
+            _result.append(buf);
+            _buffers += 1;
+            _received.countDown();
+            _processor.recycle(buf);
+            _subscription.request(1);
+        }
+
+        public void onError(Throwable throwable) {
+            _error = throwable;
+            _done.countDown();
+        }
+
+        public void onComplete() {
+            _done.countDown();
+        }
+
+        private final MachineProcessor _processor;
+        private Flow.Subscription _subscription;
+        private final StringBuilder _result = new StringBuilder();
+        private int _buffers;
+        private int _largest;
+        private final CountDownLatch _received = new CountDownLatch(1);
+        private volatile Throwable _error;
+        private final CountDownLatch _done = new CountDownLatch(1);
+    }
+
+    /** Publish MSG through a processor with batch size BATCH in chunks of
+     *  CHUNK characters, returning the collector of the output. */
+    private Collector run(String msg, int chunk, int batch)
+        throws InterruptedException {
+        MachineProcessor processor =
+            new MachineProcessor(navalMachine(ROTORS, "AXLE", "(YF) (ZH)"),
+                                 batch);
+        Collector collector = new Collector(processor);
+        processor.subscribe(collector);
+        try (SubmissionPublisher<CharBuffer> source =
+                 new SubmissionPublisher<>()) {
+            source.subscribe(processor);
+            for (int k = 0; k < msg.length(); k += chunk) {
+                source.submit(CharBuffer.wrap(
+                    msg, k, Math.min(msg.length(), k + chunk)));
+            }
+        }
+        assertTrue(collector._done.await(4, TimeUnit.SECONDS));
+        return collector;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesConvert() throws InterruptedException {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected =
+            navalMachine(ROTORS, "AXLE", "(YF) (ZH)").convert(msg);
+        for (int chunk = 1; chunk < 8; chunk += 3) {
+            Collector collector = run(msg, chunk, 10);
+            assertNull(collector._error);
+            assertEquals(expected, collector._result.toString());
+            assertTrue(collector._buffers >= 5);
+            assertTrue(collector._buffers
+                       <= (msg.length() + chunk - 1) / chunk);
+            assertTrue(collector._largest <= 10);
+        }
+    }
+
+    @Test
+    public void testSlowPublisher() throws InterruptedException {
+        MachineProcessor processor =
+            new MachineProcessor(navalMachine(ROTORS, "AXLE", "(YF) (ZH)"),
+                                 100);
+        Collector collector = new Collector(processor);
+        processor.subscribe(collector);
+        try (SubmissionPublisher<CharBuffer> source =
+                 new SubmissionPublisher<>()) {
+            source.subscribe(processor);
+            source.submit(CharBuffer.wrap("HELLO"));
+            assertTrue(collector._received.await(4, TimeUnit.SECONDS));
+            assertEquals(navalMachine(ROTORS, "AXLE", "(YF) (ZH)")
+                         .convert("HELLO"), collector._result.toString());
+        }
+        assertTrue(collector._done.await(4, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBadCharacter() throws InterruptedException {
+        Collector collector = run("HELLO world", 3, 4);
+        assertTrue(collector._error instanceof EnigmaException);
+    }
+
+    @Test
+    public void testConvertBuffers() {
+        String msg = "HELLOWORLD".repeat(100) + "hELLO";
+        Machine M = navalMachine(ROTORS, "AXLE", "(YF) (ZH)");
+        CharBuffer in = CharBuffer.wrap(msg);
+        CharBuffer out = CharBuffer.allocate(300);
+        M.convert(in, out);
+        assertEquals(700 + 5, in.remaining());
+        assertFalse(out.hasRemaining());
+        out = CharBuffer.allocate(1000);
+        try {
+            M.convert(in, out);
+            fail("h was converted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals('h', in.get(in.position()));
+        assertEquals(5, in.remaining());
+        String expected = navalMachine(ROTORS, "AXLE", "(YF) (ZH)")
+            .convert(msg.substring(0, 1000) + "ZELLO");
+        in = CharBuffer.wrap("ZELLO");
+        M.convert(in, out);
+        assertFalse(in.hasRemaining());
+        assertEquals(expected.substring(300), out.flip().toString());
+    }
+}
@@ -0,0 +1,86 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static enigma.EnigmaException.*;
+
+/** The state of a running Machine: the rotors in its slots, their
+ *  settings and ring settings, and its plugboard.  Restoring a snapshot
+ *  puts a machine with the same configuration back exactly where the
+ *  snapshot was taken.
+ *  @author Nazli Urenli
+ */
+final class MachineSnapshot {
+
+    /** A snapshot of a machine whose slots hold the rotors named ROTORS,
+     *  with settings SETTINGS and ring settings RINGS, and whose
+     *  plugboard has cycles PLUGBOARD. */
+    MachineSnapshot(String[] rotors, int[] settings, int[] rings,
+                    String plugboard) {
+        if (rotors.length != settings.length
+            || rotors.length != rings.length) {
+            throw error("snapshot has %d rotors but %d settings",
+                        rotors.length, settings.length);
+        }
+        _rotors = rotors.clone();
+        _settings = settings.clone();
+        _rings = rings.clone();
+        _plugboard = plugboard;
+    }
+
+    /** Return the names of my rotors, reflector first. */
+    String[] rotors() {
+        return _rotors.clone();
+    }
+
+    /** Return the setting of the rotor in slot K. */
+    int setting(int k) {
+        return _settings[k];
+    }
+
+    /** Return the ring setting of the rotor in slot K. */
+    int ring(int k) {
+        return _rings[k];
+    }
+
+    /** Return the cycles of my plugboard. */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** Write me to OUT. */
+    void write(DataOutputStream out) throws IOException {
+        out.writeByte(_rotors.length);
+        for (int k = 0; k < _rotors.length; k += 1) {
+            out.writeUTF(_rotors[k]);
+            out.writeInt(_settings[k]);
+            out.writeInt(_rings[k]);
+        }
+        out.writeUTF(_plugboard);
+    }
+
+    /** Return a snapshot read from IN, as written by write. */
+    static MachineSnapshot read(DataInputStream in) throws IOException {
+        int n = in.readUnsignedByte();
+        String[] rotors = new String[n];
+        int[] settings = new int[n];
+        int[] rings = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            rotors[k] = in.readUTF();
+            settings[k] = in.readInt();
+            rings[k] = in.readInt();
+        }
+        return new MachineSnapshot(rotors, settings, rings, in.readUTF());
+    }
+
+    /** Names of my rotors, reflector first. */
+    private final String[] _rotors;
+
+    /** Settings and ring settings of my rotors, in the same order. */
+    private final int[] _settings, _rings;
+
+    /** Cycles of my plugboard. */
+    private final String _plugboard;
+}
@@ -1,12 +1,26 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static enigma.EnigmaException.*;
 
@@ -15,6 +29,9 @@ import static enigma.EnigmaException.*;
  */
 public final class Main {
 
+    /** Bytes of keystreams the --keystream-cache option may hold. */
+    private static final long KEYSTREAM_BYTES = 64L << 20;
+
     /** Process a sequence of encryptions and decryptions, as
      *  specified by ARGS, where 1 <= ARGS.length <= 3.
      *  ARGS[0] is the name of a configuration file.
@@ -23,7 +40,55 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Options of the form --NAME=VALUE may precede the file names:
+     *    --tables=heap|offheap|mapped:FILE  compiles the rotors and
+     *        plugboards in use into lookup tables, kept on the heap,
+     *        off-heap, or mapped from FILE (which is written from the
+     *        compiled tables if it does not yet exist).
+     *    --checkpoint=FILE  periodically records in FILE the machine state
+     *        and the position reached in the input and output files.
+     *    --checkpoint-every=N  checkpoints every N message lines (10000).
+     *    --resume  continues from the checkpoint in the --checkpoint FILE,
+     *        appending to the output file, rather than starting over.  The
+     *        input file is reopened where the checkpoint was taken, and
+     *        it and the configuration must be those it was taken from.
+     *    --batch=MANIFEST  replaces the file names: MANIFEST lists one
+     *        job per line as "CONFIG INPUT OUTPUT".  Each configuration is
+     *        read once and the jobs run concurrently, each file in order.
+     *    --jobs=N  runs at most N batch jobs at once (one per processor).
+     *    --parallel[=N]  converts up to N settings blocks of the input at
+     *        once (one per processor), writing them in input order.
+     *    --pipeline[=N]  reads, converts, and writes on three threads,
+     *        passing lines between them through rings of N lines (256).
+     *    --keystream-cache[=N]  remembers the first N keystrokes (1024)
+     *        of each rotor and plugboard set-up that recurs, and converts
+     *        them by table lookup when it recurs again.
+     *    --stats  reports pipeline and keystream cache statistics on the
+     *        standard error.
+     *    --windows[=W,...]  reports on the standard error the letter
+     *        statistics (see WindowStats) of the message lines read, over
+     *        sliding windows of each width W (100, 1000, and 10000).
+     *    --windows-every=N  also reports the index of coincidence of each
+     *        window every N message characters.
+     *    --stepping=double|odometer|cog  advances the rotors as the Enigma
+     *        does (the default), as a counter, or as cog wheels (see
+     *        Stepping).
+     *    --jfr-sample=N  records only every Nth set-up and settings block
+     *        as Flight Recorder events (see EnigmaEvents), and records
+     *        them even if no recording was running at start-up.
+     *    --archive=FILE  replaces the output file: writes the converted
+     *        messages to FILE as an archive from which any range can be
+     *        read back (see Archive).
+     *    --archive-every=N  indexes the archive every N characters
+     *        (16384).
+     *    --indicators  decrypts traffic sent under an indicator procedure:
+     *        each message line starts with its message key encrypted at
+     *        the rotor setting of its settings line (the daily ground
+     *        setting), and is written out as its key, a blank, and the
+     *        decryption of the rest at that key.
+     */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,80 +101,1031 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        args = readOptions(args);
+        String mode = null;
+        for (String name : new String[] {
+                "batch", "parallel", "pipeline", "checkpoint", "archive" }) {
+            if (_options.containsKey(name)) {
+                if (mode != null) {
+                    throw error("--%s cannot be combined with --%s",
+                                mode, name);
+                }
+                mode = name;
+            }
+        }
+        if (_options.containsKey("batch")) {
+            if (args.length != 0) {
+                throw error("--batch takes no file arguments");
+            }
+            return;
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
+        if (_options.containsKey("archive") && args.length > 2) {
+            throw error("--archive replaces the output file");
+        }
+        if (_options.containsKey("indicators") && mode != null
+            && !mode.equals("batch")) {
+            throw error("--indicators cannot be combined with --%s", mode);
+        }
 
-        _config = getInput(args[0]);
+        _config = readBytes(args[0]);
 
         if (args.length > 1) {
+            _inputFile = new File(args[1]);
             _input = getInput(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineInput(System.in);
+        }
+
+        if (_options.containsKey("checkpoint")) {
+            if (args.length < 3) {
+                throw error("checkpoints need an output file");
+            }
+            _checkpointFile = new File(_options.get("checkpoint"));
+            _checkpointEvery = intOption("checkpoint-every", 10000);
+        } else if (_options.containsKey("resume")) {
+            throw error("--resume needs --checkpoint");
+        }
+        if (_options.containsKey("resume") && _inputFile == null) {
+            throw error("--resume needs an input file");
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _output = getOutput(args[2], _options.containsKey("resume"));
         } else {
             _output = System.out;
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** A Main with OPTIONS for one job of a batch, converting the
+     *  messages in the file named INPUT into the file named OUTPUT.  Its
+     *  machine is supplied to processInput. */
+    Main(HashMap<String, String> options, String input, String output) {
+        _options = options;
+        _input = getInput(input);
+        _output = getOutput(output, false);
+    }
+
+    /** A Main that only reads the configuration CONFIG, the contents of
+     *  a configuration file. */
+    private Main(byte[] config) {
+        _options = new HashMap<>();
+        _config = config;
+    }
+
+    /** Return an Enigma machine configured from the file named NAME. */
+    static Machine readConfig(String name) {
+        return readConfig(readBytes(name));
+    }
+
+    /** Return an Enigma machine configured from CONFIG, the contents of
+     *  a configuration file. */
+    static Machine readConfig(byte[] config) {
+        return new Main(config).readConfig();
+    }
+
+    /** Close my input and output. */
+    void close() {
+        _input.close();
+        _output.close();
+    }
+
+    /** Record the leading --NAME=VALUE options in ARGS, returning the
+     *  remaining arguments. */
+    private String[] readOptions(String[] args) {
+        _options = new HashMap<>();
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            int eq = args[k].indexOf('=');
+            if (eq < 0) {
+                _options.put(args[k].substring(2), "");
+            } else {
+                _options.put(args[k].substring(2, eq),
+                             args[k].substring(eq + 1));
+            }
+        }
+        return Arrays.copyOfRange(args, k, args.length);
+    }
+
+    /** Return the positive integer value of option NAME, or DEFAULT if
+     *  it is absent or has no value. */
+    private int intOption(String name, int deflt) {
+        String value = _options.get(name);
+        if (value == null || value.isEmpty()) {
+            return deflt;
+        }
         try {
-            return new Scanner(new File(name));
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("--%s must be a positive integer", name);
+    }
+
+    /** Return the TableStore selected by the --tables option, or null
+     *  if there is none. */
+    private TableStore tableStore() {
+        String kind = _options.get("tables");
+        if (kind == null) {
+            return null;
+        } else if (kind.equals("heap")) {
+            return TableStore.heap();
+        } else if (kind.equals("offheap")) {
+            return TableStore.offHeap();
+        } else if (kind.startsWith("mapped:")) {
+            File file = new File(kind.substring("mapped:".length()));
+            if (file.exists()) {
+                return TableStore.mapped(file);
+            }
+            _tableExport = file;
+            return TableStore.offHeap();
+        } else {
+            throw error("unknown table store: %s", kind);
+        }
+    }
+
+    /** Return the KeystreamCache selected by the --keystream-cache
+     *  option, or null if there is none. */
+    private KeystreamCache keystreamCache() {
+        if (!_options.containsKey("keystream-cache")) {
+            return null;
+        }
+        return new KeystreamCache(intOption("keystream-cache", 1024),
+                                  KEYSTREAM_BYTES);
+    }
+
+    /** Return a LineInput reading from the file named NAME. */
+    static LineInput getInput(String name) {
+        try {
+            return new LineInput(new FileInputStream(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a LineInput reading from the file FILE, starting at byte
+     *  number START. */
+    private static LineInput getInput(File file, long start) {
+        try {
+            FileInputStream in = new FileInputStream(file);
+            in.getChannel().position(start);
+            return new LineInput(in, start);
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return the contents of the file named NAME. */
+    static byte[] readBytes(String name) {
+        try {
+            return Files.readAllBytes(Paths.get(name));
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a PrintStream writing to the file named NAME, appending to
+     *  its current contents if APPEND. */
+    private PrintStream getOutput(String name, boolean append) {
         try {
-            return new PrintStream(new File(name));
+            FileOutputStream out = new FileOutputStream(name, append);
+            _outputChannel = out.getChannel();
+            return new PrintStream(out);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
-        Machine myMachine = readConfig();
-        String continueStr = _input.nextLine();
+    void process() {
+        TableStore tables = tableStore();
+        KeystreamCache keystream = keystreamCache();
+        if (_options.containsKey("batch")) {
+            int cpus = Runtime.getRuntime().availableProcessors();
+            new BatchRunner(_options.get("batch"), intOption("jobs", cpus),
+                            _options, tables, keystream).run();
+        } else {
+            Machine myMachine = readConfig();
+            myMachine.setTableStore(tables);
+            myMachine.setKeystreamCache(keystream);
+            myMachine.setStepping(Stepping.forName(_options.get("stepping")));
+            processInput(myMachine);
+        }
+        if (_tableExport != null) {
+            tables.export(_tableExport);
+        }
+        if (keystream != null && _options.containsKey("stats")) {
+            System.err.println(keystream.stats());
+        }
+    }
+
+    /** Apply M, configured from the same file as this Main, to the
+     *  messages in _input, sending the results to _output.  Return the
+     *  number of characters converted. */
+    long processInput(Machine M) {
+        _alphabet = M.alphabet();
+        if (_options.containsKey("windows")) {
+            _windows = new WindowStats(_alphabet,
+                WindowStats.widths(_options.get("windows")));
+            if (_options.containsKey("windows-every")) {
+                _windows.sample(intOption("windows-every", 1), System.err);
+            }
+        }
+        long result = convertInput(M);
+        if (_windows != null) {
+            _windows.report(System.err);
+        }
+        return result;
+    }
+
+    /** Apply M to the messages in _input as for processInput, in the mode
+     *  selected by my options. */
+    private long convertInput(Machine M) {
+        if (_options.containsKey("parallel")) {
+            return processParallel(M, intOption("parallel",
+                Runtime.getRuntime().availableProcessors()));
+        }
+        if (_options.containsKey("pipeline")) {
+            return processPipelined(M, intOption("pipeline", 256));
+        }
+        if (_options.containsKey("archive")) {
+            return processArchive(M);
+        }
+        if (_options.containsKey("indicators")) {
+            return processIndicators(M);
+        }
+        Printer printer = new Printer();
+        String line;
+        if (_options.containsKey("resume")) {
+            line = resume(M, printer);
+        } else {
+            line = nextLine();
+        }
+        convertBlocks(M, line, printer);
+        _output.flush();
+        return _converted;
+    }
+
+    /** Apply M to the messages in _input as for processInput, writing
+     *  the results to the archive named by the --archive option rather
+     *  than to _output.  Return the number of characters converted. */
+    private long processArchive(Machine M) {
+        Archive.Writer archive =
+            new Archive.Writer(new File(_options.get("archive")), M,
+                               intOption("archive-every", Archive.EVERY));
+        try {
+            convertBlocks(M, nextLine(), new BlockHandler() {
+                @Override
+                public void start(Machine M, String settings) {
+                    archive.startBlock(settings, M);
+                }
+
+                @Override
+                public int convert(Machine M, String line) {
+                    String text = line.replace(" ", "");
+                    archive.append(text, M);
+                    return text.length();
+                }
+            });
+        } catch (RuntimeException excp) {
+            archive.abort();
+            throw excp;
+        }
+        archive.close();
+        return _converted;
+    }
+
+    /** Apply M to the messages in _input as for processInput, except that
+     *  each message line is decrypted under the indicator procedure
+     *  described for the --indicators option.  M is set up once for each
+     *  settings line, and its rotor settings then noted as the ground
+     *  setting; each message only repositions its rotors, first to the
+     *  ground setting to decrypt the indicator, and then to the key found
+     *  to decrypt the rest.  Return the number of characters converted. */
+    private long processIndicators(Machine M) {
+        convertBlocks(M, nextLine(), new IndicatorHandler(M));
+        _output.flush();
+        return _converted;
+    }
+
+    /** The treatment of the settings blocks read by convertBlocks. */
+    private interface BlockHandler {
+        /** Begin a block whose settings line, SETTINGS, M has just been
+         *  set up with. */
+        default void start(Machine M, String settings) {
+        }
+
+        /** Convert the message line LINE, in upper case and with its
+         *  blanks, using M.  Return the number of characters converted. */
+        int convert(Machine M, String line);
+
+        /** Write the output of the line last converted by M, if it is not
+         *  already written. */
+        default void write(Machine M) {
+        }
+    }
+
+    /** Converts message lines as processInput does, appending their
+     *  output to a buffer. */
+    private class Formatter implements BlockHandler {
+        @Override
+        public int convert(Machine M, String line) {
+            _empty = line.isEmpty();
+            _processed = M.convert(line.replace(" ", ""));
+            return _processed.length();
+        }
+
+        @Override
+        public void write(Machine M) {
+            if (_empty) {
+                out.append("\n");
+            } else {
+                formatMessageLine(out, _processed);
+            }
+        }
+
+        /** The output so far. */
+        final StringBuilder out = new StringBuilder();
+        /** True iff the line last converted was empty. */
+        private boolean _empty;
+        /** The conversion of the line last converted. */
+        private String _processed;
+    }
+
+    /** A Formatter that prints each line on _output as it is converted,
+     *  writing checkpoints as my options ask. */
+    private final class Printer extends Formatter {
+        @Override
+        public void write(Machine M) {
+            out.setLength(0);
+            super.write(M);
+            _output.append(out);
+            checkpoint(M);
+        }
+    }
+
+    /** Decrypts message lines under the indicator procedure, as described
+     *  for processIndicators. */
+    private final class IndicatorHandler implements BlockHandler {
+        /** A handler for the messages of a machine shaped like M. */
+        IndicatorHandler(Machine M) {
+            _keyLength = M.numRotors() - 1;
+            _ground = new int[M.numRotors()];
+            _key = new int[M.numRotors()];
+        }
+
+        @Override
+        public void start(Machine M, String settings) {
+            M.settings(_ground, 0);
+        }
+
+        @Override
+        public int convert(Machine M, String line) {
+            line = line.replace(" ", "");
+            _length = line.length();
+            if (_length == 0) {
+                return 0;
+            } else if (_length < _keyLength) {
+                throw error("message %s has no indicator", line);
+            }
+            if (_text.length < _length) {
+                _text = new int[Math.max(_length, 2 * _text.length)];
+            }
+            for (int k = 0; k < _length; k += 1) {
+                _text[k] = _alphabet.toInt(line.charAt(k));
+            }
+            M.setRotors(_ground, 0);
+            M.convert(_text, 0, _keyLength);
+            System.arraycopy(_text, 0, _key, 1, _keyLength);
+            M.setRotors(_key, 0);
+            M.convert(_text, _keyLength, _length);
+            return _length;
+        }
+
+        @Override
+        public void write(Machine M) {
+            if (_length == 0) {
+                _output.append("\n");
+                return;
+            }
+            if (_chars.length < _length) {
+                _chars = new char[_text.length];
+            }
+            for (int k = 0; k < _length; k += 1) {
+                _chars[k] = _alphabet.toChar(_text[k]);
+            }
+            _out.setLength(0);
+            _out.append(_chars, 0, _keyLength);
+            if (_length == _keyLength) {
+                _out.append('\n');
+            } else {
+                _out.append(' ');
+                formatMessageLine(_out, CharBuffer.wrap(_chars, _keyLength,
+                                                        _length - _keyLength));
+            }
+            _output.append(_out);
+        }
+
+        /** Length of an indicator. */
+        private final int _keyLength;
+        /** The ground setting of the current block, and the message key
+         *  of the current line. */
+        private final int[] _ground, _key;
+        /** The indices of the line last converted, and their number. */
+        private int[] _text = new int[128];
+        /** Number of characters in the line last converted. */
+        private int _length;
+        /** Characters of the line last converted. */
+        private char[] _chars = new char[_text.length];
+        /** The output line being formatted. */
+        private final StringBuilder _out = new StringBuilder();
+    }
+
+    /** Convert the settings blocks of _input with M, as processInput does,
+     *  starting with the settings line LINE and treating each block as
+     *  HANDLER says.  Each block is recorded as an EnigmaEvents.Block
+     *  event when events are being recorded. */
+    private void convertBlocks(Machine M, String line, BlockHandler handler) {
         while (_input.hasNext()) {
-            String mySett = continueStr;
-            if (!mySett.contains("*")) {
+            if (!line.contains("*")) {
                 throw new EnigmaException("Invalid setting");
             }
-            setUp(myMachine, mySett);
-            continueStr = (_input.nextLine()).toUpperCase();
-            while (continueStr.isEmpty()) {
-                continueStr = (_input.nextLine()).toUpperCase();
+            EnigmaEvents.Block block = setUpBlock(M, line);
+            handler.start(M, line);
+            line = nextLine().toUpperCase();
+            while (line.isEmpty()) {
+                line = nextLine().toUpperCase();
+            }
+            line = convertMessages(M, line, handler, block);
+            endBlock(block);
+        }
+    }
+
+    /** Convert the message lines of _input with M and HANDLER, starting
+     *  with LINE and ending before the next settings line, which is
+     *  returned ("*" if the input ends first).  Record each line in
+     *  BLOCK, if it is not null. */
+    private String convertMessages(Machine M, String line,
+                                   BlockHandler handler,
+                                   EnigmaEvents.Block block) {
+        while (!(line.contains("*"))) {
+            _converted += convertLine(M, line, handler, block);
+            if (!_input.hasNext()) {
+                line = "*";
+            } else {
+                line = nextLine().toUpperCase();
             }
-            while (!(continueStr.contains("*"))) {
-                String processed = myMachine.convert
-                        (continueStr.replaceAll(" ", ""));
-                if (continueStr.isEmpty()) {
-                    _output.append("\n");
-                } else {
-                    printMessageLine(processed);
+        }
+        return line;
+    }
+
+    /** Set M up with SETTINGS, and return the event recording the block
+     *  it begins, or null if events are not being recorded. */
+    private EnigmaEvents.Block setUpBlock(Machine M, String settings) {
+        EnigmaEvents.Block block = events() ? EnigmaEvents.block() : null;
+        long start = block == null ? 0 : System.nanoTime();
+        setUp(M, settings);
+        if (block != null) {
+            block.setUpNanos = System.nanoTime() - start;
+        }
+        return block;
+    }
+
+    /** Convert and write the message line LINE with M and HANDLER,
+     *  recording it in BLOCK if it is not null.  Return the number of
+     *  characters converted. */
+    private int convertLine(Machine M, String line, BlockHandler handler,
+                            EnigmaEvents.Block block) {
+        long start = block == null ? 0 : System.nanoTime();
+        int converted = handler.convert(M, line);
+        start = lineConverted(block, converted, start);
+        handler.write(M);
+        if (block != null) {
+            block.formatNanos += System.nanoTime() - start;
+        }
+        return converted;
+    }
+
+    /** Record in BLOCK, if it is not null, a message line of CONVERTED
+     *  characters whose conversion began at time START.  Return the
+     *  current time, or 0 if BLOCK is null. */
+    private static long lineConverted(EnigmaEvents.Block block,
+                                      int converted, long start) {
+        if (block == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        block.convertNanos += now - start;
+        block.lines += 1;
+        block.characters += converted;
+        return now;
+    }
+
+    /** Apply copies of TEMPLATE to the messages in _input, as for
+     *  processInput, converting up to THREADS settings blocks at once.
+     *  Every block fully resets its machine, so blocks are independent;
+     *  their results are written in input order, and an error in a block
+     *  or in reading is raised once the output before it has been
+     *  written, just as if the blocks had been converted one after
+     *  another.  Return the number of characters converted. */
+    private long processParallel(Machine template, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<Machine> machines =
+            ThreadLocal.withInitial(template::copy);
+        ArrayDeque<Future<BlockOutput>> pending = new ArrayDeque<>();
+        AtomicLong converted = new AtomicLong();
+        try {
+            String continueStr = nextLine();
+            while (_input.hasNext()) {
+                String mySett = continueStr;
+                if (!mySett.contains("*")) {
+                    writeBlocks(pending, 0);
+                    throw new EnigmaException("Invalid setting");
                 }
-                if (!_input.hasNext()) {
-                    continueStr = "*";
-                } else {
-                    continueStr = (_input.nextLine()).toUpperCase();
+                ArrayList<String> lines = new ArrayList<>();
+                RuntimeException failure = null;
+                try {
+                    continueStr = readMessages(lines);
+                } catch (RuntimeException excp) {
+                    failure = excp;
                 }
+                pending.add(pool.submit(() -> convertBlock(
+                    machines.get(), mySett, lines, converted)));
+                if (failure != null) {
+                    writeBlocks(pending, 0);
+                    throw failure;
+                }
+                writeBlocks(pending, 2 * threads);
             }
+            writeBlocks(pending, 0);
+        } finally {
+            pool.shutdownNow();
         }
+        _output.flush();
+        return converted.get();
     }
+
+    /** Add the message lines of _input that follow a settings line, in
+     *  upper case, to LINES, and return the next settings line ("*" if
+     *  the input ends first). */
+    private String readMessages(ArrayList<String> lines) {
+        String line = nextLine().toUpperCase();
+        while (line.isEmpty()) {
+            line = nextLine().toUpperCase();
+        }
+        while (!(line.contains("*"))) {
+            lines.add(line);
+            if (!_input.hasNext()) {
+                line = "*";
+            } else {
+                line = nextLine().toUpperCase();
+            }
+        }
+        return line;
+    }
+
+    /** The output of a settings block converted by processParallel. */
+    private static final class BlockOutput {
+        /** The output TEXT of a block, which ended with ERROR if that is
+         *  not null. */
+        BlockOutput(String text, RuntimeException error) {
+            this.text = text;
+            this.error = error;
+        }
+
+        /** The output of the lines converted. */
+        final String text;
+        /** The error raised by the first line that failed, or null. */
+        final RuntimeException error;
+    }
+
+    /** Set M up with SETTINGS and return the output for the message LINES,
+     *  adding the number of characters converted to CONVERTED.  If a line
+     *  fails, the output is that of the lines before it. */
+    private BlockOutput convertBlock(Machine M, String settings,
+                                     ArrayList<String> lines,
+                                     AtomicLong converted) {
+        EnigmaEvents.Block block = setUpBlock(M, settings);
+        Formatter formatter = new Formatter();
+        try {
+            for (String line : lines) {
+                converted.addAndGet(convertLine(M, line, formatter, block));
+            }
+        } catch (RuntimeException excp) {
+            return new BlockOutput(formatter.out.toString(), excp);
+        }
+        endBlock(block);
+        return new BlockOutput(formatter.out.toString(), null);
+    }
+
+    /** Record BLOCK, if not null, if it is long enough and sampled. */
+    private void endBlock(EnigmaEvents.Block block) {
+        if (block == null) {
+            return;
+        }
+        block.end();
+        if (block.shouldCommit() && sampler(true).next()) {
+            block.commit();
+        }
+    }
+
+    /** Return true iff Flight Recorder events may be recorded: if the
+     *  --jfr-sample option was given, or a recording had been started
+     *  (which sets the jdk.jfr.repository property) when first asked.
+     *  Otherwise, no jdk.jfr class is ever loaded. */
+    private boolean events() {
+        if (_events == null) {
+            _events = _options.containsKey("jfr-sample")
+                || System.getProperty("jdk.jfr.repository") != null;
+        }
+        return _events;
+    }
+
+    /** Return the sampler, chosen by the --jfr-sample option, of
+     *  recorded settings blocks if BLOCKS, and otherwise of set-ups. */
+    private synchronized EnigmaEvents.Sampler sampler(boolean blocks) {
+        if (_samplers == null) {
+            int every = intOption("jfr-sample", 1);
+            _samplers = new EnigmaEvents.Sampler[] {
+                new EnigmaEvents.Sampler(every),
+                new EnigmaEvents.Sampler(every)
+            };
+        }
+        return _samplers[blocks ? 1 : 0];
+    }
+
+    /** Write the output of the blocks at the head of PENDING, in order,
+     *  until at most MAX remain, raising the first exception that a block
+     *  raised, if any, once the output before it is written. */
+    private void writeBlocks(ArrayDeque<Future<BlockOutput>> pending,
+                             int max) {
+        while (pending.size() > max) {
+            writeBlock(pending.poll());
+        }
+    }
+
+    /** Write the output of BLOCK when it is done, raising the exception
+     *  it raised, if any. */
+    private void writeBlock(Future<BlockOutput> block) {
+        BlockOutput output;
+        try {
+            output = block.get();
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw error("block failed: %s", cause);
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+        _output.append(output.text);
+        if (output.error != null) {
+            throw output.error;
+        }
+    }
+
+    /** A line passing between the stages of processPipelined.  Chunks
+     *  live in the slots of the rings between stages and are refilled in
+     *  place, growing their buffers as needed. */
+    private static final class Chunk {
+        /** Kinds of chunk: a settings line, a message line, or an error
+         *  ending the stream. */
+        static final int SETTINGS = 0, MESSAGE = 1, ERROR = 2;
+
+        /** Make me a message line holding the characters of LINE other
+         *  than blanks. */
+        void setMessage(String line) {
+            kind = MESSAGE;
+            empty = line.isEmpty();
+            reserve(line.length());
+            length = 0;
+            for (int k = 0; k < line.length(); k += 1) {
+                char c = line.charAt(k);
+                if (c != ' ') {
+                    chars[length] = c;
+                    length += 1;
+                }
+            }
+        }
+
+        /** Make sure that chars can hold N characters. */
+        void reserve(int n) {
+            if (chars.length < n) {
+                chars = new char[Math.max(n, 2 * chars.length)];
+                view = CharBuffer.wrap(chars);
+            }
+        }
+
+        /** Return my characters as a CharSequence. */
+        CharBuffer text() {
+            view.clear().limit(length);
+            return view;
+        }
+
+        /** My kind. */
+        int kind;
+        /** The settings line, for SETTINGS. */
+        String settings;
+        /** The error, for ERROR. */
+        RuntimeException error;
+        /** True iff I am an empty message line. */
+        boolean empty;
+        /** The characters of a message line, and their number. */
+        char[] chars = new char[128];
+        /** Number of characters in chars. */
+        int length;
+        /** A buffer viewing chars. */
+        CharBuffer view = CharBuffer.wrap(chars);
+    }
+
+    /** Apply M to the messages in _input as for processInput, with
+     *  reading, conversion, and formatting overlapped on three threads
+     *  joined by rings of CAPACITY recycled chunks.  Output and errors
+     *  are exactly those of processInput.  With the --stats option, report
+     *  each stage's throughput and each ring's occupancy on the standard
+     *  error.  Return the number of characters converted. */
+    private long processPipelined(Machine M, int capacity) {
+        SpscRing<Chunk> toConvert = new SpscRing<>(capacity, Chunk::new);
+        SpscRing<Chunk> toWrite = new SpscRing<>(capacity, Chunk::new);
+        long[] stageNanos = new long[3];
+        long start = System.nanoTime();
+        Thread reader = new Thread(() -> {
+            readStage(toConvert);
+            stageNanos[0] = System.nanoTime() - start;
+        }, "enigma-reader");
+        Thread converter = new Thread(() -> {
+            convertStage(M, toConvert, toWrite);
+            stageNanos[1] = System.nanoTime() - start;
+        }, "enigma-converter");
+        reader.start();
+        converter.start();
+        RuntimeException failure = writeStage(toWrite);
+        try {
+            reader.join();
+            converter.join();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+        stageNanos[2] = System.nanoTime() - start;
+        _output.flush();
+        if (_options.containsKey("stats")) {
+            System.err.printf("pipeline: %d lines, %d characters%n",
+                              _lines, _converted);
+            reportStage("read", _lines, stageNanos[0],
+                        toConvert.producerWait());
+            reportStage("convert", _converted, stageNanos[1],
+                        toConvert.consumerWait() + toWrite.producerWait());
+            reportStage("write", _converted, stageNanos[2],
+                        toWrite.consumerWait());
+            reportRing("read->convert", toConvert);
+            reportRing("convert->write", toWrite);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return _converted;
+    }
+
+    /** Report on the standard error that the stage NAME handled COUNT
+     *  items in NANOS nanoseconds, WAITED of them spent waiting. */
+    private static void reportStage(String name, long count, long nanos,
+                                    long waited) {
+        double busy = Math.max(nanos - waited, 1) / 1e9;
+        System.err.printf("  %-8s %12d in %8.3f s, busy %8.3f s "
+                          + "(%.0f/s busy)%n", name, count, nanos / 1e9,
+                          busy, count / busy);
+    }
+
+    /** Report the occupancy of RING, named NAME, on the standard error. */
+    private static void reportRing(String name, SpscRing<?> ring) {
+        System.err.printf("  %-15s mean %.1f, max %d of %d slots%n", name,
+                          ring.meanOccupancy(), ring.maxOccupancy(),
+                          ring.capacity());
+    }
+
+    /** The reading stage of processPipelined: read _input as processInput
+     *  does, publishing its settings and message lines to OUT, followed
+     *  by any error that reading raises. */
+    private void readStage(SpscRing<Chunk> out) {
+        Chunk chunk;
+        try {
+            String continueStr = nextLine();
+            while (_input.hasNext()) {
+                if (!continueStr.contains("*")) {
+                    throw new EnigmaException("Invalid setting");
+                }
+                if ((chunk = out.claim()) == null) {
+                    return;
+                }
+                chunk.kind = Chunk.SETTINGS;
+                chunk.settings = continueStr;
+                out.publish();
+                continueStr = nextLine().toUpperCase();
+                while (continueStr.isEmpty()) {
+                    continueStr = nextLine().toUpperCase();
+                }
+                while (!(continueStr.contains("*"))) {
+                    if ((chunk = out.claim()) == null) {
+                        return;
+                    }
+                    chunk.setMessage(continueStr);
+                    out.publish();
+                    if (!_input.hasNext()) {
+                        continueStr = "*";
+                    } else {
+                        continueStr = nextLine().toUpperCase();
+                    }
+                }
+            }
+        } catch (RuntimeException excp) {
+            if ((chunk = out.claim()) != null) {
+                chunk.kind = Chunk.ERROR;
+                chunk.error = excp;
+                out.publish();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** The conversion stage of processPipelined: set up M for each
+     *  settings line from IN and convert each message line into a chunk
+     *  published to OUT.  The first error, from IN or from M, is passed on
+     *  and ends the stage.  Each block is recorded as for convertBlocks,
+     *  except that formatting, done by the writing stage, is not timed. */
+    private void convertStage(Machine M, SpscRing<Chunk> in,
+                              SpscRing<Chunk> out) {
+        EnigmaEvents.Block block = null;
+        Chunk chunk;
+        while ((chunk = in.take()) != null) {
+            RuntimeException failure = chunk.error;
+            if (chunk.kind == Chunk.SETTINGS) {
+                endBlock(block);
+                block = null;
+                try {
+                    block = setUpBlock(M, chunk.settings);
+                } catch (RuntimeException excp) {
+                    failure = excp;
+                }
+            } else if (chunk.kind == Chunk.MESSAGE) {
+                Chunk result = out.claim();
+                if (result == null) {
+                    break;
+                }
+                try {
+                    long start = block == null ? 0 : System.nanoTime();
+                    convertChunk(M, chunk, result);
+                    lineConverted(block, chunk.length, start);
+                    out.publish();
+                } catch (RuntimeException excp) {
+                    failure = excp;
+                }
+            }
+            in.release();
+            if (failure != null) {
+                block = null;
+                Chunk result = out.claim();
+                if (result != null) {
+                    result.kind = Chunk.ERROR;
+                    result.error = failure;
+                    out.publish();
+                }
+                break;
+            }
+        }
+        endBlock(block);
+        in.abort();
+        out.close();
+    }
+
+    /** Put the conversion by M of the message line in FROM into TO. */
+    private void convertChunk(Machine M, Chunk from, Chunk to) {
+        to.reserve(from.length);
+        for (int k = 0; k < from.length; k += 1) {
+            to.chars[k] = _alphabet.toChar(
+                M.convert(_alphabet.toInt(from.chars[k])));
+        }
+        to.kind = Chunk.MESSAGE;
+        to.empty = from.empty;
+        to.length = from.length;
+        _converted += from.length;
+    }
+
+    /** The writing stage of processPipelined: format the message lines
+     *  from IN onto _output.  Return the error that ends the stream, or
+     *  null if there is none. */
+    private RuntimeException writeStage(SpscRing<Chunk> in) {
+        StringBuilder line = new StringBuilder();
+        Chunk chunk;
+        while ((chunk = in.take()) != null) {
+            if (chunk.kind == Chunk.ERROR) {
+                RuntimeException failure = chunk.error;
+                in.release();
+                in.abort();
+                return failure;
+            }
+            if (chunk.empty) {
+                _output.append("\n");
+            } else {
+                line.setLength(0);
+                formatMessageLine(line, chunk.text());
+                _output.append(line);
+            }
+            in.release();
+        }
+        return null;
+    }
+
+    /** Return the next line of _input, counting it in _lines and adding
+     *  it to _windows if it is a message line. */
+    private String nextLine() {
+        _lines += 1;
+        String result = _input.nextLine();
+        if (_windows != null && result.indexOf('*') < 0) {
+            _windows.add(result);
+        }
+        return result;
+    }
+
+    /** Write a checkpoint of M to _checkpointFile if one is due. */
+    private void checkpoint(Machine M) {
+        if (_checkpointFile == null) {
+            return;
+        }
+        _sinceCheckpoint += 1;
+        if (_sinceCheckpoint >= _checkpointEvery) {
+            _sinceCheckpoint = 0;
+            _output.flush();
+            try {
+                long inputBytes = _input.position();
+                new Checkpoint(_lines, inputBytes, _outputChannel.position(),
+                               Checkpoint.fingerprint(_inputFile, inputBytes,
+                                                      _config),
+                               M.snapshot()).write(_checkpointFile);
+            } catch (IOException excp) {
+                throw error("could not checkpoint output");
+            }
+        }
+    }
+
+    /** Restore M and the input and output files to the state recorded in
+     *  _checkpointFile, and finish, using HANDLER, the message being
+     *  processed when it was written.  Return the settings line that
+     *  follows that message ("*" at the end of the input).  The input is
+     *  reopened at the position recorded, and must begin as it did when
+     *  the checkpoint was taken, with the same configuration.  With no
+     *  checkpoint, start from the beginning. */
+    private String resume(Machine M, BlockHandler handler) {
+        Checkpoint point = null;
+        if (_checkpointFile.exists()) {
+            point = Checkpoint.read(_checkpointFile);
+        }
+        try {
+            if (point == null) {
+                _outputChannel.truncate(0);
+                return nextLine();
+            }
+            if (point.fingerprint() != Checkpoint.fingerprint(
+                    _inputFile, point.inputBytes(), _config)) {
+                throw error("%s was taken from another input or "
+                            + "configuration", _checkpointFile);
+            }
+            if (_outputChannel.size() < point.outputBytes()) {
+                throw error("output is shorter than its checkpoint");
+            }
+            _outputChannel.truncate(point.outputBytes());
+        } catch (IOException excp) {
+            throw error("could not truncate output");
+        }
+        _input.close();
+        _input = getInput(_inputFile, point.inputBytes());
+        _lines = point.lines();
+        M.restore(point.snapshot());
+        if (!_input.hasNext()) {
+            return "*";
+        }
+        return convertMessages(M, nextLine().toUpperCase(), handler, null);
+    }
+
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+     *  file _config.  The rotor descriptions are only indexed here; each
+     *  rotor is built when a settings line first asks for it. */
     private Machine readConfig() {
+        EnigmaEvents.ConfigRead event =
+            events() ? EnigmaEvents.configRead() : null;
         try {
-            ArrayList<Rotor> rotorsArray = new ArrayList<>();
-            final String process = _config.next();
+            ConfigTokens config = new ConfigTokens(_config);
+            final String process = config.next();
             if (process.contains("*")
                     || process.contains("(")
                     || process.contains(")")) {
@@ -117,78 +1133,44 @@ public final class Main {
             }
             _alphabet = new Alphabet(process);
 
-            if (!_config.hasNextInt()) {
+            if (!config.hasNextInt()) {
                 throw new EnigmaException("Can't read configuration");
             }
-            final int rSlots = _config.nextInt();
-            if (!_config.hasNextInt()) {
+            final int rSlots = config.nextInt();
+            if (!config.hasNextInt()) {
                 throw new EnigmaException("Pawl is unavailable.");
             }
-            final int mRotor = _config.nextInt();
+            final int mRotor = config.nextInt();
             if (rSlots < 0 || mRotor < 0) {
                 throw new EnigmaException("Invalid number of elements.");
             }
             if (mRotor >= rSlots) {
                 throw new EnigmaException("Pawls must be less.");
             }
-            helperNext = _config.next();
-            while (_config.hasNext()) {
-                rotorsArray.add(readRotor());
-            }
+            RotorCatalog catalog =
+                RotorCatalog.read(config, config.next(), _alphabet);
             Machine myEnigma = new Machine(_alphabet,
-                    rSlots, mRotor, rotorsArray);
+                    rSlots, mRotor, catalog);
+            if (event != null) {
+                event.bytes = _config.length;
+                event.commit();
+            }
             return myEnigma;
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            String rotorName = helperNext;
-            if (helperNext.contains("(") || helperNext.contains(")")) {
-                throw new EnigmaException("Not a valid rotor name.");
-            }
-            helperNext = _config.next();
-            char rotorType = helperNext.charAt(0);
-            String rotorNotches = helperNext.substring(1);
-            if (rotorType == 'M' && rotorNotches.isEmpty()) {
-                throw new EnigmaException("No notches detected.");
-            }
-            String myPerm = "";
-            helperNext = _config.next();
-            while (helperNext.contains("(") && _config.hasNext()) {
-                myPerm = myPerm + helperNext + " ";
-                helperNext = _config.next();
-            }
-            if (!_config.hasNext()) {
-                myPerm = myPerm + helperNext;
-            }
-            Permutation perm = new Permutation(myPerm, _alphabet);
-
-            if (rotorType == 'R') {
-                return new Reflector(rotorName, perm);
-            } else if (rotorType == 'N') {
-                return new FixedRotor(rotorName, perm);
-            } else if (rotorType == 'M') {
-                return new MovingRotor(rotorName, perm, rotorNotches);
-            } else {
-                throw new EnigmaException("No such rotor type exists.");
-            }
-
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
-        }
-    }
-
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
+     *  which must have the format specified in the assignment, except
+     *  that the rotor settings may be followed by ring settings, in the
+     *  same form. */
     private void setUp(Machine M, String settings) {
+        EnigmaEvents.SetUp event = events() ? EnigmaEvents.setUp() : null;
         int x;
         int n;
         int b;
-        String[] arrangeSet = settings.split(" ");
+        String[] arrangeSet = splitAtBlanks(settings);
         String createPerm = "";
         String[] myRotorArray = new String[M.numRotors()];
         if (arrangeSet.length - 1 < M.numRotors()) {
@@ -204,7 +1186,14 @@ public final class Main {
                 }
             }
         }
-        for (b = 7; b < arrangeSet.length; b += 1) {
+        int ringAt = M.numRotors() + 2;
+        String rings = null;
+        if (ringAt < arrangeSet.length && !arrangeSet[ringAt].isEmpty()
+            && !arrangeSet[ringAt].startsWith("(")) {
+            rings = arrangeSet[ringAt];
+        }
+        for (b = rings == null ? ringAt : ringAt + 1;
+             b < arrangeSet.length; b += 1) {
             createPerm = createPerm.concat(arrangeSet[b] + " ");
         }
         M.insertRotors(myRotorArray);
@@ -212,37 +1201,103 @@ public final class Main {
             throw new EnigmaException("Wrong first rotor.");
         }
         M.setRotors(arrangeSet[M.numRotors() + 1]);
+        if (rings != null) {
+            M.setRings(rings);
+        }
         M.setPlugboard(new Permutation(createPerm, _alphabet));
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit() && sampler(false).next()) {
+                event.rotors = String.join(" ", myRotorArray);
+                event.cycles = createPerm.length()
+                    - createPerm.replace("(", "").length();
+                event.commit();
+            }
+        }
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        while (msg.length() != 0) {
-            if (msg.length() > 5) {
-                _output.append(msg.substring(0, 5) + " ");
-                msg = msg.substring(5);
-            } else {
-                _output.append(msg + "\n");
-                break;
-            }
+    /** Return the pieces of S separated by single blanks, as
+     *  S.split(" ") returns them: empty pieces are kept, except at the
+     *  end. */
+    static String[] splitAtBlanks(String s) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = 0;
+        for (int k = s.indexOf(' '); k >= 0; k = s.indexOf(' ', start)) {
+            result.add(s.substring(start, k));
+            start = k + 1;
         }
+        if (start == 0) {
+            return new String[] { s };
+        }
+        result.add(s.substring(start));
+        int size = result.size();
+        while (size > 0 && result.get(size - 1).isEmpty()) {
+            size -= 1;
+        }
+        return result.subList(0, size).toArray(new String[size]);
     }
 
-    /** Helper String for readconfig. */
-    private String helperNext;
+    /** Append MSG to OUT in groups of five (except that the last group
+     *  may have fewer letters), ending the line unless MSG is empty. */
+    static void formatMessageLine(StringBuilder out, CharSequence msg) {
+        int k;
+        for (k = 0; msg.length() - k > 5; k += 5) {
+            out.append(msg, k, k + 5).append(' ');
+        }
+        if (k < msg.length()) {
+            out.append(msg, k, msg.length()).append('\n');
+        }
+    }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineInput _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** The file _input reads, or null for the standard input. */
+    private File _inputFile;
+
+    /** Contents of the machine configuration file. */
+    private byte[] _config;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
+    /** Command-line options, by name. */
+    private HashMap<String, String> _options;
+
+    /** File to which compiled tables are exported, or null. */
+    private File _tableExport;
+
+    /** Channel of the output file, or null for the standard output. */
+    private FileChannel _outputChannel;
+
+    /** Sliding-window statistics of the message lines, or null. */
+    private WindowStats _windows;
+
+    /** Number of lines read from _input. */
+    private long _lines;
+
+    /** File holding checkpoints, or null if there are none. */
+    private File _checkpointFile;
+
+    /** Number of message lines between checkpoints. */
+    private int _checkpointEvery;
+
+    /** Number of message lines since the last checkpoint. */
+    private int _sinceCheckpoint;
+
+    /** Number of characters converted. */
+    private long _converted;
+
+    /** True iff Flight Recorder events may be recorded, or null until
+     *  first asked. */
+    private volatile Boolean _events;
+
+    /** Choose the set-up and settings block events recorded, or null
+     *  until needed. */
+    private EnigmaEvents.Sampler[] _samplers;
+
 }
 
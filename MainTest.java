@@ -0,0 +1,377 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the modes of the Main class.
+ *  @author Nazli Urenli
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A four-slot machine as a configuration file. */
+    private static final byte[] CONFIG4 = String.join("\n",
+        UPPER_STRING, "4 3",
+        "I MQ " + NAVALA.get("I"), "II ME " + NAVALA.get("II"),
+        "III MV " + NAVALA.get("III"), "B R " + NAVALA.get("B"),
+        "").getBytes(StandardCharsets.UTF_8);
+
+    /** Rotors of the daily key. */
+    private static final String[] ROTORS = { "B", "Beta", "III", "IV", "I" };
+
+    /** Ring settings and plugboard of the daily key. */
+    private static final String RINGS = "AXLE", PLUGBOARD = "(AQ) (EP)";
+
+    /** Return the output of Main converting INPUT with OPTIONS. */
+    private String run(String input, HashMap<String, String> options)
+        throws IOException {
+        return runMain(NAVAL_CONFIG, input, options, false);
+    }
+
+    /** Return the output of Main converting INPUT with OPTIONS, followed,
+     *  if it fails, by "error: " and the message of its exception. */
+    private String outcome(String input, HashMap<String, String> options)
+        throws IOException {
+        return runMain(NAVAL_CONFIG, input, options, true);
+    }
+
+    /** Run Main with the command-line arguments ARGS, closing its files
+     *  afterwards. */
+    private void main(String... args) {
+        Main main = new Main(args);
+        try {
+            main.process();
+        } finally {
+            main.close();
+        }
+    }
+
+    /** Return the contents of FILE. */
+    private String contents(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()),
+                          StandardCharsets.UTF_8);
+    }
+
+    /** Write TEXT to FILE. */
+    private void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Check that a run with checkpoints every two lines that stops after
+     *  the first CUT characters of INPUT, and is then resumed on all of
+     *  it, writes what an uninterrupted run would.  The files used are
+     *  FILES: the configuration, the input, the output, the checkpoint,
+     *  and the stopped run's input. */
+    private void checkResume(String input, int cut, File[] files)
+        throws IOException {
+        files[3].delete();
+        write(files[1], input);
+        write(files[4], input.substring(0, cut));
+        String checkpoint = "--checkpoint=" + files[3].getPath();
+        main(checkpoint, "--checkpoint-every=2", files[0].getPath(),
+             files[4].getPath(), files[2].getPath());
+        assertTrue(files[3].exists());
+        main(checkpoint, "--resume", files[0].getPath(),
+             files[1].getPath(), files[2].getPath());
+        assertEquals(msg("testResume", "cut at %d", cut),
+                     outcome(input, new HashMap<>()), contents(files[2]));
+    }
+
+    /** Return the position in INPUT just after a message line, past its
+     *  middle, that is followed by a settings line if BETWEEN, and
+     *  otherwise by another message line. */
+    private int cut(String input, boolean between) {
+        int end = input.indexOf('\n', input.length() / 2) + 1;
+        while (true) {
+            int start = input.lastIndexOf('\n', end - 2) + 1;
+            if (input.charAt(start) != '*'
+                && (input.charAt(end) == '*') == between) {
+                return end;
+            }
+            end = input.indexOf('\n', end) + 1;
+        }
+    }
+
+    /** Return an input of BLOCKS settings blocks under the daily key, with
+     *  random message lines from RANDOM. */
+    private String input(Random random, int blocks) {
+        StringBuilder result = new StringBuilder();
+        for (int b = 0; b < blocks; b += 1) {
+            result.append("* B Beta III IV I ").append(letters(random, 4))
+                .append(' ').append(RINGS).append(' ').append(PLUGBOARD)
+                .append('\n');
+            for (int m = random.nextInt(6); m > 0; m -= 1) {
+                String text = letters(random, random.nextInt(60));
+                result.append(text.replace('Q', ' ')).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return inputs from RANDOM for comparing modes: three good ones,
+     *  followed by ones that fail in a message line, in settings lines,
+     *  and before any settings line. */
+    private String[] inputs(Random random) {
+        String good = input(random, 12);
+        return new String[] {
+            good, input(random, 1), "",
+            good + "* B Beta III IV I AAAA\nHELLO WORLD\nHELL0\n" + good,
+            good + "* B Beta III IV X AAAA\nHELLO\n" + good,
+            good + "* B Beta III\nHELLO\n" + good,
+            "HELLO\n" + good,
+        };
+    }
+
+    /** Check that Main gives the same output and error for each of
+     *  INPUTS with OPTIONS as it does with none. */
+    private void checkLikeSequential(String[] inputs,
+                                     HashMap<String, String> options)
+        throws IOException {
+        for (int k = 0; k < inputs.length; k += 1) {
+            assertEquals(msg(options.toString(), "input %d", k),
+                         outcome(inputs[k], new HashMap<>()),
+                         outcome(inputs[k], options));
+        }
+    }
+
+    /** Return the encryption of TEXT by the daily key at SETTING. */
+    private String encrypt(String setting, String text) {
+        Machine M = Main.readConfig(NAVAL_CONFIG);
+        M.insertRotors(ROTORS);
+        M.setRotors(setting);
+        M.setRings(RINGS);
+        M.setPlugboard(new Permutation(PLUGBOARD, UPPER));
+        return M.convert(text);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testIndicators() throws IOException {
+        Random random = new Random(45);
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (String ground : new String[] { "GRND", "QEVA" }) {
+            input.append("* B Beta III IV I ").append(ground).append(' ')
+                .append(RINGS).append(' ').append(PLUGBOARD).append('\n');
+            for (int m = 0; m < 20; m += 1) {
+                String key = letters(random, 4);
+                String body = letters(random, random.nextInt(40));
+                String cipher = encrypt(key, body);
+                input.append(encrypt(ground, key).toLowerCase()).append(' ')
+                    .append(cipher.substring(0, cipher.length() / 2))
+                    .append(' ').append(cipher.substring(cipher.length() / 2))
+                    .append('\n');
+                StringBuilder line = new StringBuilder(key);
+                if (body.isEmpty()) {
+                    line.append('\n');
+                } else {
+                    line.append(' ');
+                    Main.formatMessageLine(line, body);
+                }
+                expected.append(line);
+            }
+            if (ground.equals("GRND")) {
+                input.append('\n');
+                expected.append('\n');
+            }
+        }
+        HashMap<String, String> options = new HashMap<>();
+        options.put("indicators", "");
+        assertEquals(expected.toString(), run(input.toString(), options));
+    }
+
+    @Test
+    public void testFourSlotPlugboard() throws IOException {
+        for (String rings : new String[] { "", " BCD" }) {
+            Machine M = Main.readConfig(CONFIG4);
+            M.insertRotors(new String[] { "B", "I", "II", "III" });
+            M.setRotors("AXE");
+            if (!rings.isEmpty()) {
+                M.setRings(rings.trim());
+            }
+            M.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+            StringBuilder expected = new StringBuilder();
+            Main.formatMessageLine(expected, M.convert("QUEPAPERS"));
+            assertEquals(expected.toString(),
+                         runMain(CONFIG4, "* B I II III AXE" + rings
+                                 + " (AQ) (EP)\nQUEPAPERS\n",
+                                 new HashMap<>(), false));
+        }
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        String[] inputs = inputs(new Random(31));
+        for (int k = 3; k < inputs.length; k += 1) {
+            assertTrue(msg("testParallel", "input %d", k),
+                       outcome(inputs[k], new HashMap<>())
+                       .contains("error: "));
+        }
+        for (String threads : new String[] { "1", "2", "4" }) {
+            HashMap<String, String> options = new HashMap<>();
+            options.put("parallel", threads);
+            checkLikeSequential(inputs, options);
+        }
+    }
+
+    @Test
+    public void testPipeline() throws IOException {
+        Random random = new Random(32);
+        String[] inputs = inputs(random);
+        String daily = "* B Beta III IV I GRND " + RINGS + " " + PLUGBOARD;
+        String[] longLines = {
+            daily + "\n" + letters(random, 1000) + "\n\n"
+            + letters(random, 300) + "\n",
+            daily + "\n" + letters(random, 700) + "\n"
+            + letters(random, 500) + "HELL0\n" + letters(random, 10) + "\n",
+        };
+        String[] all = Arrays.copyOf(inputs, inputs.length + 2);
+        System.arraycopy(longLines, 0, all, inputs.length, 2);
+        for (String capacity : new String[] { "1", "2", "256" }) {
+            HashMap<String, String> options = new HashMap<>();
+            options.put("pipeline", capacity);
+            checkLikeSequential(all, options);
+        }
+    }
+
+    @Test
+    public void testBatchTables() throws IOException {
+        Random random = new Random(30);
+        ArrayList<File> files = new ArrayList<>();
+        try {
+            File config = File.createTempFile("batch", ".conf");
+            File manifest = File.createTempFile("batch", ".jobs");
+            files.add(config);
+            files.add(manifest);
+            Files.write(config.toPath(), NAVAL_CONFIG);
+            String[] inputs = new String[8];
+            StringBuilder jobs = new StringBuilder();
+            for (int j = 0; j < inputs.length; j += 1) {
+                File in = File.createTempFile("batch", ".in");
+                File out = File.createTempFile("batch", ".out");
+                files.add(in);
+                files.add(out);
+                inputs[j] = input(random, 20);
+                Files.write(in.toPath(),
+                            inputs[j].getBytes(StandardCharsets.UTF_8));
+                jobs.append(config.getPath()).append(' ')
+                    .append(in.getPath()).append(' ')
+                    .append(out.getPath()).append('\n');
+            }
+            Files.write(manifest.toPath(),
+                        jobs.toString().getBytes(StandardCharsets.UTF_8));
+            for (TableStore tables : new TableStore[] {
+                    TableStore.heap(), TableStore.offHeap() }) {
+                new BatchRunner(manifest.getPath(), 4, new HashMap<>(),
+                                tables, null).run();
+                for (int j = 0; j < inputs.length; j += 1) {
+                    File out = files.get(3 + 2 * j);
+                    assertEquals(msg("testBatchTables", "job %d", j),
+                                 outcome(inputs[j], new HashMap<>()),
+                                 new String(Files.readAllBytes(out.toPath()),
+                                            StandardCharsets.UTF_8));
+                }
+            }
+        } finally {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        String input = input(new Random(27), 30);
+        File[] files = new File[5];
+        try {
+            for (int k = 0; k < files.length; k += 1) {
+                files[k] = File.createTempFile("resume", ".txt");
+            }
+            write(files[0], new String(NAVAL_CONFIG, StandardCharsets.UTF_8));
+            checkResume(input, cut(input, true), files);
+            checkResume(input, cut(input, false), files);
+            checkResume(input, input.length(), files);
+
+            files[3].delete();
+            write(files[2], "LEFT OVER\n");
+            main("--checkpoint=" + files[3].getPath(), "--resume",
+                 files[0].getPath(), files[1].getPath(),
+                 files[2].getPath());
+            assertEquals(outcome(input, new HashMap<>()),
+                         contents(files[2]));
+        } finally {
+            for (File file : files) {
+                if (file != null) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testResumeOtherInput() throws IOException {
+        String input = input(new Random(270), 10);
+        File[] files = new File[5];
+        try {
+            for (int k = 0; k < files.length; k += 1) {
+                files[k] = File.createTempFile("resume", ".txt");
+            }
+            write(files[0], new String(NAVAL_CONFIG, StandardCharsets.UTF_8));
+            checkResume(input, input.length() / 2, files);
+            for (int k = 0; k < 2; k += 1) {
+                String checkpoint = "--checkpoint=" + files[3].getPath();
+                if (k == 0) {
+                    write(files[1], "* B Beta I II III AAAA\n" + input);
+                } else {
+                    write(files[1], input);
+                    write(files[0], new String(CONFIG4,
+                                               StandardCharsets.UTF_8));
+                }
+                try {
+                    main(checkpoint, "--resume", files[0].getPath(),
+                         files[1].getPath(), files[2].getPath());
+                    fail("resumed from another input or configuration");
+                } catch (EnigmaException excp) {
+                    assertTrue(excp.getMessage().contains("another input"));
+                }
+            }
+        } finally {
+            for (File file : files) {
+                if (file != null) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testShortIndicator() throws IOException {
+        HashMap<String, String> options = new HashMap<>();
+        options.put("indicators", "");
+        run("* B Beta III IV I AAAA\nABC\n", options);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testIndicatorsAlone() {
+        new Main(new String[] { "--indicators", "--parallel", "none" });
+    }
+}
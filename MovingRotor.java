@@ -14,15 +14,30 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        boolean[] notchAt = new boolean[size()];
+        for (int x = 0; x < notches.length(); x = x + 1) {
+            char c = notches.charAt(x);
+            if (!alphabet().contains(c)) {
+                notchAt = null;
+                break;
+            }
+            notchAt[alphabet().toInt(c)] = true;
+        }
+        _notchAt = notchAt;
     }
     /** A moving rotates. */
     @Override
     boolean rotates() {
         return true;
     }
-    /** If the setting is equal to the notch the rotor should rotate. */
+    /** If the setting is equal to the notch the rotor should rotate.
+     *  Notches are on the alphabet ring, so they are at the same settings
+     *  whatever the ring setting. */
     @Override
     boolean atNotch() {
+        if (_notchAt != null) {
+            return _notchAt[setting()];
+        }
         for (int x = 0; x < _notches.length(); x = x + 1) {
             if (alphabet().toInt(_notches.charAt(x)) == this.setting()) {
                 return true;
@@ -30,6 +45,16 @@ class MovingRotor extends Rotor {
         }
         return false;
     }
+    /** Return my notches. */
+    @Override
+    String notches() {
+        return _notches;
+    }
+    /** A moving rotor copies its notches too. */
+    @Override
+    Rotor copy() {
+        return copyInto(new MovingRotor(name(), permutation(), _notches));
+    }
     /** Enable rotors to advance by changing their setting. */
     @Override
     void advance() {
@@ -39,4 +64,8 @@ class MovingRotor extends Rotor {
     /** The notches for my rotors. */
     private String _notches;
 
+    /** Entry s is true iff I have a notch at setting s, or null if some
+     *  notch is not in my alphabet. */
+    private final boolean[] _notchAt;
+
 }
@@ -71,5 +71,33 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkRotorRing() {
+        setRotor("I", NAVALA, "Q");
+        rotor.set(1);
+        rotor.setRing(2);
+        checkRotor("Rotor I at B, ring C", UPPER_STRING,
+                   NAVALZ_MAP.get("I"));
+        rotor.set(16);
+        assertTrue("notch moved with ring", rotor.atNotch());
+        rotor.compile(TableStore.heap());
+        rotor.set(1);
+        checkRotor("Rotor I compiled at B, ring C", UPPER_STRING,
+                   NAVALZ_MAP.get("I"));
+    }
+
+    @Test
+    public void checkMachineRings() {
+        String[] rotors = { "B", "Beta", "I", "II", "III" };
+        Machine M = navalMachine(rotors, "AAAA", "");
+        assertEquals("BDZGO", M.convert("AAAAA"));
+        M.setRotors("AAAA");
+        M.setRings("ABBB");
+        assertEquals("EWTYX", M.convert("AAAAA"));
+        M.insertRotors(rotors);
+        M.setRotors("AAAA");
+        assertEquals("BDZGO", M.convert("AAAAA"));
+    }
+
 }
 
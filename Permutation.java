@@ -1,5 +1,7 @@
 package enigma;
 
+import java.nio.IntBuffer;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -25,6 +27,7 @@ class Permutation {
             throw new EnigmaException("empty cycle is not allowed");
         } else {
             _cycles = _cycles + " " + cycle;
+            _table = null;
         }
     }
 
@@ -45,6 +48,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      * alphabet size. */
     int permute(int p) {
+        Table table = _table;
+        if (table != null) {
+            int result = table.entries.get(wrap(p));
+            if (result >= 0) {
+                return result;
+            }
+        }
         char fix = _alphabet.toChar(wrap(p));
         char fixed = permute(fix);
         int result = _alphabet.toInt(fixed);
@@ -54,6 +64,13 @@ class Permutation {
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
+        Table table = _table;
+        if (table != null) {
+            int result = table.entries.get(size() + wrap(c));
+            if (result >= 0) {
+                return result;
+            }
+        }
         char fix = _alphabet.toChar(wrap(c));
         char fixed = invert(fix);
         int result = _alphabet.toInt(fixed);
@@ -107,6 +124,45 @@ class Permutation {
         return _cycles.charAt(n - 1);
     }
 
+    /** Compile my mapping into a table from STORE, after which permute(int)
+     *  and invert(int) are single lookups.  Its first size() entries are my
+     *  mapping and the next size() my inverse; entries whose characters are
+     *  not in my alphabet hold -1, so that using them still reports the
+     *  error that the uncompiled permutation would. */
+    void compile(TableStore store) {
+        if (_table != null) {
+            return;
+        }
+        final int n = size();
+        _table = new Table(store.table(key(), 2 * n, (k) -> {
+            try {
+                if (k < n) {
+                    return _alphabet.toInt(permute(_alphabet.toChar(k)));
+                } else {
+                    return _alphabet.toInt(invert(_alphabet.toChar(k - n)));
+                }
+            } catch (EnigmaException excp) {
+                return -1;
+            }
+        }));
+    }
+
+    /** Return true iff I have been compiled. */
+    boolean compiled() {
+        return _table != null;
+    }
+
+    /** Return a key identifying my alphabet and cycles, for use in a
+     *  TableStore. */
+    String key() {
+        return _alphabet.size() + ":" + _alphabet.chars() + _cycles;
+    }
+
+    /** Return my cycles, as given to my constructor. */
+    String cycles() {
+        return _cycles;
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
@@ -138,4 +194,24 @@ class Permutation {
 
     /** Cycles corresponding to this permutation. */
     private String _cycles;
+
+    /** A compiled table.  Its entries are held in a final field, so any
+     *  thread that sees a Table sees them complete. */
+    private static final class Table {
+        /** A table holding ENTRIES. */
+        Table(IntBuffer entries) {
+            this.entries = entries;
+        }
+
+        /** My mapping, followed by my inverse. */
+        final IntBuffer entries;
+    }
+
+    /** My compiled mapping and inverse, or null if not compiled.  The
+     *  copies of a rotor share me, and may compile me on different
+     *  threads at once.  This field is therefore not volatile, being
+     *  read for every character, but refers to a Table, which publishes
+     *  its entries safely.  A thread that sees null converts without the
+     *  table, and that gives the same results. */
+    private Table _table;
 }
@@ -20,6 +20,11 @@ class Reflector extends FixedRotor {
     boolean reflecting() {
         return true;
     }
+    /** A copy of a reflector reflects. */
+    @Override
+    Rotor copy() {
+        return copyInto(new Reflector(name(), permutation()));
+    }
     /** A reflector connart advance. */
     @Override
     void advance() {
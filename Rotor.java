@@ -1,5 +1,7 @@
 package enigma;
 
+import java.nio.IntBuffer;
+
 import static enigma.EnigmaException.*;
 
 /** Superclass that represents a rotor in the enigma machine.
@@ -52,31 +54,116 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         _setting = _permutation.wrap(posn);
+        setOffset();
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
         _setting = _permutation.alphabet().toInt(cposn);
+        setOffset();
+    }
+
+    /** Return my ring setting: how far my wiring is turned back from my
+     *  alphabet ring, which carries my notches. */
+    int ring() {
+        return _ring;
+    }
+
+    /** Set ring() to POSN. */
+    void setRing(int posn) {
+        _ring = _permutation.wrap(posn);
+        setOffset();
+    }
+
+    /** Bring _offset and _row up to date with my setting and ring. */
+    private void setOffset() {
+        _offset = _permutation.wrap(_setting - _ring);
+        _row = _offset * size();
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int signalIn = _permutation.wrap(p + _setting);
+        if (_table != null) {
+            int result = _table.get(_row + p);
+            if (result >= 0) {
+                return result;
+            }
+        }
+        int signalIn = _permutation.wrap(p + _offset);
         int signalOut = _permutation.permute(signalIn);
-        int displayed = _permutation.wrap(signalOut - _setting);
+        int displayed = _permutation.wrap(signalOut - _offset);
         return displayed;
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int signalIn = _permutation.wrap(e + _setting);
+        if (_table != null) {
+            int result = _table.get(_backward + _row + e);
+            if (result >= 0) {
+                return result;
+            }
+        }
+        int signalIn = _permutation.wrap(e + _offset);
         int signalOut = _permutation.invert(signalIn);
-        int displayed = _permutation.wrap(signalOut - _setting);
+        int displayed = _permutation.wrap(signalOut - _offset);
         return displayed;
     }
 
+    /** Compile my conversions at every setting into a table from STORE,
+     *  so that convertForward and convertBackward become single lookups.
+     *  Entry s * size() + p is the forward conversion of P at offset S
+     *  (setting less ring setting); the backward conversions follow, in
+     *  the same layout.  The table does not depend on the ring setting,
+     *  which only chooses its row. */
+    void compile(TableStore store) {
+        if (_table != null) {
+            return;
+        }
+        _permutation.compile(store);
+        final int n = size();
+        _backward = n * n;
+        _table = store.table("R" + _permutation.key(), 2 * n * n, (k) -> {
+            int s = (k / n) % n, p = k % n;
+            try {
+                int signalOut;
+                if (k < n * n) {
+                    signalOut = _permutation.permute(
+                        _permutation.wrap(p + s));
+                } else {
+                    signalOut = _permutation.invert(
+                        _permutation.wrap(p + s));
+                }
+                return _permutation.wrap(signalOut - s);
+            } catch (EnigmaException excp) {
+                return -1;
+            }
+        });
+    }
+
+    /** Return a new rotor like me, at my setting, sharing my permutation
+     *  and compiled tables. */
+    Rotor copy() {
+        return copyInto(new Rotor(_name, _permutation));
+    }
+
+    /** Give ROTOR my setting and compiled tables, and return it. */
+    final Rotor copyInto(Rotor rotor) {
+        rotor._setting = _setting;
+        rotor._ring = _ring;
+        rotor._offset = _offset;
+        rotor._row = _row;
+        rotor._backward = _backward;
+        rotor._table = _table;
+        return rotor;
+    }
+
+    /** Return the characters at which I am at a notch. */
+    String notches() {
+        return "";
+    }
+
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
@@ -101,4 +188,21 @@ class Rotor {
     /** My setting with length 26. */
     private int _setting;
 
+    /** My ring setting. */
+    private int _ring;
+
+    /** My setting less my ring setting, and its first entry in _table. */
+    private int _offset, _row;
+
+    /** Index in _table of the backward conversions. */
+    private int _backward;
+
+    /** My conversions at every setting, or null if not compiled.  Not
+     *  volatile, being read for every character.  Each rotor is used by
+     *  one thread at a time, so only that thread sets this field.  That
+     *  happens when the rotor is compiled or copied from a rotor that
+     *  another thread handed over.  My Permutation is shared between my
+     *  copies, so it publishes its own table safely. */
+    private IntBuffer _table;
+
 }
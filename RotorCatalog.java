@@ -0,0 +1,203 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to a machine, by name.  A catalog read from a
+ *  configuration file only indexes each rotor description, recording the
+ *  byte offsets of its cycles, and builds the Rotor the first time it is
+ *  asked for.  Every description is still checked as it is indexed, and
+ *  reflectors (whose construction checks that they are derangements) are
+ *  built at once, so a bad configuration is reported before any message
+ *  is converted.  Names are matched ignoring case; of two rotors with the
+ *  same name, the later one is used.
+ *  @author Nazli Urenli
+ */
+final class RotorCatalog {
+
+    /** One rotor description. */
+    private static final class Entry {
+        /** The description of a rotor named NAME of TYPE with NOTCHES,
+         *  whose cycles are the tokens between byte offsets START and END
+         *  of BYTES, followed by a blank if TRAILING. */
+        Entry(String name, char type, String notches, byte[] bytes,
+              int start, int end, boolean trailing) {
+            this.name = name;
+            this.type = type;
+            this.notches = notches;
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+            this.trailing = trailing;
+        }
+
+        /** The entry for the already-built ROTOR. */
+        Entry(Rotor rotor) {
+            this(rotor.name(), ' ', "", null, 0, 0, false);
+            this.rotor = rotor;
+        }
+
+        /** Return my cycles, exactly as the original reader built them. */
+        String cycles() {
+            String result = ConfigTokens.join(bytes, start, end);
+            return trailing && !result.isEmpty() ? result + " " : result;
+        }
+
+        /** My name, type, and notches. */
+        final String name, notches;
+        /** My type. */
+        final char type;
+        /** The configuration holding my cycles. */
+        final byte[] bytes;
+        /** Byte offsets of my cycles. */
+        final int start, end;
+        /** True iff my cycles are followed by a blank. */
+        final boolean trailing;
+        /** My rotor, once built. */
+        volatile Rotor rotor;
+    }
+
+    /** An empty catalog over ALPHA. */
+    private RotorCatalog(Alphabet alpha) {
+        _alphabet = alpha;
+        _entries = new LinkedHashMap<>();
+    }
+
+    /** Return a catalog holding the rotors in ROTORS. */
+    static RotorCatalog of(Alphabet alpha, Collection<Rotor> rotors) {
+        RotorCatalog result = new RotorCatalog(alpha);
+        for (Rotor rotor : rotors) {
+            result.add(new Entry(rotor));
+        }
+        return result;
+    }
+
+    /** Return a catalog of the rotor descriptions remaining in CONFIG,
+     *  over ALPHA.  FIRST is the name of the first rotor, already read
+     *  from CONFIG. */
+    static RotorCatalog read(ConfigTokens config, String first,
+                             Alphabet alpha) {
+        RotorCatalog result = new RotorCatalog(alpha);
+        String name = first;
+        while (config.hasNext()) {
+            name = result.readEntry(config, name);
+        }
+        return result;
+    }
+
+    /** Index the rotor named NAME whose description follows in CONFIG,
+     *  returning the token after it (the next rotor's name). */
+    private String readEntry(ConfigTokens config, String name) {
+        try {
+            if (name.contains("(") || name.contains(")")) {
+                throw new EnigmaException("Not a valid rotor name.");
+            }
+            String typeToken = config.next();
+            char type = typeToken.charAt(0);
+            String notches = typeToken.substring(1);
+            if (type == 'M' && notches.isEmpty()) {
+                throw new EnigmaException("No notches detected.");
+            }
+            config.advance();
+            int start = config.start(), end = start;
+            while (config.lastContains('(') && config.hasNext()) {
+                end = config.end();
+                config.advance();
+            }
+            boolean trailing = config.hasNext();
+            if (!trailing) {
+                end = config.end();
+            }
+            String next = trailing ? ConfigTokens.join(config.bytes(),
+                config.start(), config.end()) : null;
+            if (type != 'R' && type != 'N' && type != 'M') {
+                throw new EnigmaException("No such rotor type exists.");
+            }
+            Entry entry = new Entry(name, type, notches, config.bytes(),
+                                    start, end, trailing);
+            if (type == 'R') {
+                build(entry);
+            }
+            add(entry);
+            return next;
+        } catch (NoSuchElementException excp) {
+            throw error("bad rotor description");
+        }
+    }
+
+    /** Return the rotor named NAME (ignoring case), building it if this
+     *  is the first request for it, or null if there is none.  The rotor
+     *  returned is shared; machines should use copies of it. */
+    Rotor rotor(String name) {
+        Entry entry = _entries.get(name.toLowerCase());
+        if (entry == null) {
+            return null;
+        }
+        return build(entry);
+    }
+
+    /** Return the names of my rotors, in the order first described. */
+    ArrayList<String> names() {
+        ArrayList<String> result = new ArrayList<>();
+        for (Entry entry : _entries.values()) {
+            result.add(entry.name);
+        }
+        return result;
+    }
+
+    /** Return the number of rotors I describe. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the number of my rotors built so far. */
+    int built() {
+        int result = 0;
+        for (Entry entry : _entries.values()) {
+            if (entry.rotor != null) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Record ENTRY under its name. */
+    private void add(Entry entry) {
+        _entries.put(entry.name.toLowerCase(), entry);
+    }
+
+    /** Return the rotor described by ENTRY, building it if need be. */
+    private Rotor build(Entry entry) {
+        Rotor result = entry.rotor;
+        if (result == null) {
+            synchronized (entry) {
+                result = entry.rotor;
+                if (result == null) {
+                    Permutation perm =
+                        new Permutation(entry.cycles(), _alphabet);
+                    if (entry.type == 'R') {
+                        result = new Reflector(entry.name, perm);
+                    } else if (entry.type == 'N') {
+                        result = new FixedRotor(entry.name, perm);
+                    } else {
+                        result = new MovingRotor(entry.name, perm,
+                                                 entry.notches);
+                    }
+                    entry.rotor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** My rotor descriptions, by lower-case name, in the order first
+     *  described. */
+    private final LinkedHashMap<String, Entry> _entries;
+}
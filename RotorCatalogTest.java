@@ -0,0 +1,128 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorCatalog class.
+ *  @author Nazli Urenli
+ */
+public class RotorCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The rotor types and notches of the naval rotors. */
+    private static final String[][] TYPES = {
+        { "I", "MQ" }, { "II", "ME" }, { "III", "MV" }, { "IV", "MJ" },
+        { "V", "MZ" }, { "VI", "MZM" }, { "VII", "MZM" }, { "VIII", "MZM" },
+        { "Beta", "N" }, { "Gamma", "N" }, { "B", "R" }, { "C", "R" },
+    };
+
+    /** Return the naval configuration, with the rotor description EXTRA
+     *  added at the end. */
+    private byte[] config(String extra) {
+        StringBuilder result = new StringBuilder(UPPER_STRING + "\n5 3\n");
+        for (String[] type : TYPES) {
+            result.append(type[0]).append(' ').append(type[1]).append(' ')
+                .append(NAVALA.get(type[0])).append('\n');
+        }
+        result.append(extra).append('\n');
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBuildsOnlyInserted() {
+        Machine M = Main.readConfig(config(""));
+        RotorCatalog catalog = M.catalog();
+        assertEquals(TYPES.length, catalog.size());
+        assertEquals("reflectors only", 2, catalog.built());
+        M.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        assertEquals(6, catalog.built());
+        M.setRotors("AXLE");
+        M.setPlugboard(new Permutation("", UPPER));
+        assertEquals(navalMachine(new String[] {
+                    "B", "Beta", "III", "IV", "I" }, "AXLE", "")
+            .convert("HELLOWORLD"), M.convert("HELLOWORLD"));
+        M.insertRotors(new String[] { "b", "beta", "i", "iv", "iii" });
+        assertEquals(6, catalog.built());
+        assertNull(catalog.rotor("IX"));
+        assertEquals(6, catalog.built());
+    }
+
+    @Test
+    public void testUnicodeWhitespace() {
+        String config = new String(config(""), StandardCharsets.UTF_8)
+            .replace(" ", "\u2003").replace("\n", "\u3000\n\u2009");
+        Machine M = Main.readConfig(config.getBytes(StandardCharsets.UTF_8));
+        assertEquals(TYPES.length, M.catalog().size());
+        M.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        M.setRotors("AXLE");
+        M.setPlugboard(new Permutation("", UPPER));
+        assertEquals(navalMachine(new String[] {
+                    "B", "Beta", "III", "IV", "I" }, "AXLE", "")
+            .convert("HELLOWORLD"), M.convert("HELLOWORLD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadReflector() {
+        Main.readConfig(config("D R (AE) (BN) (C)"));
+    }
+
+    @Test
+    public void testConcurrentFirstUse() throws Exception {
+        RotorCatalog catalog = Main.readConfig(config("")).catalog();
+        int threads = 8;
+        CyclicBarrier start = new CyclicBarrier(threads);
+        Rotor[][] found = new Rotor[threads][TYPES.length];
+        Throwable[] failures = new Throwable[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t += 1) {
+            int me = t;
+            workers[t] = new Thread(() -> {
+                ArrayList<Integer> order = new ArrayList<>();
+                for (int k = 0; k < TYPES.length; k += 1) {
+                    order.add(k);
+                }
+                Collections.shuffle(order, new Random(me));
+                try {
+                    start.await();
+                    for (int k : order) {
+                        found[me][k] = catalog.rotor(TYPES[k][0]);
+                    }
+                } catch (Throwable excp) {
+                    failures[me] = excp;
+                }
+            });
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; t += 1) {
+            workers[t].join();
+            assertNull(msg("testConcurrentFirstUse", "thread %d", t),
+                       failures[t]);
+        }
+        assertEquals(TYPES.length, catalog.built());
+        for (int k = 0; k < TYPES.length; k += 1) {
+            assertNotNull(found[0][k]);
+            assertEquals(TYPES[k][0], found[0][k].name());
+            for (int t = 1; t < threads; t += 1) {
+                assertSame(msg("testConcurrentFirstUse", "%s in thread %d",
+                               TYPES[k][0], t), found[0][k], found[t][k]);
+            }
+        }
+    }
+}
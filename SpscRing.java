@@ -0,0 +1,186 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/** A bounded, lock-free ring buffer between exactly one producer thread
+ *  and one consumer thread.  Its slots are allocated once and recycled:
+ *  the producer claims the next free slot, fills it in place, and
+ *  publishes it; the consumer takes the oldest published slot, reads it,
+ *  and releases it.  A thread that must wait spins briefly, then yields,
+ *  then parks for short intervals.
+ *  @author Nazli Urenli
+ */
+final class SpscRing<T> {
+
+    /** Number of spins before a waiting thread starts to yield. */
+    private static final int SPINS = 100;
+
+    /** Number of yields before a waiting thread starts to park. */
+    private static final int YIELDS = 10;
+
+    /** Nanoseconds a waiting thread parks at a time. */
+    private static final long PARK_NANOS = 20_000;
+
+    /** A ring of CAPACITY slots, rounded up to a power of two, each made
+     *  by FACTORY. */
+    @SuppressWarnings("unchecked")
+    SpscRing(int capacity, Supplier<T> factory) {
+        int size = capacity <= 1 ? 1
+            : Integer.highestOneBit(capacity - 1) << 1;
+        _slots = (T[]) new Object[size];
+        for (int k = 0; k < size; k += 1) {
+            _slots[k] = factory.get();
+        }
+        _mask = size - 1;
+        _head = new AtomicLong();
+        _tail = new AtomicLong();
+    }
+
+    /** Return my number of slots. */
+    int capacity() {
+        return _slots.length;
+    }
+
+    /** Return the next free slot, waiting for one if necessary, for the
+     *  producer to fill.  Returns null if the consumer has aborted. */
+    T claim() {
+        long tail = _tail.get();
+        if (tail - _cachedHead >= _slots.length) {
+            long start = System.nanoTime();
+            int tries = 0;
+            while (tail - (_cachedHead = _head.get()) >= _slots.length) {
+                if (_aborted) {
+                    return null;
+                }
+                tries = backOff(tries);
+            }
+            _producerWait += System.nanoTime() - start;
+        }
+        return _aborted ? null : _slots[(int) tail & _mask];
+    }
+
+    /** Make the slot last claimed available to the consumer. */
+    void publish() {
+        long tail = _tail.get() + 1;
+        _tail.lazySet(tail);
+        long occupancy = tail - _head.get();
+        _published += 1;
+        _occupancySum += occupancy;
+        if (occupancy > _maxOccupancy) {
+            _maxOccupancy = occupancy;
+        }
+    }
+
+    /** Tell the consumer that nothing more will be published. */
+    void close() {
+        _closed = true;
+    }
+
+    /** Return the oldest published slot, waiting for one if necessary,
+     *  or null if I am empty and closed or aborted. */
+    T take() {
+        if (_aborted) {
+            return null;
+        }
+        long head = _head.get();
+        if (head >= _cachedTail) {
+            long start = System.nanoTime();
+            int tries = 0;
+            while (head >= (_cachedTail = _tail.get())) {
+                if (_aborted) {
+                    return null;
+                }
+                if (_closed) {
+                    _cachedTail = _tail.get();
+                    if (head >= _cachedTail) {
+                        return null;
+                    }
+                    break;
+                }
+                tries = backOff(tries);
+            }
+            _consumerWait += System.nanoTime() - start;
+        }
+        return _slots[(int) head & _mask];
+    }
+
+    /** Return the slot last taken to the producer. */
+    void release() {
+        _head.lazySet(_head.get() + 1);
+    }
+
+    /** Stop both ends: claim and take return null from now on. */
+    void abort() {
+        _aborted = true;
+    }
+
+    /** Return the number of slots published. */
+    long published() {
+        return _published;
+    }
+
+    /** Return the mean number of occupied slots seen on publishing. */
+    double meanOccupancy() {
+        return _published == 0 ? 0 : (double) _occupancySum / _published;
+    }
+
+    /** Return the largest number of occupied slots seen on publishing. */
+    long maxOccupancy() {
+        return _maxOccupancy;
+    }
+
+    /** Return the nanoseconds the producer has spent waiting. */
+    long producerWait() {
+        return _producerWait;
+    }
+
+    /** Return the nanoseconds the consumer has spent waiting. */
+    long consumerWait() {
+        return _consumerWait;
+    }
+
+    /** Wait a little, more the larger TRIES is, and return TRIES + 1. */
+    private static int backOff(int tries) {
+        if (tries < SPINS) {
+            Thread.onSpinWait();
+        } else if (tries < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return tries + 1;
+    }
+
+    /** The slots. */
+    private final T[] _slots;
+
+    /** Index mask: slot #k is _slots[k & _mask]. */
+    private final int _mask;
+
+    /** Number of slots released by the consumer. */
+    private final AtomicLong _head;
+
+    /** Number of slots published by the producer. */
+    private final AtomicLong _tail;
+
+    /** The producer's last view of _head. */
+    private long _cachedHead;
+
+    /** The consumer's last view of _tail. */
+    private long _cachedTail;
+
+    /** True once the producer is finished. */
+    private volatile boolean _closed;
+
+    /** True once either end has given up. */
+    private volatile boolean _aborted;
+
+    /** Producer statistics: slots published, sum and maximum of the
+     *  occupancies seen, and time spent waiting. */
+    private long _published, _occupancySum, _maxOccupancy, _producerWait;
+
+    /** Consumer time spent waiting. */
+    private long _consumerWait;
+}
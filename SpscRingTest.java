@@ -0,0 +1,60 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the SpscRing class.
+ *  @author Nazli Urenli
+ */
+public class SpscRingTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testCapacity() {
+        assertEquals(1, new SpscRing<>(1, Object::new).capacity());
+        assertEquals(8, new SpscRing<>(5, Object::new).capacity());
+        assertEquals(8, new SpscRing<>(8, Object::new).capacity());
+    }
+
+    @Test
+    public void testInOrder() throws InterruptedException {
+        final int n = 200000;
+        SpscRing<long[]> ring = new SpscRing<>(16, () -> new long[1]);
+        Thread producer = new Thread(() -> {
+            for (int k = 0; k < n; k += 1) {
+                ring.claim()[0] = k;
+                ring.publish();
+            }
+            ring.close();
+        });
+        producer.start();
+        long expected = 0;
+        long[] slot;
+        while ((slot = ring.take()) != null) {
+            assertEquals(expected, slot[0]);
+            expected += 1;
+            ring.release();
+        }
+        producer.join();
+        assertEquals(n, expected);
+        assertEquals(n, ring.published());
+        assertTrue(ring.maxOccupancy() <= 16);
+    }
+
+    @Test
+    public void testAbort() {
+        SpscRing<long[]> ring = new SpscRing<>(2, () -> new long[1]);
+        ring.claim();
+        ring.publish();
+        ring.claim();
+        ring.publish();
+        ring.abort();
+        assertNull(ring.claim());
+        assertNull(ring.take());
+    }
+}
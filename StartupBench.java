@@ -0,0 +1,246 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static enigma.EnigmaException.*;
+
+/** Measures how long Main takes to start: the time from launching a new
+ *  process that converts a small input to the first byte of its output,
+ *  and to its exit.  Each launch style is timed over several runs:
+ *    default   a plain JVM;
+ *    appcds    a JVM using an application class-data-sharing archive of
+ *              the classes Main loads, made by a training run on the same
+ *              input if the archive does not yet exist;
+ *    native    an executable built ahead of time, if one is given.
+ *  Class-data sharing only archives classes loaded from jar files, so the
+ *  directories on the class path are first packed into a jar beside the
+ *  archive, and every JVM style runs from that.  Deleting the archive
+ *  repacks the jar and repeats the training run.
+ *  Main loads its classes without reflection and reads its input without
+ *  regular expressions, so it can be compiled by GraalVM native-image as
+ *  it stands:
+ *      native-image -cp CLASSES --no-fallback -o enigma enigma.Main
+ *  The usage is
+ *      java -cp CLASSES enigma.StartupBench [--runs=N] [--archive=FILE]
+ *           [--native=EXECUTABLE] CONFIG INPUT
+ *  @author Nazli Urenli
+ */
+final class StartupBench {
+
+    /** Default number of timed runs of each launch style. */
+    private static final int RUNS = 10;
+
+    /** A benchmark of Main converting INPUT with CONFIG, RUNS times per
+     *  launch style, using the class-data-sharing archive ARCHIVE and, if
+     *  not null, the executable NATIVE. */
+    StartupBench(String config, String input, int runs, File archive,
+                 String nativeImage) {
+        _config = config;
+        _input = input;
+        _runs = runs;
+        _archive = archive;
+        _native = nativeImage;
+        _java = new File(new File(System.getProperty("java.home"), "bin"),
+                         "java").getPath();
+        _jar = new File(archive.getAbsoluteFile().getParentFile(),
+                        "enigma-classes.jar");
+        StringBuilder classPath = new StringBuilder(_jar.getPath());
+        for (String entry : classPath()) {
+            if (!Files.isDirectory(Paths.get(entry))) {
+                classPath.append(File.pathSeparator).append(entry);
+            }
+        }
+        _classPath = classPath.toString();
+    }
+
+    /** Run the benchmark described in the class comment, with ARGS. */
+    public static void main(String... args) {
+        try {
+            int runs = RUNS;
+            File archive = new File("enigma.jsa");
+            String nativeImage = null;
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                if (args[k].startsWith("--runs=")) {
+                    runs = Integer.parseInt(args[k].substring(7));
+                } else if (args[k].startsWith("--archive=")) {
+                    archive = new File(args[k].substring(10));
+                } else if (args[k].startsWith("--native=")) {
+                    nativeImage = args[k].substring(9);
+                } else {
+                    throw error("unknown option %s", args[k]);
+                }
+            }
+            if (args.length - k != 2 || runs <= 0) {
+                throw error("usage: StartupBench [--runs=N] [--archive=FILE] "
+                            + "[--native=EXECUTABLE] CONFIG INPUT");
+            }
+            new StartupBench(args[k], args[k + 1], runs, archive,
+                             nativeImage).run();
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Time each launch style and print a line of results for each. */
+    void run() {
+        if (!_archive.exists() || !_jar.exists()) {
+            _archive.delete();
+            pack();
+            launch(java("-XX:ArchiveClassesAtExit=" + _archive.getPath()));
+            if (!_archive.exists()) {
+                throw error("training run did not create %s", _archive);
+            }
+        }
+        System.out.printf("%-8s %14s %14s   (ms, median and minimum of %d)%n",
+                          "launch", "first output", "exit", _runs);
+        report("default", java());
+        report("appcds", java("-XX:SharedArchiveFile=" + _archive.getPath(),
+                              "-Xshare:auto"));
+        if (_native != null) {
+            report("native", command(_native));
+        }
+    }
+
+    /** Launch COMMAND _runs times, after one untimed launch, and print
+     *  its times under the name STYLE. */
+    private void report(String style, List<String> command) {
+        launch(command);
+        long[] first = new long[_runs], exit = new long[_runs];
+        for (int k = 0; k < _runs; k += 1) {
+            long[] times = launch(command);
+            first[k] = times[0];
+            exit[k] = times[1];
+        }
+        Arrays.sort(first);
+        Arrays.sort(exit);
+        System.out.printf("%-8s %7.1f %6.1f %7.1f %6.1f%n", style,
+                          first[_runs / 2] / 1e6, first[0] / 1e6,
+                          exit[_runs / 2] / 1e6, exit[0] / 1e6);
+    }
+
+    /** Return the entries of this JVM's class path. */
+    private static String[] classPath() {
+        return System.getProperty("java.class.path")
+            .split(File.pathSeparator);
+    }
+
+    /** Write the classes in the directories on my class path into _jar,
+     *  the first of any duplicates winning. */
+    private void pack() {
+        HashSet<String> written = new HashSet<>();
+        try (JarOutputStream jar =
+                 new JarOutputStream(new FileOutputStream(_jar))) {
+            for (String entry : classPath()) {
+                Path dir = Paths.get(entry);
+                if (!Files.isDirectory(dir)) {
+                    continue;
+                }
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(dir)) {
+                    files = walk.filter(Files::isRegularFile)
+                        .collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    String name = dir.relativize(file).toString()
+                        .replace(File.separatorChar, '/');
+                    if (written.add(name)) {
+                        jar.putNextEntry(new JarEntry(name));
+                        Files.copy(file, jar);
+                        jar.closeEntry();
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", _jar);
+        }
+    }
+
+    /** Run COMMAND to completion, discarding its output.  Return the
+     *  nanoseconds from launch to its first byte of output and to its
+     *  exit. */
+    private long[] launch(List<String> command) {
+        try {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            long first = -1;
+            byte[] buffer = new byte[8192];
+            try (InputStream out = process.getInputStream()) {
+                while (out.read(buffer) >= 0) {
+                    if (first < 0) {
+                        first = System.nanoTime() - start;
+                    }
+                }
+            }
+            int status = process.waitFor();
+            long exit = System.nanoTime() - start;
+            if (status != 0) {
+                throw error("%s exited with status %d", command.get(0),
+                            status);
+            }
+            return new long[] { first < 0 ? exit : first, exit };
+        } catch (IOException excp) {
+            throw error("could not run %s", command.get(0));
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+    }
+
+    /** Return the command that runs Main in a JVM with the options
+     *  JVMOPTIONS. */
+    private List<String> java(String... jvmOptions) {
+        ArrayList<String> result = new ArrayList<>();
+        result.add(_java);
+        result.addAll(Arrays.asList(jvmOptions));
+        result.add("-cp");
+        result.add(_classPath);
+        result.add("enigma.Main");
+        result.add(_config);
+        result.add(_input);
+        return result;
+    }
+
+    /** Return the command that runs the executable PROGRAM on my
+     *  input. */
+    private List<String> command(String program) {
+        return Arrays.asList(program, _config, _input);
+    }
+
+    /** Configuration and input files given to Main. */
+    private final String _config, _input;
+
+    /** Number of timed runs of each launch style. */
+    private final int _runs;
+
+    /** Class-data-sharing archive. */
+    private final File _archive;
+
+    /** Native executable, or null. */
+    private final String _native;
+
+    /** The java launcher of this JVM. */
+    private final String _java;
+
+    /** Jar holding the classes Main is run from. */
+    private final File _jar;
+
+    /** Class path Main is run with: _jar, then the jar files on this
+     *  JVM's class path. */
+    private final String _classPath;
+}
@@ -0,0 +1,423 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A way of advancing the rotors of a machine at each keystroke.  Each
+ *  stepping moves the rotors given to step(), and also makes engines:
+ *  converters with the rotors and plugboard of a machine compiled into
+ *  flat tables and their settings held as ints, whose convert() loop
+ *  advances the settings itself.  Every stepping has its own final engine
+ *  class, so that each such loop calls nothing that might be overridden.
+ *  @author Nazli Urenli
+ */
+abstract class Stepping {
+
+    /** The Enigma's pawls and ratchets: the rightmost rotor always
+     *  moves, and a rotor at a notch moves itself and the rotor to its
+     *  left (if that can move), so that a middle rotor steps twice in a
+     *  row. */
+    static final Stepping DOUBLE_STEP = new DoubleStep();
+
+    /** A counter: the rightmost rotor always moves, and a rotor that
+     *  comes round to its 0 setting carries into the one to its left,
+     *  regardless of notches. */
+    static final Stepping ODOMETER = new Odometer();
+
+    /** Cog wheels: the rightmost rotor always moves, and a rotor that
+     *  moves from a notch carries into the one to its left, without
+     *  double steps. */
+    static final Stepping COG_WHEEL = new CogWheel();
+
+    /** Return the stepping named NAME ("double", "odometer", or "cog"),
+     *  or DOUBLE_STEP if NAME is null. */
+    static Stepping forName(String name) {
+        if (name == null) {
+            return DOUBLE_STEP;
+        }
+        for (Stepping stepping : new Stepping[] { DOUBLE_STEP, ODOMETER,
+                                                  COG_WHEEL }) {
+            if (stepping.name().equals(name)) {
+                return stepping;
+            }
+        }
+        throw error("unknown stepping: %s", name);
+    }
+
+    /** Return my name. */
+    abstract String name();
+
+    /** Advance ROTORS (the reflector first) as one keystroke does. */
+    abstract void step(Rotor[] rotors);
+
+    /** Return an engine for ROTORS (the reflector first, each of size
+     *  SIZE) and PLUGBOARD, or null if their conversions or stepping
+     *  cannot be compiled, in which case the machine converts one
+     *  character at a time instead. */
+    final Engine engine(Rotor[] rotors, Permutation plugboard, int size) {
+        if (rotors.length > Long.SIZE || !rotors[rotors.length - 1].rotates()
+            && requiresLastRotating()) {
+            return null;
+        }
+        try {
+            return newEngine(new Engine.Tables(rotors, plugboard, size));
+        } catch (EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Return true iff a step must move a rightmost rotor that may not
+     *  be able to move. */
+    boolean requiresLastRotating() {
+        return false;
+    }
+
+    /** Return a new engine converting through TABLES. */
+    abstract Engine newEngine(Engine.Tables tables);
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+    /** Converts whole arrays of characters with one machine set-up. */
+    abstract static class Engine {
+
+        /** The compiled conversions of a machine's rotors and plugboard. */
+        static final class Tables {
+            /** The tables for ROTORS, each of size N, and PLUGBOARD.
+             *  Throws an EnigmaException if a moving rotor fails to
+             *  convert a character at any setting.  The rows of rotors
+             *  that do not move are only filled in, by build, for the
+             *  settings they are used at. */
+            Tables(Rotor[] rotors, Permutation plugboard, int n) {
+                int k = rotors.length;
+                this.n = n;
+                this.k = k;
+                moves = new boolean[k];
+                notch = new boolean[k * n];
+                valid = new boolean[k * n];
+                built = new boolean[k * n];
+                forward = new int[k * n * n];
+                backward = new int[k * n * n];
+                plug = new int[n];
+                for (int c = 0; c < n; c += 1) {
+                    plug[c] = plugboard.permute(c);
+                }
+                for (int x = 0; x < k; x += 1) {
+                    Rotor rotor = rotors[x];
+                    if (rotor == null || rotor.size() != n) {
+                        throw error("rotor %d cannot be compiled", x);
+                    }
+                    moves[x] = rotor.rotates();
+                    String notches = rotor.notches();
+                    for (int j = 0; j < notches.length(); j += 1) {
+                        notch[x * n + rotor.alphabet()
+                              .toInt(notches.charAt(j))] = true;
+                    }
+                    for (int s = 0; moves[x] && s < n; s += 1) {
+                        if (!build(rotor, x, s)) {
+                            throw error("rotor %d cannot be compiled", x);
+                        }
+                    }
+                }
+            }
+
+            /** Fill in the row of ROTOR, in slot X, at setting S, and
+             *  return true iff it converts every character there. */
+            boolean build(Rotor rotor, int x, int s) {
+                built[x * n + s] = true;
+                Rotor scratch = rotor.copy();
+                try {
+                    scratch.set(s);
+                    for (int c = 0; c < n; c += 1) {
+                        int row = (x * n + s) * n;
+                        forward[row + c] = scratch.convertForward(c);
+                        if (x > 0) {
+                            backward[row + c] = scratch.convertBackward(c);
+                        }
+                    }
+                    valid[x * n + s] = true;
+                } catch (EnigmaException excp) {
+                    valid[x * n + s] = false;
+                }
+                return valid[x * n + s];
+            }
+
+            /** Alphabet size and number of rotors. */
+            final int n, k;
+            /** Which rotors can move. */
+            final boolean[] moves;
+            /** Entry x * n + s tells whether rotor x has a notch at s,
+             *  whether it converts every character at setting s, and
+             *  whether its row for s has been filled in. */
+            final boolean[] notch, valid, built;
+            /** Entry (x * n + s) * n + c is the conversion of c by rotor x
+             *  at setting s, forward and backward. */
+            final int[] forward, backward;
+            /** The plugboard's conversions. */
+            final int[] plug;
+        }
+
+        /** An engine converting through TABLES. */
+        Engine(Tables tables) {
+            _tables = tables;
+            _n = tables.n;
+            _k = tables.k;
+            _moves = tables.moves;
+            _notch = tables.notch;
+            _valid = tables.valid;
+            _forward = tables.forward;
+            _backward = tables.backward;
+            _plug = tables.plug;
+            _settings = new int[_k];
+            _rows = new int[_k];
+        }
+
+        /** Take the settings of ROTORS, those I was made for, returning
+         *  false if I cannot convert at them. */
+        final boolean load(Rotor[] rotors) {
+            for (int x = 0; x < _k; x += 1) {
+                int s = rotors[x].setting();
+                if (s < 0 || s >= _n) {
+                    return false;
+                }
+                if (!_tables.built[x * _n + s]) {
+                    _tables.build(rotors[x], x, s);
+                }
+                if (!_valid[x * _n + s]) {
+                    return false;
+                }
+                _settings[x] = s;
+                _rows[x] = (x * _n + s) * _n;
+            }
+            return true;
+        }
+
+        /** Give ROTORS my settings. */
+        final void store(Rotor[] rotors) {
+            for (int x = 0; x < _k; x += 1) {
+                if (rotors[x].setting() != _settings[x]) {
+                    rotors[x].set(_settings[x]);
+                }
+            }
+        }
+
+        /** Convert TEXT[FROM .. TO-1], alphabet indices, in place,
+         *  advancing my settings before each character. */
+        abstract void convert(int[] text, int from, int to);
+
+        /** My tables. */
+        private final Tables _tables;
+        /** Alphabet size and number of rotors. */
+        final int _n, _k;
+        /** Which rotors can move. */
+        final boolean[] _moves;
+        /** Notches and valid settings, as in Tables. */
+        final boolean[] _notch, _valid;
+        /** Rotor conversions, as in Tables. */
+        final int[] _forward, _backward;
+        /** Plugboard conversions. */
+        final int[] _plug;
+        /** Current setting of each rotor, and its row in the rotor
+         *  tables. */
+        final int[] _settings, _rows;
+    }
+
+    /** The stepping of DOUBLE_STEP. */
+    private static final class DoubleStep extends Stepping {
+        @Override
+        String name() {
+            return "double";
+        }
+
+        @Override
+        void step(Rotor[] rotors) {
+            boolean[] rotatableRotor = new boolean[rotors.length];
+            rotatableRotor[rotors.length - 1] = true;
+            int x;
+            for (x = rotatableRotor.length - 1; x > 1; x = x - 1) {
+                if (rotors[x].atNotch()
+                        && rotors[x - 1].rotates()) {
+                    rotatableRotor[x - 1] = true;
+                    rotatableRotor[x] = true;
+                }
+            }
+            int upgrade;
+            for (upgrade = 0; upgrade < rotors.length; upgrade += 1) {
+                if (rotatableRotor[upgrade]) {
+                    rotors[upgrade].advance();
+                }
+            }
+        }
+
+        @Override
+        boolean requiresLastRotating() {
+            return true;
+        }
+
+        @Override
+        Engine newEngine(Engine.Tables tables) {
+            return new DoubleStepEngine(tables);
+        }
+    }
+
+    /** The engine of DOUBLE_STEP. */
+    static final class DoubleStepEngine extends Engine {
+        /** An engine converting through TABLES. */
+        DoubleStepEngine(Tables tables) {
+            super(tables);
+        }
+
+        @Override
+        void convert(int[] text, int from, int to) {
+            final int n = _n, k = _k;
+            final boolean[] moves = _moves, notch = _notch;
+            final int[] forward = _forward, backward = _backward,
+                plug = _plug, settings = _settings, rows = _rows;
+            for (int p = from; p < to; p += 1) {
+                long moving = 1L << (k - 1);
+                for (int x = k - 1; x > 1; x -= 1) {
+                    if (notch[x * n + settings[x]] && moves[x - 1]) {
+                        moving |= 3L << (x - 1);
+                    }
+                }
+                for (int x = 1; x < k; x += 1) {
+                    if ((moving & (1L << x)) != 0) {
+                        int s = settings[x] + 1 == n ? 0 : settings[x] + 1;
+                        settings[x] = s;
+                        rows[x] = (x * n + s) * n;
+                    }
+                }
+                int c = plug[text[p]];
+                for (int x = k - 1; x > 0; x -= 1) {
+                    c = forward[rows[x] + c];
+                }
+                c = forward[rows[0] + c];
+                for (int x = 1; x < k; x += 1) {
+                    c = backward[rows[x] + c];
+                }
+                text[p] = plug[c];
+            }
+        }
+    }
+
+    /** The stepping of ODOMETER. */
+    private static final class Odometer extends Stepping {
+        @Override
+        String name() {
+            return "odometer";
+        }
+
+        @Override
+        void step(Rotor[] rotors) {
+            for (int x = rotors.length - 1; x > 0 && rotors[x].rotates();
+                 x -= 1) {
+                rotors[x].advance();
+                if (rotors[x].setting() != 0) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        Engine newEngine(Engine.Tables tables) {
+            return new OdometerEngine(tables);
+        }
+    }
+
+    /** The engine of ODOMETER. */
+    static final class OdometerEngine extends Engine {
+        /** An engine converting through TABLES. */
+        OdometerEngine(Tables tables) {
+            super(tables);
+        }
+
+        @Override
+        void convert(int[] text, int from, int to) {
+            final int n = _n, k = _k;
+            final boolean[] moves = _moves;
+            final int[] forward = _forward, backward = _backward,
+                plug = _plug, settings = _settings, rows = _rows;
+            for (int p = from; p < to; p += 1) {
+                for (int x = k - 1; x > 0 && moves[x]; x -= 1) {
+                    int s = settings[x] + 1 == n ? 0 : settings[x] + 1;
+                    settings[x] = s;
+                    rows[x] = (x * n + s) * n;
+                    if (s != 0) {
+                        break;
+                    }
+                }
+                int c = plug[text[p]];
+                for (int x = k - 1; x > 0; x -= 1) {
+                    c = forward[rows[x] + c];
+                }
+                c = forward[rows[0] + c];
+                for (int x = 1; x < k; x += 1) {
+                    c = backward[rows[x] + c];
+                }
+                text[p] = plug[c];
+            }
+        }
+    }
+
+    /** The stepping of COG_WHEEL. */
+    private static final class CogWheel extends Stepping {
+        @Override
+        String name() {
+            return "cog";
+        }
+
+        @Override
+        void step(Rotor[] rotors) {
+            for (int x = rotors.length - 1; x > 0 && rotors[x].rotates();
+                 x -= 1) {
+                boolean carry = rotors[x].atNotch();
+                rotors[x].advance();
+                if (!carry) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        Engine newEngine(Engine.Tables tables) {
+            return new CogWheelEngine(tables);
+        }
+    }
+
+    /** The engine of COG_WHEEL. */
+    static final class CogWheelEngine extends Engine {
+        /** An engine converting through TABLES. */
+        CogWheelEngine(Tables tables) {
+            super(tables);
+        }
+
+        @Override
+        void convert(int[] text, int from, int to) {
+            final int n = _n, k = _k;
+            final boolean[] moves = _moves, notch = _notch;
+            final int[] forward = _forward, backward = _backward,
+                plug = _plug, settings = _settings, rows = _rows;
+            for (int p = from; p < to; p += 1) {
+                for (int x = k - 1; x > 0 && moves[x]; x -= 1) {
+                    boolean carry = notch[x * n + settings[x]];
+                    int s = settings[x] + 1 == n ? 0 : settings[x] + 1;
+                    settings[x] = s;
+                    rows[x] = (x * n + s) * n;
+                    if (!carry) {
+                        break;
+                    }
+                }
+                int c = plug[text[p]];
+                for (int x = k - 1; x > 0; x -= 1) {
+                    c = forward[rows[x] + c];
+                }
+                c = forward[rows[0] + c];
+                for (int x = 1; x < k; x += 1) {
+                    c = backward[rows[x] + c];
+                }
+                text[p] = plug[c];
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Measures the conversion rate of a machine three ways: one character
+ *  at a time through Machine.convert(int), an array at a time through
+ *  the engine of its stepping (see Stepping), and an array at a time
+ *  through a loop written out by hand for the Enigma's stepping, which
+ *  the engine should match.  Each way converts the same random text for
+ *  a number of rounds, the first half of which warm up the compiler; the
+ *  best of the rest is reported.  All three must agree.
+ *  The usage is
+ *      java enigma.SteppingBench [--chars=N] [--rounds=R]
+ *           [--stepping=NAME] [--rotors=R,R,...] [--setting=S]
+ *           [--plugboard=CYCLES] CONFIG
+ *  which times N characters (1M) for R rounds (20) on the machine
+ *  configured by CONFIG, with rotors R,R,... (the first order it allows)
+ *  at setting S (all at the first letter) and plugboard CYCLES.
+ *  @author Nazli Urenli
+ */
+final class SteppingBench {
+
+    /** Run the benchmark described in the class comment, according to
+     *  ARGS. */
+    public static void main(String... args) {
+        try {
+            int chars = 1 << 20, rounds = 20;
+            String[] order = null;
+            String setting = null, plugboard = "";
+            Stepping stepping = Stepping.DOUBLE_STEP;
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k];
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--chars=")) {
+                    chars = Integer.parseInt(value);
+                } else if (arg.startsWith("--rounds=")) {
+                    rounds = Integer.parseInt(value);
+                } else if (arg.startsWith("--stepping=")) {
+                    stepping = Stepping.forName(value);
+                } else if (arg.startsWith("--rotors=")) {
+                    order = Main.splitAtBlanks(value.replace(',', ' '));
+                } else if (arg.startsWith("--setting=")) {
+                    setting = value;
+                } else if (arg.startsWith("--plugboard=")) {
+                    plugboard = value;
+                } else {
+                    throw error("unknown option %s", arg);
+                }
+            }
+            if (args.length - k != 1 || chars <= 0 || rounds <= 1) {
+                throw error("usage: SteppingBench [--chars=N] [--rounds=R] "
+                            + "[--stepping=NAME] [--rotors=R,R,...] "
+                            + "[--setting=S] [--plugboard=CYCLES] CONFIG");
+            }
+            Machine machine = Main.readConfig(args[k]);
+            Alphabet alpha = machine.alphabet();
+            if (order == null) {
+                order = new KeySpace(machine, null).order(0);
+            }
+            if (setting == null) {
+                setting = String.valueOf(alpha.toChar(0))
+                    .repeat(machine.numRotors() - 1);
+            }
+            machine.insertRotors(order);
+            machine.setPlugboard(new Permutation(plugboard, alpha));
+            machine.setStepping(stepping);
+            new SteppingBench(machine, setting, chars, rounds).run();
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A benchmark of MACHINE, with its rotors and plugboard in place,
+     *  converting CHARS characters from SETTING, ROUNDS times. */
+    SteppingBench(Machine machine, String setting, int chars, int rounds) {
+        _machine = machine;
+        _setting = setting;
+        _rounds = rounds;
+        _text = new int[chars];
+        Random random = new Random(chars);
+        for (int k = 0; k < chars; k += 1) {
+            _text[k] = random.nextInt(machine.alphabet().size());
+        }
+    }
+
+    /** Time each way of converting, and print their rates. */
+    void run() {
+        int[] perChar = time("per-char", (out) -> {
+            for (int k = 0; k < out.length; k += 1) {
+                out[k] = _machine.convert(out[k]);
+            }
+        });
+        int[] engine = time("engine", (out) -> {
+            _machine.convert(out, 0, out.length);
+        });
+        if (!Arrays.equals(perChar, engine)) {
+            throw error("engine and per-character conversions differ");
+        }
+        if (_machine.stepping() == Stepping.DOUBLE_STEP) {
+            _machine.setRotors(_setting);
+            Rotor[] rotors = _machine.rotorArr();
+            Permutation plugboard = new Permutation(_machine.snapshot()
+                .plugboard(), _machine.alphabet());
+            Stepping.Engine.Tables tables = new Stepping.Engine.Tables(
+                rotors, plugboard, _machine.alphabet().size());
+            int[] start = new int[rotors.length];
+            for (int x = 0; x < rotors.length; x += 1) {
+                start[x] = rotors[x].setting();
+                for (int s = 0; !tables.moves[x] && s < tables.n; s += 1) {
+                    tables.build(rotors[x], x, s);
+                }
+            }
+            int[] inlined = time("inlined", (out) -> {
+                inlined(tables, start.clone(), out);
+            });
+            if (!Arrays.equals(perChar, inlined)) {
+                throw error("engine and hand-inlined conversions differ");
+            }
+        }
+    }
+
+    /** A way of converting an array of characters in place. */
+    private interface Way {
+        /** Convert TEXT in place. */
+        void convert(int[] text);
+    }
+
+    /** Time WAY, named NAME, over my rounds, print its best rate, and
+     *  return its conversion of my text. */
+    private int[] time(String name, Way way) {
+        int[] result = null;
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < _rounds; r += 1) {
+            _machine.setRotors(_setting);
+            result = _text.clone();
+            long start = System.nanoTime();
+            way.convert(result);
+            long elapsed = System.nanoTime() - start;
+            if (r >= _rounds / 2) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        System.out.printf("%-9s %8.1f M chars/s (best of %d rounds)%n", name,
+                          _text.length * 1e3 / best, _rounds - _rounds / 2);
+        return result;
+    }
+
+    /** Convert TEXT in place through TABLES, all of whose rows must be
+     *  filled in, from rotor SETTINGS, with the Enigma's stepping written
+     *  out. */
+    private static void inlined(Stepping.Engine.Tables tables,
+                                int[] settings, int[] text) {
+        final int n = tables.n, k = tables.k;
+        final boolean[] moves = tables.moves, notch = tables.notch;
+        final int[] forward = tables.forward, backward = tables.backward,
+            plug = tables.plug;
+        for (int p = 0; p < text.length; p += 1) {
+            long moving = 1L << (k - 1);
+            for (int x = k - 1; x > 1; x -= 1) {
+                if (notch[x * n + settings[x]] && moves[x - 1]) {
+                    moving |= 3L << (x - 1);
+                }
+            }
+            for (int x = 1; x < k; x += 1) {
+                if ((moving & (1L << x)) != 0) {
+                    settings[x] = settings[x] + 1 == n ? 0 : settings[x] + 1;
+                }
+            }
+            int c = plug[text[p]];
+            for (int x = k - 1; x > 0; x -= 1) {
+                c = forward[(x * n + settings[x]) * n + c];
+            }
+            c = forward[settings[0] * n + c];
+            for (int x = 1; x < k; x += 1) {
+                c = backward[(x * n + settings[x]) * n + c];
+            }
+            text[p] = plug[c];
+        }
+    }
+
+    /** The machine measured. */
+    private final Machine _machine;
+
+    /** Its initial rotor setting. */
+    private final String _setting;
+
+    /** Number of rounds of each way. */
+    private final int _rounds;
+
+    /** The text converted. */
+    private final int[] _text;
+}
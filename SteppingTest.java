@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Stepping class.
+ *  @author Nazli Urenli
+ */
+public class SteppingTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The rotors used in these tests. */
+    private static final String[] ROTORS = { "B", "Beta", "III", "IV", "I" };
+
+    /** Return a naval machine with ROTORS at SETTING, advancing them
+     *  by STEPPING. */
+    private Machine machine(Stepping stepping, String setting) {
+        Machine result = navalMachine(ROTORS, setting, "(AQ) (EP) (TZ)");
+        result.setStepping(stepping);
+        return result;
+    }
+
+    /** Return the rotor settings of M, as given on a settings line. */
+    private String settings(Machine M) {
+        MachineSnapshot snapshot = M.snapshot();
+        StringBuilder result = new StringBuilder();
+        for (int x = 1; x < M.numRotors(); x += 1) {
+            result.append(UPPER.toChar(snapshot.setting(x)));
+        }
+        return result.toString();
+    }
+
+    /** Return the settings of a machine advanced by STEPPING from SETTING
+     *  after one keystroke. */
+    private String stepped(Stepping stepping, String setting) {
+        Machine M = machine(stepping, setting);
+        M.convert(0);
+        return settings(M);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSteppings() {
+        assertEquals("ABKB", stepped(Stepping.DOUBLE_STEP, "AAJA"));
+        assertEquals("AAJB", stepped(Stepping.COG_WHEEL, "AAJA"));
+        assertEquals("AAJB", stepped(Stepping.ODOMETER, "AAJA"));
+        assertEquals("AWKR", stepped(Stepping.DOUBLE_STEP, "AVJQ"));
+        assertEquals("AWKR", stepped(Stepping.COG_WHEEL, "AVJQ"));
+        assertEquals("AVJR", stepped(Stepping.ODOMETER, "AVJQ"));
+        assertEquals("ABAA", stepped(Stepping.ODOMETER, "AAZZ"));
+        assertEquals("AAZA", stepped(Stepping.COG_WHEEL, "AAZZ"));
+        assertSame(Stepping.COG_WHEEL, Stepping.forName("cog"));
+        assertSame(Stepping.DOUBLE_STEP, Stepping.forName(null));
+    }
+
+    @Test
+    public void testEnginesMatchRotors() {
+        Random random = new Random(40);
+        for (Stepping stepping : new Stepping[] { Stepping.DOUBLE_STEP,
+                                                  Stepping.ODOMETER,
+                                                  Stepping.COG_WHEEL }) {
+            for (String setting : new String[] { "AAAA", "AEUP", "ZZZZ",
+                                                 "MDJQ" }) {
+                Machine slow = machine(stepping, setting),
+                    fast = machine(stepping, setting);
+                slow.setRings(setting);
+                fast.setRings(setting);
+                int[] text = new int[20000];
+                for (int k = 0; k < text.length; k += 1) {
+                    text[k] = random.nextInt(26);
+                }
+                int[] expected = new int[text.length];
+                for (int k = 0; k < text.length; k += 1) {
+                    expected[k] = slow.convert(text[k]);
+                }
+                for (int k = 0; k < text.length; ) {
+                    int end = Math.min(text.length,
+                                       k + random.nextInt(1000));
+                    fast.convert(text, k, end);
+                    k = end;
+                }
+                String id = msg(stepping.name(), "from %s", setting);
+                assertArrayEquals(id, expected, text);
+                assertEquals(id, settings(slow), settings(fast));
+            }
+        }
+    }
+
+    @Test
+    public void testSetRotorsAfterBulk() {
+        Machine M = machine(Stepping.DOUBLE_STEP, "AXLE");
+        int[] text = UPPER.encode("FROMHISSHOULDER");
+        M.convert(text, 0, text.length);
+        M.setRotors("AXLE");
+        assertEquals(machine(Stepping.DOUBLE_STEP, "AXLE")
+                     .convert("HIAWATHA"), M.convert("HIAWATHA"));
+    }
+
+    @Test
+    public void testBenchAgrees() {
+        for (String setting : new String[] { "AAAA", "MDJQ" }) {
+            new SteppingBench(machine(Stepping.DOUBLE_STEP, setting),
+                              setting, 5000, 2).run();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testFixedLastRotor() {
+        Machine M = navalMachine(new String[] { "B", "Beta", "III", "IV",
+                                                "Gamma" }, "AAAA", "");
+        M.convert(new int[] { 1, 2, 3 }, 0, 3);
+    }
+}
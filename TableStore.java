@@ -0,0 +1,159 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.IntUnaryOperator;
+
+import static enigma.EnigmaException.*;
+
+/** A store of compiled lookup tables for Permutations and Rotors.  Tables
+ *  live on the Java heap, in direct (off-heap) memory, or in a
+ *  memory-mapped file that several JVMs on one host can share read-only.
+ *  Tables are keyed by their contents, so every machine built from the
+ *  same configuration shares a single copy of each table.
+ *  @author Nazli Urenli
+ */
+final class TableStore {
+
+    /** Tag at the start of every exported table file. */
+    private static final int MAGIC = 0x454e5442;
+
+    /** A store whose tables are allocated in int arrays when OFFHEAP is
+     *  false, and in direct byte buffers otherwise. */
+    private TableStore(boolean offHeap) {
+        _offHeap = offHeap;
+        _tables = new HashMap<>();
+        _keys = new ArrayList<>();
+    }
+
+    /** Return a store keeping its tables on the Java heap. */
+    static TableStore heap() {
+        return new TableStore(false);
+    }
+
+    /** Return a store keeping its tables in direct (off-heap) memory. */
+    static TableStore offHeap() {
+        return new TableStore(true);
+    }
+
+    /** Return an off-heap store whose initial tables are mapped read-only
+     *  from FILE, which must have been written by export().  Tables not
+     *  found in FILE are compiled off-heap as usual. */
+    static TableStore mapped(File file) {
+        TableStore store = new TableStore(true);
+        try (DataInputStream in =
+                 new DataInputStream(new FileInputStream(file));
+             RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a table file", file);
+            }
+            int count = in.readInt();
+            MappedByteBuffer data =
+                raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                                     0, raf.length());
+            for (int k = 0; k < count; k += 1) {
+                String key = in.readUTF();
+                int offset = in.readInt();
+                int length = in.readInt();
+                ByteBuffer slice = data.duplicate();
+                slice.position(offset).limit(offset + 4 * length);
+                store.put(key, slice.slice().order(ByteOrder.BIG_ENDIAN)
+                          .asIntBuffer().asReadOnlyBuffer());
+            }
+        } catch (IOException excp) {
+            throw error("could not map %s", file);
+        }
+        return store;
+    }
+
+    /** Return the table named KEY, first compiling it with LENGTH entries,
+     *  entry #k being ENTRY.applyAsInt(k), if it is not already present. */
+    synchronized IntBuffer table(String key, int length,
+                                 IntUnaryOperator entry) {
+        IntBuffer result = _tables.get(key);
+        if (result == null) {
+            IntBuffer table;
+            if (_offHeap) {
+                table = ByteBuffer.allocateDirect(4 * length)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            } else {
+                table = IntBuffer.allocate(length);
+            }
+            for (int k = 0; k < length; k += 1) {
+                table.put(k, entry.applyAsInt(k));
+            }
+            result = table.asReadOnlyBuffer();
+            put(key, result);
+        }
+        return result;
+    }
+
+    /** Return the number of tables I hold. */
+    synchronized int size() {
+        return _keys.size();
+    }
+
+    /** Write all my tables to FILE, in the format read by mapped(). */
+    synchronized void export(File file) {
+        try (DataOutputStream header =
+                 new DataOutputStream(OutputStream.nullOutputStream());
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file)))) {
+            header.writeInt(MAGIC);
+            header.writeInt(_keys.size());
+            for (String key : _keys) {
+                header.writeUTF(key);
+                header.writeInt(0);
+                header.writeInt(0);
+            }
+            int offset = header.size();
+            out.writeInt(MAGIC);
+            out.writeInt(_keys.size());
+            for (String key : _keys) {
+                IntBuffer table = _tables.get(key);
+                out.writeUTF(key);
+                out.writeInt(offset);
+                out.writeInt(table.limit());
+                offset += 4 * table.limit();
+            }
+            for (String key : _keys) {
+                IntBuffer table = _tables.get(key);
+                for (int k = 0; k < table.limit(); k += 1) {
+                    out.writeInt(table.get(k));
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Record TABLE under KEY. */
+    private void put(String key, IntBuffer table) {
+        if (_tables.put(key, table) == null) {
+            _keys.add(key);
+        }
+    }
+
+    /** True iff newly compiled tables go off-heap. */
+    private final boolean _offHeap;
+
+    /** My tables, by key. */
+    private final HashMap<String, IntBuffer> _tables;
+
+    /** My keys, in the order first compiled. */
+    private final ArrayList<String> _keys;
+}
@@ -0,0 +1,91 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for compiled tables and the TableStore
+ *  class.
+ *  @author Nazli Urenli
+ */
+public class TableStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that rotor NAME compiled into STORE converts exactly as the
+     *  uncompiled rotor does at every setting. */
+    private void checkCompiled(String name, TableStore store) {
+        Rotor plain = new MovingRotor(name,
+                new Permutation(NAVALA.get(name), UPPER), "");
+        Rotor compiled = new MovingRotor(name,
+                new Permutation(NAVALA.get(name), UPPER), "");
+        compiled.compile(store);
+        assertTrue(compiled.permutation().compiled());
+        for (int s = 0; s < UPPER.size(); s += 1) {
+            plain.set(s);
+            compiled.set(s);
+            for (int p = 0; p < UPPER.size(); p += 1) {
+                assertEquals(msg(name, "forward %d at %d", p, s),
+                             plain.convertForward(p),
+                             compiled.convertForward(p));
+                assertEquals(msg(name, "backward %d at %d", p, s),
+                             plain.convertBackward(p),
+                             compiled.convertBackward(p));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testHeapAndOffHeap() {
+        for (String name : new String[] { "I", "IV", "VIII", "Beta" }) {
+            checkCompiled(name, TableStore.heap());
+            checkCompiled(name, TableStore.offHeap());
+        }
+    }
+
+    @Test
+    public void testShared() {
+        TableStore store = TableStore.heap();
+        new Permutation(NAVALA.get("I"), UPPER).compile(store);
+        new Permutation(NAVALA.get("I"), UPPER).compile(store);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testNotInAlphabet() {
+        Alphabet abcd = new Alphabet("ABCD");
+        Permutation plain = new Permutation("(BACD)", abcd);
+        Permutation p = new Permutation("(BACD)", abcd);
+        p.compile(TableStore.heap());
+        for (int k = -4; k < 8; k += 1) {
+            assertEquals(plain.permute(k), p.permute(k));
+            assertEquals(plain.invert(k), p.invert(k));
+        }
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        File file = File.createTempFile("enigma", ".tbl");
+        file.deleteOnExit();
+        TableStore store = TableStore.offHeap();
+        new Rotor("III", new Permutation(NAVALA.get("III"), UPPER))
+            .compile(store);
+        store.export(file);
+        TableStore mapped = TableStore.mapped(file);
+        assertEquals(store.size(), mapped.size());
+        checkCompiled("III", mapped);
+        assertEquals(store.size(), mapped.size());
+    }
+}
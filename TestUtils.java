@@ -1,6 +1,12 @@
 package enigma;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -126,4 +132,95 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** The notches of the naval moving rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return the naval rotors, reflectors, and fixed rotors in their
+     *  A settings. */
+    static ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> result = new ArrayList<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (NAVAL_NOTCHES.containsKey(name)) {
+                result.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else if (name.equals("B") || name.equals("C")) {
+                result.add(new Reflector(name, perm));
+            } else {
+                result.add(new FixedRotor(name, perm));
+            }
+        }
+        return result;
+    }
+
+    /** Return a 5-rotor, 3-pawl naval machine with the rotors named ROTORS,
+     *  set to SETTING, with plugboard PLUGBOARD. */
+    static Machine navalMachine(String[] rotors, String setting,
+                                String plugboard) {
+        Machine result = new Machine(UPPER, 5, 3, navalRotors());
+        result.insertRotors(rotors);
+        result.setRotors(setting);
+        result.setPlugboard(new Permutation(plugboard, UPPER));
+        return result;
+    }
+
+    /** A naval machine with rotors I-IV, Beta, and B, as a configuration
+     *  file. */
+    static final byte[] NAVAL_CONFIG = String.join("\n",
+        UPPER_STRING, "5 3",
+        "I MQ " + NAVALA.get("I"), "II ME " + NAVALA.get("II"),
+        "III MV " + NAVALA.get("III"), "IV MJ " + NAVALA.get("IV"),
+        "Beta N " + NAVALA.get("Beta"), "B R " + NAVALA.get("B"),
+        "").getBytes(StandardCharsets.UTF_8);
+
+    /** Return the output of Main, configured by CONFIG, converting INPUT
+     *  with OPTIONS, by way of temporary files.  If it fails, raise the
+     *  exception, or if CATCH, return the output followed by "error: "
+     *  and the message of the exception. */
+    static String runMain(byte[] config, String input,
+                          HashMap<String, String> options, boolean catch_)
+        throws IOException {
+        File in = File.createTempFile("main", ".in");
+        File out = File.createTempFile("main", ".out");
+        try {
+            Files.write(in.toPath(), input.getBytes(StandardCharsets.UTF_8));
+            String error = "";
+            Main main = new Main(options, in.getPath(), out.getPath());
+            try {
+                main.processInput(Main.readConfig(config));
+            } catch (RuntimeException excp) {
+                if (!catch_) {
+                    throw excp;
+                }
+                error = "error: " + excp.getMessage();
+            } finally {
+                main.close();
+            }
+            return new String(Files.readAllBytes(out.toPath()),
+                              StandardCharsets.UTF_8) + error;
+        } finally {
+            in.delete();
+            out.delete();
+        }
+    }
+
+    /** Return LENGTH random upper-case letters from RANDOM. */
+    static String letters(Random random, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < length; k += 1) {
+            result.append(UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
 }
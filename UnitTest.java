@@ -11,7 +11,24 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      TableStoreTest.class,
+                                      MachineProcessorTest.class,
+                                      MachineFuzzerTest.class,
+                                      SpscRingTest.class,
+                                      KeystreamCacheTest.class,
+                                      LineInputTest.class,
+                                      WindowStatsTest.class,
+                                      KeySearchTest.class,
+                                      BanburismusTest.class,
+                                      CribFinderTest.class,
+                                      SteppingTest.class,
+                                      EnigmaEventsTest.class,
+                                      ArchiveTest.class,
+                                      WordScorerTest.class,
+                                      MainTest.class,
+                                      CorpusTest.class,
+                                      RotorCatalogTest.class));
     }
 }
 
@@ -0,0 +1,405 @@
+package enigma;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Letter statistics of a stream of text over sliding windows of several
+ *  widths at once: for each window, the frequency of every character of
+ *  an alphabet, the counts of every bigram and trigram lying wholly in the
+ *  window, and the index of coincidence.  Characters outside the alphabet
+ *  are skipped.  All the windows share one history of the characters
+ *  seen, and each character updates each window's histograms in constant
+ *  time.
+ *
+ *  Run on its own, it reports the statistics of whole files:
+ *      java enigma.WindowStats [--alphabet=CHARS] [--windows=W,...]
+ *           [--every=N] [FILE...]
+ *  reads each FILE (or the standard input), upper-cased as Main reads
+ *  messages and skipping settings lines (those containing '*'), and
+ *  prints a report for each, with a row of indices of coincidence every N
+ *  characters if --every is given.
+ *  @author Nazli Urenli
+ */
+final class WindowStats {
+
+    /** Window widths used when none are given. */
+    static final int[] DEFAULT_WIDTHS = { 100, 1000, 10000 };
+
+    /** Largest alphabet for which trigrams are counted. */
+    private static final int MAX_TRIGRAM_ALPHABET = 64;
+
+    /** The statistics of one window. */
+    static final class Window {
+        /** A window of WIDTH characters over an alphabet of SIZE
+         *  characters, counting trigrams iff TRIGRAMS. */
+        Window(int width, int size, boolean trigrams) {
+            _width = width;
+            _size = size;
+            _freq = new int[size];
+            _bigrams = new int[size * size];
+            _trigrams = trigrams ? new int[size * size * size] : null;
+            _minIoc = Double.POSITIVE_INFINITY;
+            _maxIoc = Double.NEGATIVE_INFINITY;
+        }
+
+        /** Return my width. */
+        int width() {
+            return _width;
+        }
+
+        /** Return the number of characters in me. */
+        int count() {
+            return _count;
+        }
+
+        /** Return the number of times character C occurs in me. */
+        int frequency(int c) {
+            return _freq[c];
+        }
+
+        /** Return the number of times the bigram AB occurs in me. */
+        int bigrams(int a, int b) {
+            return _bigrams[a * _size + b];
+        }
+
+        /** Return the number of times the trigram ABC occurs in me, or -1
+         *  if trigrams are not counted. */
+        int trigrams(int a, int b, int c) {
+            return _trigrams == null ? -1
+                : _trigrams[(a * _size + b) * _size + c];
+        }
+
+        /** Return my index of coincidence: the chance that two characters
+         *  drawn from me without replacement are the same. */
+        double ioc() {
+            return _count < 2 ? 0.0
+                : (double) _coincidences / ((long) _count * (_count - 1));
+        }
+
+        /** Return the least index of coincidence I have had while full
+         *  (infinite if never full). */
+        double minIoc() {
+            return _minIoc;
+        }
+
+        /** Return the greatest index of coincidence I have had while
+         *  full. */
+        double maxIoc() {
+            return _maxIoc;
+        }
+
+        /** Return the stream position just past the window with the
+         *  least index of coincidence (0 if never full). */
+        long minAt() {
+            return _minAt;
+        }
+
+        /** Return the stream position just past the window with the
+         *  greatest index of coincidence. */
+        long maxAt() {
+            return _maxAt;
+        }
+
+        /** Add character C, at position POS of the stream whose
+         *  characters are in HISTORY (character #p at HISTORY[p & MASK]),
+         *  to me, dropping the character that leaves me. */
+        void add(int c, long pos, int[] history, int mask) {
+            _coincidences += 2 * _freq[c];
+            _freq[c] += 1;
+            if (pos >= 1 && _width >= 2) {
+                int b = history[(int) (pos - 1) & mask];
+                _bigrams[b * _size + c] += 1;
+                if (pos >= 2 && _trigrams != null && _width >= 3) {
+                    int a = history[(int) (pos - 2) & mask];
+                    _trigrams[(a * _size + b) * _size + c] += 1;
+                }
+            }
+            long out = pos - _width;
+            if (out < 0) {
+                _count += 1;
+            } else {
+                int a = history[(int) out & mask];
+                _freq[a] -= 1;
+                _coincidences -= 2 * _freq[a];
+                if (_width >= 2) {
+                    int b = history[(int) (out + 1) & mask];
+                    _bigrams[a * _size + b] -= 1;
+                    if (_trigrams != null && _width >= 3) {
+                        int d = history[(int) (out + 2) & mask];
+                        _trigrams[(a * _size + b) * _size + d] -= 1;
+                    }
+                }
+            }
+            if (_count == _width) {
+                double ioc = ioc();
+                if (ioc < _minIoc) {
+                    _minIoc = ioc;
+                    _minAt = pos + 1;
+                }
+                if (ioc > _maxIoc) {
+                    _maxIoc = ioc;
+                    _maxAt = pos + 1;
+                }
+            }
+        }
+
+        /** Return the index in my histogram H of its largest count, the
+         *  earliest of several. */
+        static int largest(int[] h) {
+            int result = 0;
+            for (int k = 1; k < h.length; k += 1) {
+                if (h[k] > h[result]) {
+                    result = k;
+                }
+            }
+            return result;
+        }
+
+        /** My width and the size of my alphabet. */
+        private final int _width, _size;
+        /** Character frequencies. */
+        private final int[] _freq;
+        /** Bigram counts: AB at _bigrams[A * _size + B]. */
+        private final int[] _bigrams;
+        /** Trigram counts, laid out as the bigrams, or null. */
+        private final int[] _trigrams;
+        /** Number of characters in me. */
+        private int _count;
+        /** Number of ordered pairs of equal characters in me: the sum of
+         *  f * (f - 1) over the frequencies f. */
+        private long _coincidences;
+        /** Extreme indices of coincidence while full. */
+        private double _minIoc, _maxIoc;
+        /** Positions of the extreme indices of coincidence. */
+        private long _minAt, _maxAt;
+    }
+
+    /** Statistics over ALPHA for windows of each width in WIDTHS. */
+    WindowStats(Alphabet alpha, int[] widths) {
+        if (widths.length == 0) {
+            throw error("no window widths given");
+        }
+        _alphabet = alpha;
+        int size = alpha.size();
+        int max = 0;
+        _windows = new Window[widths.length];
+        for (int k = 0; k < widths.length; k += 1) {
+            if (widths[k] <= 0) {
+                throw error("window widths must be positive");
+            }
+            _windows[k] = new Window(widths[k], size,
+                                     size <= MAX_TRIGRAM_ALPHABET);
+            max = Math.max(max, widths[k]);
+        }
+        int capacity = Integer.highestOneBit(max) << 1;
+        _history = new int[capacity];
+        _mask = capacity - 1;
+        String chars = alpha.chars();
+        int top = 0;
+        for (int k = 0; k < chars.length(); k += 1) {
+            top = Math.max(top, chars.charAt(k));
+        }
+        _index = new int[top + 1];
+        Arrays.fill(_index, -1);
+        for (int k = chars.length() - 1; k >= 0; k -= 1) {
+            _index[chars.charAt(k)] = k;
+        }
+    }
+
+    /** Return the window widths given by SPEC, a comma-separated list of
+     *  positive integers, or DEFAULT_WIDTHS if SPEC is empty. */
+    static int[] widths(String spec) {
+        if (spec.isEmpty()) {
+            return DEFAULT_WIDTHS.clone();
+        }
+        int count = 1;
+        for (int k = 0; k < spec.length(); k += 1) {
+            if (spec.charAt(k) == ',') {
+                count += 1;
+            }
+        }
+        int[] result = new int[count];
+        int start = 0;
+        for (int k = 0; k < count; k += 1) {
+            int end = spec.indexOf(',', start);
+            if (end < 0) {
+                end = spec.length();
+            }
+            try {
+                result[k] = Integer.parseInt(spec.substring(start, end));
+            } catch (NumberFormatException excp) {
+                throw error("bad window width: %s",
+                            spec.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return result;
+    }
+
+    /** Print a row of indices of coincidence to OUT every EVERY
+     *  characters from now on (never if EVERY is 0). */
+    void sample(long every, PrintStream out) {
+        _every = every;
+        _sampleOut = out;
+    }
+
+    /** Add the characters of TEXT, upper-cased, that are in my
+     *  alphabet. */
+    void add(CharSequence text) {
+        for (int k = 0; k < text.length(); k += 1) {
+            char c = Character.toUpperCase(text.charAt(k));
+            if (c < _index.length && _index[c] >= 0) {
+                add(_index[c]);
+            }
+        }
+    }
+
+    /** Add the character with index C in my alphabet. */
+    void add(int c) {
+        _history[(int) _pos & _mask] = c;
+        for (Window window : _windows) {
+            window.add(c, _pos, _history, _mask);
+        }
+        _pos += 1;
+        if (_every > 0 && _pos % _every == 0) {
+            _sampleOut.print(_pos);
+            for (Window window : _windows) {
+                _sampleOut.printf(" %.5f", window.ioc());
+            }
+            _sampleOut.println();
+        }
+    }
+
+    /** Return the number of characters added. */
+    long position() {
+        return _pos;
+    }
+
+    /** Return my number of windows. */
+    int windows() {
+        return _windows.length;
+    }
+
+    /** Return window #K, in the order of the widths I was given. */
+    Window window(int k) {
+        return _windows[k];
+    }
+
+    /** Print a report of the statistics of each of my windows, as they
+     *  stand, to OUT. */
+    void report(PrintStream out) {
+        int n = _alphabet.size();
+        out.printf("window statistics: %d characters%n", _pos);
+        for (Window w : _windows) {
+            out.printf("  width %d: %d characters, IoC %.5f (%.3f "
+                       + "normalized)", w.width(), w.count(), w.ioc(),
+                       w.ioc() * n);
+            if (w.minAt() > 0) {
+                out.printf(", min %.5f at %d, max %.5f at %d", w.minIoc(),
+                           w.minAt(), w.maxIoc(), w.maxAt());
+            }
+            if (w.count() > 0) {
+                int c = Window.largest(w._freq);
+                out.printf(", top %c %d", _alphabet.toChar(c), w._freq[c]);
+            }
+            if (w.count() > 1) {
+                int b = Window.largest(w._bigrams);
+                out.printf(", %s %d", gram(b, 2), w._bigrams[b]);
+            }
+            if (w.count() > 2 && w._trigrams != null) {
+                int t = Window.largest(w._trigrams);
+                out.printf(", %s %d", gram(t, 3), w._trigrams[t]);
+            }
+            out.println();
+        }
+    }
+
+    /** Return the LENGTH characters whose histogram index is K. */
+    private String gram(int k, int length) {
+        char[] result = new char[length];
+        for (int i = length - 1; i >= 0; i -= 1) {
+            result[i] = _alphabet.toChar(k % _alphabet.size());
+            k /= _alphabet.size();
+        }
+        return new String(result);
+    }
+
+    /** Report on the files named in ARGS as described in the class
+     *  comment. */
+    public static void main(String... args) {
+        try {
+            Alphabet alpha = new Alphabet();
+            int[] widths = DEFAULT_WIDTHS;
+            long every = 0;
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                if (args[k].startsWith("--alphabet=")) {
+                    alpha = new Alphabet(args[k].substring(11));
+                } else if (args[k].startsWith("--windows=")) {
+                    widths = widths(args[k].substring(10));
+                } else if (args[k].startsWith("--every=")) {
+                    every = Long.parseLong(args[k].substring(8));
+                } else {
+                    throw error("unknown option %s", args[k]);
+                }
+            }
+            if (k == args.length) {
+                analyze(new LineInput(System.in), alpha, widths, every);
+            }
+            for (; k < args.length; k += 1) {
+                System.out.printf("%s:%n", args[k]);
+                try (FileInputStream in = new FileInputStream(args[k])) {
+                    analyze(new LineInput(in), alpha, widths, every);
+                } catch (IOException excp) {
+                    throw error("could not read %s", args[k]);
+                }
+            }
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Print the statistics of the text of INPUT over ALPHA for windows
+     *  of WIDTHS, sampling every EVERY characters. */
+    private static void analyze(LineInput input, Alphabet alpha,
+                                int[] widths, long every) {
+        WindowStats stats = new WindowStats(alpha, widths);
+        stats.sample(every, System.out);
+        while (input.hasNextLine()) {
+            String line = input.nextLine();
+            if (line.indexOf('*') < 0) {
+                stats.add(line);
+            }
+        }
+        stats.report(System.out);
+    }
+
+    /** The alphabet of the characters counted. */
+    private final Alphabet _alphabet;
+
+    /** Index in _alphabet of each character, or -1. */
+    private final int[] _index;
+
+    /** The windows. */
+    private final Window[] _windows;
+
+    /** The characters seen: character #p is at _history[p & _mask]. */
+    private final int[] _history;
+
+    /** Mask on positions in _history. */
+    private final int _mask;
+
+    /** Number of characters seen. */
+    private long _pos;
+
+    /** Interval between sample rows, or 0. */
+    private long _every;
+
+    /** Destination of sample rows. */
+    private PrintStream _sampleOut;
+}
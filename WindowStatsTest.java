@@ -0,0 +1,94 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the WindowStats class.
+ *  @author Nazli Urenli
+ */
+public class WindowStatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that window W holds the statistics of the last
+     *  W.width() of the characters TEXT[0 .. END-1]. */
+    private void checkWindow(WindowStats.Window w, int[] text, int end) {
+        int n = UPPER.size();
+        int start = Math.max(0, end - w.width());
+        int[] freq = new int[n];
+        int[] bigrams = new int[n * n];
+        int[] trigrams = new int[n * n * n];
+        for (int p = start; p < end; p += 1) {
+            freq[text[p]] += 1;
+            if (p + 1 < end) {
+                bigrams[text[p] * n + text[p + 1]] += 1;
+            }
+            if (p + 2 < end) {
+                trigrams[(text[p] * n + text[p + 1]) * n + text[p + 2]] += 1;
+            }
+        }
+        String where = msg("width " + w.width(), "after %d", end);
+        assertEquals(where, end - start, w.count());
+        long pairs = 0;
+        for (int a = 0; a < n; a += 1) {
+            assertEquals(where, freq[a], w.frequency(a));
+            pairs += (long) freq[a] * (freq[a] - 1);
+            for (int b = 0; b < n; b += 1) {
+                assertEquals(where, bigrams[a * n + b], w.bigrams(a, b));
+                for (int c = 0; c < n; c += 1) {
+                    assertEquals(where, trigrams[(a * n + b) * n + c],
+                                 w.trigrams(a, b, c));
+                }
+            }
+        }
+        double count = end - start;
+        assertEquals(where, count < 2 ? 0 : pairs / (count * (count - 1)),
+                     w.ioc(), 1e-12);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testAgainstRecount() {
+        Random random = new Random(36);
+        int[] text = new int[300];
+        for (int k = 0; k < text.length; k += 1) {
+            text[k] = random.nextInt(k < 150 ? 26 : 4);
+        }
+        WindowStats stats = new WindowStats(UPPER, new int[] {1, 2, 3, 50});
+        for (int k = 0; k < text.length; k += 1) {
+            stats.add(text[k]);
+            if (k % 37 == 0 || k == text.length - 1) {
+                for (int w = 0; w < stats.windows(); w += 1) {
+                    checkWindow(stats.window(w), text, k + 1);
+                }
+            }
+        }
+        WindowStats.Window w = stats.window(3);
+        assertTrue(w.maxIoc() > w.minIoc());
+        assertTrue(w.maxAt() > 150);
+    }
+
+    @Test
+    public void testText() {
+        WindowStats stats = new WindowStats(UPPER, WindowStats.widths("4,8"));
+        stats.add("ab c-DD");
+        assertEquals(5, stats.position());
+        assertEquals(2, stats.window(0).frequency(UPPER.toInt('D')));
+        assertEquals(1, stats.window(0).bigrams(UPPER.toInt('C'),
+                                                UPPER.toInt('D')));
+        assertEquals(0, stats.window(0).frequency(UPPER.toInt('A')));
+        assertEquals(1, stats.window(1).frequency(UPPER.toInt('A')));
+        assertEquals(2.0 / 20, stats.window(1).ioc(), 1e-12);
+    }
+}
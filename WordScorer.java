@@ -0,0 +1,282 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** A scorer of how much a text looks like language: the total length of
+ *  the occurrences in it of the words of a dictionary, overlapping ones
+ *  included.  The words are compiled into an Aho-Corasick automaton over
+ *  alphabet indices, completed into a deterministic one, so that each
+ *  character of the text costs one lookup in a flat table whatever the
+ *  words.  Row s of the table holds the next state after each character
+ *  from state s, and then the gain of s: the lengths of the words that
+ *  end on reaching it.  States are numbered by the start of their rows,
+ *  so the next state is found without multiplying.
+ *
+ *  Text may be scored all at once, or a character at a time with next
+ *  and gain as it is produced.  The most that any R more characters can
+ *  gain is worked out for each R up to LOOKAHEAD when the automaton is
+ *  built, and bounds the gain of longer stretches piecewise, so scoring
+ *  can stop as soon as the rest of the text could not bring the score up
+ *  to a threshold.  Scoring allocates nothing, and a scorer may be
+ *  shared by any number of threads.
+ *
+ *  The usage is
+ *      java enigma.WordScorer [--alphabet=CHARS] [--rounds=R] WORDS TEXT
+ *  which prints the score of the characters of the file TEXT in the
+ *  alphabet (after conversion to upper case) against the words of the
+ *  file WORDS, and how fast it was scored (the best of R rounds, 10).
+ *  @author Nazli Urenli
+ */
+final class WordScorer {
+
+    /** The state before any characters. */
+    static final int START = 0;
+
+    /** Longest stretch of characters whose greatest gain is worked
+     *  out. */
+    static final int LOOKAHEAD = 16;
+
+    /** A scorer for WORDS, all non-empty strings of characters in
+     *  ALPHA. */
+    WordScorer(Alphabet alpha, List<String> words) {
+        int n = alpha.size();
+        int stride = n + 1;
+        int[] table = new int[stride * 64];
+        Arrays.fill(table, -1);
+        table[n] = 0;
+        int size = stride;
+        for (String word : words) {
+            if (word.isEmpty()) {
+                throw error("empty word");
+            }
+            int s = START;
+            for (int j = 0; j < word.length(); j += 1) {
+                if (!alpha.contains(word.charAt(j))) {
+                    throw error("word %s is not in the alphabet", word);
+                }
+                int c = alpha.toInt(word.charAt(j));
+                if (table[s + c] < 0) {
+                    if (size == table.length) {
+                        table = Arrays.copyOf(table, 2 * size);
+                        Arrays.fill(table, size, table.length, -1);
+                    }
+                    table[size + n] = 0;
+                    table[s + c] = size;
+                    size += stride;
+                }
+                s = table[s + c];
+            }
+            table[s + n] = word.length();
+        }
+        _table = Arrays.copyOf(table, size);
+        _n = n;
+        _words = words.size();
+        complete();
+        _bound = bounds();
+    }
+
+    /** Return the words of TEXT, separated by whitespace, in upper case,
+     *  that consist only of characters in ALPHA. */
+    static List<String> words(String text, Alphabet alpha) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String word : text.trim().split("\\s+")) {
+            word = word.toUpperCase();
+            boolean in = !word.isEmpty();
+            for (int j = 0; in && j < word.length(); j += 1) {
+                in = alpha.contains(word.charAt(j));
+            }
+            if (in) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Make _table, a trie of my words with the gain of each state so
+     *  far its own word's length, into the completed automaton: add the
+     *  failure transitions, in order of depth, and add to each state's
+     *  gain that of its longest proper suffix that is a state. */
+    private void complete() {
+        int n = _n, stride = n + 1;
+        int[] fail = new int[_table.length / stride];
+        int[] queue = new int[fail.length];
+        int head = 0, tail = 0;
+        for (int c = 0; c < n; c += 1) {
+            int t = _table[START + c];
+            if (t < 0) {
+                _table[START + c] = START;
+            } else {
+                fail[t / stride] = START;
+                queue[tail] = t;
+                tail += 1;
+            }
+        }
+        while (head < tail) {
+            int s = queue[head];
+            head += 1;
+            int f = fail[s / stride];
+            _table[s + n] += _table[f + n];
+            for (int c = 0; c < n; c += 1) {
+                int t = _table[s + c];
+                if (t < 0) {
+                    _table[s + c] = _table[f + c];
+                } else {
+                    fail[t / stride] = _table[f + c];
+                    queue[tail] = t;
+                    tail += 1;
+                }
+            }
+        }
+    }
+
+    /** Return the most that R characters can gain from any state, for
+     *  each R from 0 to LOOKAHEAD, found by working out the most each
+     *  state can gain in one more character than the last. */
+    private int[] bounds() {
+        int n = _n, stride = n + 1, states = _table.length / stride;
+        int[] result = new int[LOOKAHEAD + 1];
+        int[] last = new int[states], most = new int[states];
+        for (int r = 1; r <= LOOKAHEAD; r += 1) {
+            for (int s = 0; s < states; s += 1) {
+                int best = 0;
+                for (int c = 0; c < n; c += 1) {
+                    int t = _table[s * stride + c];
+                    best = Math.max(best, _table[t + n] + last[t / stride]);
+                }
+                most[s] = best;
+                result[r] = Math.max(result[r], best);
+            }
+            int[] swap = last;
+            last = most;
+            most = swap;
+        }
+        return result;
+    }
+
+    /** Return the number of words. */
+    int words() {
+        return _words;
+    }
+
+    /** Return the number of states of my automaton. */
+    int states() {
+        return _table.length / (_n + 1);
+    }
+
+    /** Return the most that R more characters can add to a score. */
+    long bound(int r) {
+        return (long) (r / LOOKAHEAD) * _bound[LOOKAHEAD]
+            + _bound[r % LOOKAHEAD];
+    }
+
+    /** Return the state after character C (an alphabet index) from
+     *  STATE. */
+    int next(int state, int c) {
+        return _table[state + c];
+    }
+
+    /** Return the lengths of the words that end on reaching STATE. */
+    int gain(int state) {
+        return _table[state + _n];
+    }
+
+    /** Return the score of TEXT[FROM .. TO-1] (alphabet indices). */
+    int score(int[] text, int from, int to) {
+        final int[] table = _table;
+        final int n = _n;
+        int state = START, result = 0;
+        for (int k = from; k < to; k += 1) {
+            state = table[state + text[k]];
+            result += table[state + n];
+        }
+        return result;
+    }
+
+    /** Return the score of TEXT[FROM .. TO-1], as for score, or -1 as
+     *  soon as it is clear that the score is below THRESHOLD. */
+    int score(int[] text, int from, int to, int threshold) {
+        final int[] table = _table;
+        final int n = _n;
+        int state = START, result = 0;
+        for (int k = from; k < to; ) {
+            int end = Math.min(to, k + CHECK_EVERY);
+            for (; k < end; k += 1) {
+                state = table[state + text[k]];
+                result += table[state + n];
+            }
+            if (result + bound(to - k) < threshold) {
+                return -1;
+            }
+        }
+        return result;
+    }
+
+    /** Score a file, as described in the class comment, according to
+     *  ARGS. */
+    public static void main(String... args) {
+        try {
+            Alphabet alpha = new Alphabet();
+            int rounds = 10;
+            int k;
+            for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+                String arg = args[k];
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--alphabet=")) {
+                    alpha = new Alphabet(value);
+                } else if (arg.startsWith("--rounds=")) {
+                    rounds = Integer.parseInt(value);
+                } else {
+                    throw error("unknown option %s", arg);
+                }
+            }
+            if (args.length - k != 2 || rounds <= 0) {
+                throw error("usage: WordScorer [--alphabet=CHARS] "
+                            + "[--rounds=R] WORDS TEXT");
+            }
+            long start = System.nanoTime();
+            WordScorer scorer = new WordScorer(alpha,
+                words(new String(Main.readBytes(args[k]), UTF_8), alpha));
+            double built = (System.nanoTime() - start) / 1e6;
+            int[] text = alpha.encode(new String(
+                Main.readBytes(args[k + 1]), UTF_8).toUpperCase());
+            int score = 0;
+            long best = Long.MAX_VALUE;
+            for (int r = 0; r < rounds; r += 1) {
+                start = System.nanoTime();
+                score = scorer.score(text, 0, text.length);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%d%n", score);
+            System.err.printf("%d words, %d states, built in %.1f ms; "
+                              + "%d characters at %.1f M chars/s%n",
+                              scorer.words(), scorer.states(), built,
+                              text.length,
+                              text.length * 1e3 / Math.max(best, 1));
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Number of characters scored between checks against a
+     *  threshold. */
+    private static final int CHECK_EVERY = 32;
+
+    /** The automaton: for each state, its next states and its gain. */
+    private final int[] _table;
+
+    /** Alphabet size. */
+    private final int _n;
+
+    /** Number of words. */
+    private final int _words;
+
+    /** Entry R is the most that R characters can gain, for R up to
+     *  LOOKAHEAD. */
+    private final int[] _bound;
+}
@@ -0,0 +1,122 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the WordScorer class.
+ *  @author Nazli Urenli
+ */
+public class WordScorerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return LENGTH random characters from the first LETTERS of UPPER,
+     *  chosen by RANDOM. */
+    private String randomText(Random random, int letters, int length) {
+        char[] result = new char[length];
+        for (int k = 0; k < length; k += 1) {
+            result[k] = UPPER.toChar(random.nextInt(letters));
+        }
+        return new String(result);
+    }
+
+    /** Return the total length of the occurrences of WORDS in TEXT,
+     *  found one by one. */
+    private int naiveScore(List<String> words, String text) {
+        int result = 0;
+        for (String word : words) {
+            for (int p = text.indexOf(word); p >= 0;
+                 p = text.indexOf(word, p + 1)) {
+                result += word.length();
+            }
+        }
+        return result;
+    }
+
+    /** Return TEXT as alphabet indices. */
+    private int[] encode(String text) {
+        return UPPER.encode(text);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testScore() {
+        WordScorer scorer = new WordScorer(UPPER,
+            List.of("HE", "SHE", "HIS", "HERS"));
+        assertEquals(9, scorer.score(encode("USHERS"), 0, 6));
+        assertEquals(0, scorer.score(encode("USHERS"), 0, 1));
+        assertEquals(8, scorer.score(encode("AHISHE"), 1, 6));
+        int state = WordScorer.START, total = 0;
+        for (int c : encode("USHERS")) {
+            state = scorer.next(state, c);
+            total += scorer.gain(state);
+        }
+        assertEquals(9, total);
+    }
+
+    @Test
+    public void testMatchesNaive() {
+        Random random = new Random(44);
+        for (int trial = 0; trial < 50; trial += 1) {
+            List<String> words = new ArrayList<>();
+            for (int w = random.nextInt(20) + 1; w > 0; w -= 1) {
+                words.add(randomText(random, 4, random.nextInt(5) + 1));
+            }
+            WordScorer scorer = new WordScorer(UPPER, words);
+            String text = randomText(random, 5, random.nextInt(200));
+            int expected = naiveScore(new ArrayList<>(
+                new LinkedHashSet<>(words)), text);
+            int[] indices = encode(text);
+            assertEquals(msg("testMatchesNaive", "%s in %s", words, text),
+                         expected, scorer.score(indices, 0, text.length()));
+            assertEquals(expected, scorer.score(indices, 0, text.length(),
+                                                expected));
+            int score = scorer.score(indices, 0, text.length(),
+                                     expected + 1);
+            assertTrue(score == -1 || score == expected);
+        }
+    }
+
+    @Test
+    public void testBound() {
+        WordScorer scorer = new WordScorer(UPPER, List.of("A", "AA", "B"));
+        assertEquals(0, scorer.bound(0));
+        assertEquals(3 * 4, scorer.bound(4));
+        assertEquals(3 * 40, scorer.bound(40));
+        Random random = new Random(45);
+        for (int trial = 0; trial < 100; trial += 1) {
+            String text = randomText(random, 3, random.nextInt(40));
+            assertTrue(scorer.score(encode(text), 0, text.length())
+                       <= scorer.bound(text.length()));
+        }
+        assertEquals(-1, scorer.score(encode("CCCCCCCCCCCCCCCCCCCCCCCCCC"
+                                             + "CCCCCCCCCCCCCCCCCCCCCCCC"),
+                                      0, 50, 20));
+    }
+
+    @Test
+    public void testWords() {
+        assertEquals(List.of("THE", "CAT", "SAT"),
+                     WordScorer.words(" the cat\n  sat on9 \tmat's\n",
+                                      UPPER));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        new WordScorer(UPPER, List.of("THE", "D0G"));
+    }
+}